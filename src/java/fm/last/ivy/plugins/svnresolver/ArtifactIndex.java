@@ -0,0 +1,308 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.tmatesoft.svn.core.SVNNodeKind;
+
+/**
+ * Index of the artifacts published to the sub folders of a folder in an Ivy repository (with the usual layout, the
+ * revisions of a module), stored as a file in that folder and updated in the same commit as the artifacts. Each indexed
+ * folder is recorded along with its complete listing, so that resources in it and its listing can be answered from the
+ * index, using a request for the containing folder and one for the index file however many revisions there are.
+ * 
+ * A folder is only indexed while it hasn't been changed since the index recorded it, which is checked against the
+ * revisions in the listing of the containing folder, so a commit which doesn't update the index (e.g. a publish with
+ * the index disabled) drops the folders it changes from it. Folders which aren't indexed must be looked up in the
+ * repository as usual.
+ * 
+ * The index is a UTF-8 text file with a line per indexed folder, giving its name and the revision it was last changed
+ * in (-1 if it was changed by the commit which wrote the index), separated by a tab. These are followed by a line per
+ * entry in the indexed folders: the entry's path relative to the index's folder, size, last modified time and MD5
+ * checksum ("-" if not known), separated by tabs. The paths of folder entries end with a slash.
+ */
+public class ArtifactIndex {
+
+  /**
+   * The name of the index file in the folder whose sub folders it indexes.
+   */
+  public static final String FILE_NAME = ".ivysvn-index";
+
+  private static final String ENCODING = "UTF-8";
+
+  private static final String HEADER = "# ivysvn artifact index 2";
+
+  private static final String UNKNOWN_CHECKSUM = "-";
+
+  /**
+   * The path of the folder the index is in, relative to the repository root.
+   */
+  private final String folderPath;
+
+  /**
+   * The indexed folders, where the key is the folder name and the value is the revision it was last changed in, -1 if
+   * it was changed by the commit which writes the index.
+   */
+  private final TreeMap<String, Long> folders = new TreeMap<String, Long>();
+
+  /**
+   * The entries in the indexed folders, where the key is the entry path relative to the index's folder.
+   */
+  private final TreeMap<String, ResourceMetadata> entries = new TreeMap<String, ResourceMetadata>();
+
+  /**
+   * Constructs a new, empty index.
+   * 
+   * @param folderPath The path of the folder the index is in, relative to the repository root.
+   */
+  public ArtifactIndex(String folderPath) {
+    this.folderPath = trimPath(folderPath);
+  }
+
+  /**
+   * Constructs an index from the contents of an index file.
+   * 
+   * @param folderPath The path of the folder the index is in, relative to the repository root.
+   * @param data The index file contents.
+   * @throws IOException If the contents are not a valid index.
+   */
+  public ArtifactIndex(String folderPath, byte[] data) throws IOException {
+    this(folderPath);
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(data), ENCODING));
+    String line = reader.readLine();
+    if (line != null && !HEADER.equals(line)) {
+      throw new IOException("Unsupported artifact index format: " + line);
+    }
+    while ((line = reader.readLine()) != null) {
+      if (line.length() == 0) {
+        continue;
+      }
+      String[] fields = line.split("\t");
+      try {
+        if (fields.length == 2) {
+          folders.put(fields[0], Long.valueOf(fields[1]));
+        } else if (fields.length == 4 && fields[0].indexOf('/') > 0) {
+          String path = fields[0];
+          SVNNodeKind kind = path.endsWith("/") ? SVNNodeKind.DIR : SVNNodeKind.FILE;
+          path = trimPath(path);
+          String checksum = UNKNOWN_CHECKSUM.equals(fields[3]) ? null : fields[3];
+          entries.put(path, new ResourceMetadata(path.substring(path.lastIndexOf('/') + 1), kind, Long
+              .parseLong(fields[1]), Long.parseLong(fields[2]), checksum));
+        } else {
+          throw new IOException("Invalid artifact index entry: " + line);
+        }
+      } catch (NumberFormatException e) {
+        throw (IOException) new IOException("Invalid artifact index entry: " + line).initCause(e);
+      }
+    }
+  }
+
+  /**
+   * Gets the path of the folder whose index records the passed folder, which is its parent.
+   * 
+   * @param folderPath The folder path relative to the repository root.
+   * @return The path of the folder the index is in, relative to the repository root.
+   */
+  public static String getIndexFolderPath(String folderPath) {
+    folderPath = trimPath(folderPath);
+    return folderPath.substring(0, Math.max(folderPath.lastIndexOf('/'), 0));
+  }
+
+  /**
+   * Gets the path of the index file in a folder.
+   * 
+   * @param folderPath The path of the folder the index is in, relative to the repository root.
+   * @return The path of the index file, relative to the repository root.
+   */
+  public static String getFilePath(String folderPath) {
+    folderPath = trimPath(folderPath);
+    return folderPath.length() == 0 ? FILE_NAME : folderPath + "/" + FILE_NAME;
+  }
+
+  /**
+   * @return The path of the folder the index is in, relative to the repository root.
+   */
+  public String getFolderPath() {
+    return folderPath;
+  }
+
+  /**
+   * Records a folder which is changed by the commit which writes the index, replacing anything previously recorded
+   * for it.
+   * 
+   * @param name The folder name.
+   * @param listing The complete contents of the folder once the commit is made.
+   */
+  public void putFolder(String name, Collection<ResourceMetadata> listing) {
+    removeFolder(name);
+    folders.put(name, -1L);
+    for (ResourceMetadata entry : listing) {
+      entries.put(name + "/" + entry.getName(), entry);
+    }
+  }
+
+  /**
+   * Removes a folder from the index, after which nothing is known about it.
+   * 
+   * @param name The folder name.
+   */
+  public void removeFolder(String name) {
+    folders.remove(name);
+    getFolderEntries(name).clear();
+  }
+
+  /**
+   * Removes the folders which have been changed since they were recorded from the index, or which no longer exist.
+   * 
+   * @param folderRevisions The revision each folder in the index's folder was last changed in, where the key is the
+   *          folder name.
+   * @param indexRevision The revision the index file was last changed in.
+   */
+  public void retainUnchanged(Map<String, Long> folderRevisions, long indexRevision) {
+    for (Iterator<Map.Entry<String, Long>> i = folders.entrySet().iterator(); i.hasNext();) {
+      Map.Entry<String, Long> folder = i.next();
+      Long revision = folderRevisions.get(folder.getKey());
+      long recordedRevision = folder.getValue() < 0 ? indexRevision : folder.getValue();
+      if (revision != null && revision == recordedRevision) {
+        folder.setValue(revision); // no longer changed by the commit which writes the index
+      } else {
+        getFolderEntries(folder.getKey()).clear();
+        i.remove();
+      }
+    }
+  }
+
+  /**
+   * Looks up a resource in the index.
+   * 
+   * @param path The resource path relative to the repository root.
+   * @return The resource's metadata, missing metadata if the index records the folder containing the path but not the
+   *         path itself, or null if the index doesn't record the folder.
+   */
+  public ResourceMetadata lookup(String path) {
+    String name = getFolderName(getIndexFolderPath(path));
+    if (name == null) {
+      return null;
+    }
+    path = trimPath(path);
+    String entryName = path.substring(path.lastIndexOf('/') + 1);
+    ResourceMetadata metadata = entries.get(name + "/" + entryName);
+    return metadata == null ? ResourceMetadata.missing(entryName) : metadata;
+  }
+
+  /**
+   * Gets the listing of a folder.
+   * 
+   * @param folderPath The folder path relative to the repository root.
+   * @return The listing, or null if the index doesn't record the folder.
+   */
+  public FolderListing getListing(String folderPath) {
+    String name = getFolderName(folderPath);
+    if (name == null) {
+      return null;
+    }
+    return new FolderListing(new ArrayList<ResourceMetadata>(getFolderEntries(name).values()));
+  }
+
+  /**
+   * @return The number of folders in the index.
+   */
+  public int size() {
+    return folders.size();
+  }
+
+  /**
+   * Gets the contents of the index file for this index.
+   * 
+   * @return The index file contents.
+   */
+  public byte[] toByteArray() {
+    StringBuilder builder = new StringBuilder(HEADER).append('\n');
+    for (Map.Entry<String, Long> folder : folders.entrySet()) {
+      builder.append(folder.getKey()).append('\t').append(folder.getValue()).append('\n');
+    }
+    for (Map.Entry<String, ResourceMetadata> entry : entries.entrySet()) {
+      ResourceMetadata metadata = entry.getValue();
+      builder.append(entry.getKey());
+      if (metadata.getKind() == SVNNodeKind.DIR) {
+        builder.append('/');
+      }
+      builder.append('\t').append(metadata.getSize()).append('\t').append(metadata.getLastModified()).append('\t');
+      builder.append(metadata.getChecksum() == null ? UNKNOWN_CHECKSUM : metadata.getChecksum()).append('\n');
+    }
+    try {
+      return builder.toString().getBytes(ENCODING);
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(ENCODING + " not supported", e);
+    }
+  }
+
+  /**
+   * Gets the name of an indexed folder.
+   * 
+   * @param path The folder path relative to the repository root.
+   * @return The folder name, or null if the folder is not in the index.
+   */
+  private String getFolderName(String path) {
+    path = trimPath(path);
+    if (!folderPath.equals(getIndexFolderPath(path))) {
+      return null;
+    }
+    String name = path.substring(path.lastIndexOf('/') + 1);
+    return name.length() > 0 && folders.containsKey(name) ? name : null;
+  }
+
+  /**
+   * Gets the entries in an indexed folder.
+   * 
+   * @param name The folder name.
+   * @return A view of the index backed by the index.
+   */
+  private SortedMap<String, ResourceMetadata> getFolderEntries(String name) {
+    return entries.subMap(name + "/", name + "0"); // '0' is the character after '/'
+  }
+
+  /**
+   * Strips leading and trailing slashes from a path.
+   * 
+   * @param path The path.
+   * @return The trimmed path.
+   */
+  private static String trimPath(String path) {
+    int start = 0;
+    int end = path.length();
+    while (start < end && path.charAt(start) == '/') {
+      start++;
+    }
+    while (end > start && path.charAt(end - 1) == '/') {
+      end--;
+    }
+    return path.substring(start, end);
+  }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.ivy.util.Message;
+
+/**
+ * Output stream which writes a file such that it only ever appears at its destination complete. Data is written to a
+ * temporary file next to the destination via a file channel and a direct buffer, and the temporary file is renamed to
+ * the destination once {@link #commit()} is called. Closing the stream without committing it discards the data.
+ */
+public class AtomicFileOutputStream extends OutputStream {
+
+  /**
+   * The size of the direct buffer used to write to the file.
+   */
+  private static final int BUFFER_SIZE = 512 * 1024;
+
+  /**
+   * Direct buffers are expensive to allocate and only released on garbage collection, so each thread reuses one.
+   */
+  private static final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>() {
+    @Override
+    protected ByteBuffer initialValue() {
+      return ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+  };
+
+  private final File destination;
+  private final File temp;
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private final ByteBuffer buffer;
+  private boolean committed = false;
+  private boolean closed = false;
+
+  /**
+   * Constructs a new instance of this class.
+   * 
+   * @param destination The file to write.
+   * @param expectedLength The expected length of the file, used to preallocate space for it, or -1 if not known.
+   * @throws IOException If the temporary file cannot be created.
+   */
+  public AtomicFileOutputStream(File destination, long expectedLength) throws IOException {
+    this.destination = destination;
+    File folder = destination.getAbsoluteFile().getParentFile();
+    folder.mkdirs();
+    temp = File.createTempFile(destination.getName() + ".", ".part", folder);
+    file = new RandomAccessFile(temp, "rw");
+    channel = file.getChannel();
+    if (expectedLength > 0) {
+      file.setLength(expectedLength); // lets the file system allocate the file in one go
+    }
+    buffer = buffers.get();
+    buffer.clear();
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    ensureOpen();
+    if (!buffer.hasRemaining()) {
+      writeBuffer();
+    }
+    buffer.put((byte) b);
+  }
+
+  @Override
+  public void write(byte[] data, int offset, int length) throws IOException {
+    ensureOpen();
+    while (length > 0) {
+      if (!buffer.hasRemaining()) {
+        writeBuffer();
+      }
+      int copied = Math.min(length, buffer.remaining());
+      buffer.put(data, offset, copied);
+      offset += copied;
+      length -= copied;
+    }
+  }
+
+  /**
+   * Transfers the whole contents of the passed channel to this file, without copying them through the heap.
+   * 
+   * @param source The channel to read from.
+   * @throws IOException If an error occurs transferring the data.
+   */
+  public void transferFrom(FileChannel source) throws IOException {
+    ensureOpen();
+    writeBuffer();
+    long size = source.size();
+    long position = 0;
+    while (position < size) {
+      long transferred = channel.transferFrom(source, channel.position() + position, size - position);
+      if (transferred <= 0) {
+        break; // the source was truncated while being read
+      }
+      position += transferred;
+    }
+    channel.position(channel.position() + position);
+  }
+
+  /**
+   * Writes the data in the buffer to the file.
+   * 
+   * @throws IOException If an error occurs writing the data.
+   */
+  private void writeBuffer() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  private void ensureOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Stream for " + destination.getAbsolutePath() + " already closed");
+    }
+  }
+
+  /**
+   * Completes the file and moves it to its destination, replacing any existing file there. The stream is closed.
+   * 
+   * @throws IOException If an error occurs completing the file.
+   */
+  public void commit() throws IOException {
+    ensureOpen();
+    writeBuffer();
+    channel.truncate(channel.position()); // in case less data was written than expected
+    committed = true;
+    close();
+  }
+
+  /**
+   * Closes the stream, discarding the file if it has not been committed.
+   * 
+   * @throws IOException If an error occurs closing the file.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    buffer.clear();
+    file.close();
+    if (committed) {
+      SvnUtils.moveFile(temp, destination);
+    } else if (!temp.delete()) {
+      Message.warn("Could not delete " + temp.getAbsolutePath());
+    }
+  }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import java.util.Collection;
+
+/**
+ * Compact set of strings which can answer whether a string is definitely not in the set, with a small chance (around
+ * 1%) of wrongly answering that it might be.
+ */
+public class BloomFilter {
+
+  /**
+   * The number of bits used per string.
+   */
+  private static final int BITS_PER_STRING = 10;
+
+  /**
+   * The number of bits set per string, optimal for the bits used per string.
+   */
+  private static final int HASHES = 7;
+
+  private final long[] bits;
+
+  private final int bitCount;
+
+  /**
+   * Constructs a new filter containing the passed strings.
+   * 
+   * @param strings The strings.
+   */
+  public BloomFilter(Collection<String> strings) {
+    bitCount = Math.max(64, strings.size() * BITS_PER_STRING);
+    bits = new long[(bitCount + 63) / 64];
+    for (String string : strings) {
+      add(string);
+    }
+  }
+
+  private void add(String string) {
+    int hash1 = string.hashCode();
+    int hash2 = secondHash(string);
+    for (int i = 0; i < HASHES; i++) {
+      int bit = index(hash1 + i * hash2);
+      bits[bit >>> 6] |= 1L << bit;
+    }
+  }
+
+  /**
+   * Determines whether the passed string might be in this filter.
+   * 
+   * @param string The string.
+   * @return false if the string is definitely not in this filter, true if it probably is.
+   */
+  public boolean mightContain(String string) {
+    int hash1 = string.hashCode();
+    int hash2 = secondHash(string);
+    for (int i = 0; i < HASHES; i++) {
+      int bit = index(hash1 + i * hash2);
+      if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int index(int hash) {
+    return (hash & Integer.MAX_VALUE) % bitCount;
+  }
+
+  /**
+   * Hashes the passed string using FNV-1a, which is independent of String.hashCode().
+   * 
+   * @param string The string.
+   * @return An odd hash value, so that successive bit indexes never repeat.
+   */
+  private static int secondHash(String string) {
+    int hash = 0x811c9dc5;
+    for (int i = 0; i < string.length(); i++) {
+      hash ^= string.charAt(i);
+      hash *= 0x01000193;
+    }
+    return hash | 1;
+  }
+
+}
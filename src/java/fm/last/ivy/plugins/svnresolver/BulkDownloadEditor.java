@@ -0,0 +1,184 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperty;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.internal.util.SVNDate;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaProcessor;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+/**
+ * Editor which receives the files in a single folder sent by Subversion in response to an update report, writing each
+ * file to its own destination. Files are sent as deltas against empty contents, which are applied as they arrive so no
+ * file is ever held in memory.
+ */
+public class BulkDownloadEditor implements ISVNEditor {
+
+  /**
+   * Where to write each file, where the key is the file name.
+   */
+  private final Map<String, File> destinations;
+
+  /**
+   * The files which were received completely, where the key is the file name.
+   */
+  private final Map<String, ResourceMetadata> received = new HashMap<String, ResourceMetadata>();
+
+  private final SVNDeltaProcessor deltaProcessor = new SVNDeltaProcessor();
+  private String currentName;
+  private OutputStream currentOutput;
+  private long currentLastModified;
+  private String currentChecksum;
+
+  /**
+   * Constructs a new instance of this class.
+   * 
+   * @param destinations Where to write each file, where the key is the file name. Any other files are ignored.
+   */
+  public BulkDownloadEditor(Map<String, File> destinations) {
+    this.destinations = destinations;
+  }
+
+  /**
+   * @return The metadata of the files which were received completely, where the key is the file name.
+   */
+  public Map<String, ResourceMetadata> getReceived() {
+    return received;
+  }
+
+  private String getName(String path) {
+    return path.substring(path.lastIndexOf('/') + 1);
+  }
+
+  public void addFile(String path, String copyFromPath, long copyFromRevision) throws SVNException {
+    closeCurrentOutput();
+    currentName = getName(path);
+    currentLastModified = 0;
+    currentChecksum = null;
+    File destination = destinations.get(currentName);
+    if (destination != null) {
+      try {
+        currentOutput = new BufferedOutputStream(new FileOutputStream(destination));
+      } catch (IOException e) {
+        throw new SVNException(SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getMessage()), e);
+      }
+    }
+  }
+
+  public void applyTextDelta(String path, String baseChecksum) throws SVNException {
+    deltaProcessor.applyTextDelta(SVNFileUtil.DUMMY_IN, currentOutput == null ? SVNFileUtil.DUMMY_OUT
+        : currentOutput, true);
+  }
+
+  public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+    return deltaProcessor.textDeltaChunk(diffWindow);
+  }
+
+  public void textDeltaEnd(String path) throws SVNException {
+    currentChecksum = deltaProcessor.textDeltaEnd();
+  }
+
+  public void changeFileProperty(String path, String propertyName, SVNPropertyValue propertyValue)
+    throws SVNException {
+    if (SVNProperty.COMMITTED_DATE.equals(propertyName) && propertyValue != null) {
+      currentLastModified = SVNDate.parseDate(propertyValue.getString()).getTime();
+    }
+  }
+
+  public void closeFile(String path, String textChecksum) throws SVNException {
+    if (currentOutput == null) {
+      return;
+    }
+    closeCurrentOutput();
+    File destination = destinations.get(currentName);
+    if (textChecksum != null && !textChecksum.equals(currentChecksum)) {
+      destination.delete();
+      throw new SVNException(SVNErrorMessage.create(SVNErrorCode.CHECKSUM_MISMATCH, "Checksum mismatch for "
+          + path + ", expected " + textChecksum + " but was " + currentChecksum));
+    }
+    received.put(currentName, new ResourceMetadata(currentName, SVNNodeKind.FILE, destination
+        .length(), currentLastModified, currentChecksum));
+  }
+
+  private void closeCurrentOutput() throws SVNException {
+    if (currentOutput != null) {
+      OutputStream output = currentOutput;
+      currentOutput = null;
+      try {
+        output.close();
+      } catch (IOException e) {
+        throw new SVNException(SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getMessage()), e);
+      }
+    }
+  }
+
+  public SVNCommitInfo closeEdit() throws SVNException {
+    closeCurrentOutput();
+    return null;
+  }
+
+  public void abortEdit() throws SVNException {
+    closeCurrentOutput();
+  }
+
+  public void targetRevision(long revision) throws SVNException {
+  }
+
+  public void openRoot(long revision) throws SVNException {
+  }
+
+  public void deleteEntry(String path, long revision) throws SVNException {
+  }
+
+  public void absentDir(String path) throws SVNException {
+  }
+
+  public void absentFile(String path) throws SVNException {
+  }
+
+  public void addDir(String path, String copyFromPath, long copyFromRevision) throws SVNException {
+  }
+
+  public void openDir(String path, long revision) throws SVNException {
+  }
+
+  public void changeDirProperty(String name, SVNPropertyValue value) throws SVNException {
+  }
+
+  public void closeDir() throws SVNException {
+  }
+
+  public void openFile(String path, long revision) throws SVNException {
+  }
+
+}
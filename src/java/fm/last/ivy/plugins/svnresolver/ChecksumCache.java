@@ -0,0 +1,195 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Cache of the checksums recorded in subversion properties when artifacts are published, used to answer requests for
+ * the checksum files published alongside the artifacts without fetching them. As the properties could have been left
+ * unchanged by a commit which changed an artifact by other means, a checksum is only served once the artifact has been
+ * downloaded and its contents found to be the same as when it was published.
+ */
+public class ChecksumCache {
+
+  /**
+   * Extension of checksum files containing SHA-1 checksums.
+   */
+  private static final String SHA1_EXTENSION = ".sha1";
+
+  /**
+   * Extension of checksum files containing MD5 checksums.
+   */
+  private static final String MD5_EXTENSION = ".md5";
+
+  /**
+   * Published checksums, where the key is the full path of the artifact in subversion and the value is its SHA-1 and
+   * MD5 checksums.
+   */
+  private final ExpiringCache<String[]> published;
+
+  /**
+   * MD5 checksums of the contents of downloaded artifacts, where the key is the full path of the artifact in
+   * subversion.
+   */
+  private final ExpiringCache<String> downloaded;
+
+  /**
+   * Constructs a new instance of this class.
+   * 
+   * @param maxSize The maximum number of artifacts to hold published and (separately) downloaded checksums for.
+   */
+  public ChecksumCache(int maxSize) {
+    this.published = new ExpiringCache<String[]>(maxSize, 0);
+    this.downloaded = new ExpiringCache<String>(maxSize, 0);
+  }
+
+  /**
+   * Records the checksums of an artifact when it was published.
+   * 
+   * @param repositorySource Full path to the artifact in subversion.
+   * @param sha1 The SHA-1 checksum, as a hex string.
+   * @param md5 The MD5 checksum, as a hex string.
+   */
+  public void putPublished(String repositorySource, String sha1, String md5) {
+    if (sha1 != null && md5 != null) {
+      published.put(repositorySource, new String[] { sha1, md5 });
+    }
+  }
+
+  /**
+   * Records the checksums of the artifacts in a folder, as read from its {@link SvnDao#PROPERTY_CHECKSUMS} property.
+   * 
+   * @param folderSource Full path to the folder in subversion.
+   * @param property The property value, may be null.
+   */
+  public void putPublishedFolder(String folderSource, String property) {
+    for (Entry<String, String[]> entry : parseProperty(property).entrySet()) {
+      putPublished(folderSource + "/" + entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+    }
+  }
+
+  /**
+   * Records the checksum of the contents of a downloaded artifact.
+   * 
+   * @param repositorySource Full path to the artifact in subversion.
+   * @param md5 The MD5 checksum of the downloaded contents, as a hex string, may be null if not known.
+   */
+  public void putDownloaded(String repositorySource, String md5) {
+    if (md5 != null) {
+      downloaded.put(repositorySource, md5);
+    }
+  }
+
+  /**
+   * Gets the contents of a checksum file.
+   * 
+   * @param repositorySource Full path to the checksum file in subversion.
+   * @return The checksum, or null if the passed path is not that of a checksum file or its checksum is not known.
+   */
+  public String getChecksum(String repositorySource) {
+    int index = getChecksumIndex(repositorySource);
+    if (index < 0) {
+      return null;
+    }
+    String artifactSource = repositorySource.substring(0, repositorySource.lastIndexOf('.'));
+    String[] checksums = published.get(artifactSource);
+    if (checksums == null) {
+      return null;
+    }
+    String downloadedMd5 = downloaded.get(artifactSource);
+    return checksums[1].equalsIgnoreCase(downloadedMd5) ? checksums[index] : null;
+  }
+
+  /**
+   * Gets the contents of a checksum file from the checksums recorded for the artifacts in its folder.
+   * 
+   * @param fileName The name of the checksum file.
+   * @param checksums The checksums recorded in the folder's {@link SvnDao#PROPERTY_CHECKSUMS} property, as returned by
+   *          {@link #parseProperty(String)}.
+   * @return The checksum, or null if the passed name is not that of a checksum file or its artifact is not recorded.
+   */
+  public static String getChecksum(String fileName, Map<String, String[]> checksums) {
+    int index = getChecksumIndex(fileName);
+    if (index < 0) {
+      return null;
+    }
+    String[] artifactChecksums = checksums.get(fileName.substring(0, fileName.lastIndexOf('.')));
+    return artifactChecksums == null ? null : artifactChecksums[index];
+  }
+
+  /**
+   * Determines which checksum a checksum file contains.
+   * 
+   * @param path Path or name of the file.
+   * @return 0 for SHA-1, 1 for MD5 or -1 if the file is not a checksum file.
+   */
+  private static int getChecksumIndex(String path) {
+    if (path.endsWith(SHA1_EXTENSION)) {
+      return 0;
+    } else if (path.endsWith(MD5_EXTENSION)) {
+      return 1;
+    }
+    return -1;
+  }
+
+  /**
+   * Forgets all checksums.
+   */
+  public void clear() {
+    published.clear();
+    downloaded.clear();
+  }
+
+  /**
+   * Parses the value of a {@link SvnDao#PROPERTY_CHECKSUMS} property, ignoring any malformed lines.
+   * 
+   * @param property The property value, may be null.
+   * @return The checksums in the property, where the key is the artifact name and the value is its SHA-1 and MD5
+   *         checksums.
+   */
+  public static Map<String, String[]> parseProperty(String property) {
+    Map<String, String[]> checksums = new LinkedHashMap<String, String[]>();
+    if (property != null) {
+      for (String line : property.split("\n")) {
+        String[] fields = line.trim().split(" ");
+        if (fields.length == 3) {
+          checksums.put(fields[0], new String[] { fields[1], fields[2] });
+        }
+      }
+    }
+    return checksums;
+  }
+
+  /**
+   * Formats checksums as the value of a {@link SvnDao#PROPERTY_CHECKSUMS} property.
+   * 
+   * @param checksums The checksums, where the key is the artifact name and the value is its SHA-1 and MD5 checksums.
+   * @return The property value.
+   */
+  public static String formatProperty(Map<String, String[]> checksums) {
+    StringBuilder property = new StringBuilder();
+    for (Entry<String, String[]> entry : checksums.entrySet()) {
+      property.append(entry.getKey()).append(' ').append(entry.getValue()[0]).append(' ').append(
+          entry.getValue()[1]).append('\n');
+    }
+    return property.toString();
+  }
+
+}
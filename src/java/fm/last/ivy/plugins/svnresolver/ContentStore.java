@@ -0,0 +1,170 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.regex.Pattern;
+
+import org.apache.ivy.util.Message;
+
+/**
+ * Content-addressed store of files on local disk, where each file is stored under the MD5 checksum Subversion keeps for
+ * it. Files with the same content are therefore only ever downloaded once, regardless of which path or revision they
+ * are retrieved from. The store can safely be shared between processes as files are only ever added to it atomically.
+ */
+public class ContentStore {
+
+  /**
+   * Valid MD5 checksums, anything else is never used to build a path.
+   */
+  private static final Pattern CHECKSUM_PATTERN = Pattern.compile("[0-9a-f]{32}");
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * The store folder.
+   */
+  private final File directory;
+
+  /**
+   * Constructs a new instance of this class.
+   * 
+   * @param directory The store folder, will be created if it does not exist.
+   */
+  public ContentStore(File directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Gets the location of the file with the passed checksum in the store, files are spread over sub folders named after
+   * the first two characters of their checksum to keep folder sizes manageable.
+   * 
+   * @param checksum An MD5 checksum.
+   * @return The location, or null if the checksum isn't valid.
+   */
+  private File getFile(String checksum) {
+    if (checksum == null || !CHECKSUM_PATTERN.matcher(checksum).matches()) {
+      return null;
+    }
+    return new File(new File(directory, checksum.substring(0, 2)), checksum);
+  }
+
+  /**
+   * Copies the file with the passed checksum from the store.
+   * 
+   * @param checksum The MD5 checksum of the file.
+   * @param destination The location to copy the file to.
+   * @return true if the file was copied, false if the store does not contain it.
+   * @throws IOException If an error occurs copying the file.
+   */
+  public boolean retrieve(String checksum, File destination) throws IOException {
+    File file = getFile(checksum);
+    if (file == null || !file.exists()) {
+      return false;
+    }
+    SvnUtils.copyFile(file, destination);
+    return true;
+  }
+
+  /**
+   * Opens a stream over the file with the passed checksum in the store.
+   * 
+   * @param checksum The MD5 checksum of the file.
+   * @return The stream, which the caller must close, or null if the store does not contain the file.
+   * @throws IOException If an error occurs opening the file.
+   */
+  public InputStream open(String checksum) throws IOException {
+    File file = getFile(checksum);
+    if (file == null || !file.exists()) {
+      return null;
+    }
+    try {
+      return new BufferedInputStream(new FileInputStream(file));
+    } catch (FileNotFoundException e) {
+      return null; // removed since it was checked
+    }
+  }
+
+  /**
+   * Adds a copy of the passed file to the store, unless it already contains it. The file is only added if its contents
+   * match the passed checksum.
+   * 
+   * @param checksum The MD5 checksum of the file as reported by Subversion.
+   * @param source The file.
+   * @throws IOException If an error occurs adding the file.
+   */
+  public void insert(String checksum, File source) throws IOException {
+    File file = getFile(checksum);
+    if (file == null || file.exists()) {
+      return;
+    }
+    file.getParentFile().mkdirs();
+    // copy to a temporary file in the same folder first so the file only ever appears in the store complete
+    File temp = File.createTempFile(checksum, null, file.getParentFile());
+    try {
+      String actualChecksum = copy(source, temp);
+      if (!actualChecksum.equals(checksum)) {
+        Message.warn("Not storing " + source.getAbsolutePath() + ", expected checksum " + checksum + " but was "
+            + actualChecksum);
+      } else if (!temp.renameTo(file) && !file.exists()) { // if the file exists another process got there first
+        Message.warn("Could not add " + source.getAbsolutePath() + " to content store at " + file.getAbsolutePath());
+      }
+    } finally {
+      if (temp.exists()) {
+        temp.delete();
+      }
+    }
+  }
+
+  /**
+   * Copies a file, computing the MD5 checksum of its contents along the way.
+   * 
+   * @param source The file to copy.
+   * @param destination The destination.
+   * @return The checksum, as a hex string.
+   * @throws IOException If an error occurs copying the file.
+   */
+  private String copy(File source, File destination) throws IOException {
+    MessageDigest digest = SvnUtils.getDigest("MD5");
+    InputStream in = new FileInputStream(source);
+    try {
+      OutputStream out = new FileOutputStream(destination);
+      try {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read = 0;
+        while ((read = in.read(buffer)) != -1) {
+          digest.update(buffer, 0, read);
+          out.write(buffer, 0, read);
+        }
+      } finally {
+        out.close();
+      }
+    } finally {
+      in.close();
+    }
+    return SvnUtils.toHex(digest.digest());
+  }
+
+}
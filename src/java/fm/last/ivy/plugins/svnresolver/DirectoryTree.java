@@ -19,6 +19,7 @@ package fm.last.ivy.plugins.svnresolver;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -38,6 +39,12 @@ public class DirectoryTree {
   private final Map<String, DirectoryTree> subDirs = new HashMap<String, DirectoryTree>();
   private final List<PutOperation> putOperations = new ArrayList<PutOperation>();
 
+  /**
+   * Folders to be copied into this tree's directory. Key is the full path of the copy, value is the full path of the
+   * folder it is copied from.
+   */
+  private final Map<String, String> folderCopies = new LinkedHashMap<String, String>();
+
   /**
    * Constructs a new instance.
    * 
@@ -106,6 +113,26 @@ public class DirectoryTree {
     putOperations.add(putOperation);
   }
 
+  /**
+   * Gets the folder copies to be made in this tree's directory.
+   * 
+   * @return The folder copies, where the key is the full path of the copy and the value is the full path of the folder
+   *         it is copied from.
+   */
+  public Map<String, String> getFolderCopies() {
+    return folderCopies;
+  }
+
+  /**
+   * Add a folder copy to be made in this tree's directory.
+   * 
+   * @param destinationPath The full path of the copy.
+   * @param sourcePath The full path of the folder to copy.
+   */
+  public void addFolderCopy(String destinationPath, String sourcePath) {
+    folderCopies.put(destinationPath, sourcePath);
+  }
+
   /**
    * Gets the path representing this tree's directory.
    * 
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread safe cache holding a bounded number of values for a limited time. When full the least recently used value is
+ * evicted, values which have been in the cache longer than the time to live are evicted when next accessed. Hits,
+ * misses and evictions are counted so the effectiveness of the cache can be reported.
+ * 
+ * @param <V> The type of the cached values.
+ */
+public class ExpiringCache<V> {
+
+  /**
+   * The cached values in least recently used order, where the key is a full path in subversion.
+   */
+  private final LinkedHashMap<String, CachedValue<V>> entries;
+
+  private final int maxSize;
+
+  private final long timeToLive;
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * Constructs a new instance of this class.
+   * 
+   * @param maxSize The maximum number of values to hold.
+   * @param timeToLive The time (in milliseconds) that values are held for, 0 or less to hold them until evicted to make
+   *          room for others.
+   */
+  public ExpiringCache(int maxSize, long timeToLive) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("Cache size must be at least 1, not " + maxSize);
+    }
+    this.maxSize = maxSize;
+    this.timeToLive = timeToLive;
+    this.entries = new LinkedHashMap<String, CachedValue<V>>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CachedValue<V>> eldest) {
+        if (size() > ExpiringCache.this.maxSize) {
+          evictions.incrementAndGet();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Gets a value from the cache.
+   * 
+   * @param key The key.
+   * @return The value, or null if there is no value for the key or it has expired.
+   */
+  public synchronized V get(String key) {
+    CachedValue<V> entry = entries.get(key);
+    if (entry != null && isExpired(entry, System.currentTimeMillis())) {
+      entries.remove(key);
+      evictions.incrementAndGet();
+      entry = null;
+    }
+    if (entry == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return entry.value;
+  }
+
+  /**
+   * Adds a value to the cache, replacing any existing value for the key.
+   * 
+   * @param key The key.
+   * @param value The value.
+   */
+  public synchronized void put(String key, V value) {
+    entries.put(key, new CachedValue<V>(value, System.currentTimeMillis()));
+  }
+
+  /**
+   * Adds a value to the cache unless there is already an unexpired value for the key.
+   * 
+   * @param key The key.
+   * @param value The value.
+   * @return The value in the cache for the key, which is the passed value if it was added.
+   */
+  public synchronized V putIfAbsent(String key, V value) {
+    CachedValue<V> entry = entries.get(key);
+    if (entry != null && !isExpired(entry, System.currentTimeMillis())) {
+      return entry.value;
+    }
+    put(key, value);
+    return value;
+  }
+
+  /**
+   * Removes the value for a key from the cache, a value removed this way is not counted as evicted.
+   * 
+   * @param key The key.
+   */
+  public synchronized void remove(String key) {
+    entries.remove(key);
+  }
+
+  /**
+   * Evicts all values which have expired.
+   */
+  public synchronized void purge() {
+    long now = System.currentTimeMillis();
+    for (Iterator<CachedValue<V>> iterator = entries.values().iterator(); iterator.hasNext();) {
+      if (isExpired(iterator.next(), now)) {
+        iterator.remove();
+        evictions.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Removes all values from the cache, values removed this way are not counted as evicted.
+   */
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  /**
+   * @return The number of values in the cache, including any which have expired but not yet been evicted.
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return The number of lookups which found a value.
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return The number of lookups which found no value.
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return The number of values evicted because the cache was full or they had expired.
+   */
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  private boolean isExpired(CachedValue<V> entry, long now) {
+    return timeToLive > 0 && now - entry.created > timeToLive;
+  }
+
+  /**
+   * Generates a String representation of this cache's statistics.
+   * 
+   * @return A String representation of this object.
+   */
+  @Override
+  public String toString() {
+    return "size=" + size() + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions;
+  }
+
+  /**
+   * A cached value.
+   */
+  private static class CachedValue<V> {
+    private final V value;
+    private final long created;
+
+    private CachedValue(V value, long created) {
+      this.value = value;
+      this.created = created;
+    }
+  }
+
+}
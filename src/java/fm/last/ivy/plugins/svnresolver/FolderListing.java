@@ -0,0 +1,86 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Snapshot of the contents of a folder in Subversion, used to answer questions about several resources in the same
+ * folder without going back to the repository for each one.
+ */
+public class FolderListing {
+
+  /**
+   * Whether the folder exists or not.
+   */
+  private final boolean exists;
+
+  /**
+   * The folder's entries in the order they were listed, where the key is the entry name.
+   */
+  private final Map<String, ResourceMetadata> entries = new LinkedHashMap<String, ResourceMetadata>();
+
+  /**
+   * Constructs a new instance of this class.
+   *
+   * @param entries The entries in the folder, or null if the folder does not exist.
+   */
+  public FolderListing(List<ResourceMetadata> entries) {
+    this.exists = entries != null;
+    if (entries != null) {
+      for (ResourceMetadata entry : entries) {
+        this.entries.put(entry.getName(), entry);
+      }
+    }
+  }
+
+  /**
+   * @return Whether the folder exists or not.
+   */
+  public boolean exists() {
+    return exists;
+  }
+
+  /**
+   * Gets the entry with the passed name.
+   *
+   * @param name The entry name.
+   * @return The entry, or null if the folder contains no such entry.
+   */
+  public ResourceMetadata getEntry(String name) {
+    return entries.get(name);
+  }
+
+  /**
+   * @return All entries in the folder, in the order they were listed.
+   */
+  public Collection<ResourceMetadata> getEntries() {
+    return Collections.unmodifiableCollection(entries.values());
+  }
+
+  /**
+   * @return The names of all entries in the folder, in the order they were listed.
+   */
+  public Collection<String> getNames() {
+    return Collections.unmodifiableCollection(entries.keySet());
+  }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of folder listings which are known to be valid up to a certain revision. Rather than re-reading folders when
+ * the repository moves on, the cache is brought up to date using the paths changed in the intervening revisions, and
+ * only listings of folders affected by those changes are discarded.
+ */
+public class ListingCache {
+
+  /**
+   * Listings of folders, where the key is the path of the folder relative to the root of the subversion repository.
+   */
+  private final Map<String, List<String>> listings = new HashMap<String, List<String>>();
+
+  /**
+   * The revision at which all cached listings are known to be valid, -1 if nothing is cached.
+   */
+  private long revision = -1;
+
+  /**
+   * @return The revision at which all cached listings are known to be valid, -1 if nothing is cached.
+   */
+  public synchronized long getRevision() {
+    return revision;
+  }
+
+  /**
+   * Gets a cached listing.
+   * 
+   * @param folderPath The path of the folder relative to the root of the subversion repository, e.g. "/ivy/org".
+   * @param atRevision The revision the listing is needed for.
+   * @return The listing, or null if there is no listing cached for the folder at the revision.
+   */
+  public synchronized List<String> get(String folderPath, long atRevision) {
+    if (atRevision != revision) {
+      return null;
+    }
+    return listings.get(folderPath);
+  }
+
+  /**
+   * Adds a listing to the cache, unless the cache has since moved on to another revision.
+   * 
+   * @param folderPath The path of the folder relative to the root of the subversion repository, e.g. "/ivy/org".
+   * @param listing The names of the entries in the folder.
+   * @param atRevision The revision the folder was listed at.
+   */
+  public synchronized void put(String folderPath, List<String> listing, long atRevision) {
+    if (atRevision == revision) {
+      listings.put(folderPath, listing);
+    }
+  }
+
+  /**
+   * Brings the cache up to a later revision, discarding the listings of all folders affected by paths which were
+   * added, deleted or replaced since the current revision. For a changed path this is the folder containing it and,
+   * in case the path is itself a folder, its own listing and those of all folders below it.
+   * 
+   * @param toRevision The new revision.
+   * @param changedPaths The paths added, deleted or replaced in the revisions after the current one up to and
+   *          including the new one, relative to the root of the subversion repository.
+   */
+  public synchronized void update(long toRevision, Collection<String> changedPaths) {
+    for (String changedPath : changedPaths) {
+      int parentIndex = changedPath.lastIndexOf('/');
+      listings.remove(parentIndex <= 0 ? "/" : changedPath.substring(0, parentIndex));
+      for (Iterator<String> iterator = listings.keySet().iterator(); iterator.hasNext();) {
+        String folderPath = iterator.next();
+        if (folderPath.equals(changedPath) || folderPath.startsWith(changedPath + "/")) {
+          iterator.remove();
+        }
+      }
+    }
+    revision = toRevision;
+  }
+
+  /**
+   * Discards all cached listings.
+   * 
+   * @param toRevision The revision that new listings will be added at.
+   */
+  public synchronized void reset(long toRevision) {
+    listings.clear();
+    revision = toRevision;
+  }
+
+}
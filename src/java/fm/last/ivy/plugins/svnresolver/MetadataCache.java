@@ -0,0 +1,210 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.ivy.util.Message;
+
+/**
+ * A folder on local disk containing a {@link MetadataStore} per Subversion repository (identified by its UUID) and
+ * revision, along with the identity of each Ivy repository root that has been seen, so that the stores can be found
+ * without connecting to Subversion.
+ */
+public class MetadataCache {
+
+  /**
+   * The name of the file holding the identities of Ivy repository roots.
+   */
+  private static final String REPOSITORIES_FILE_NAME = "repositories.properties";
+
+  private static final String UUID_SUFFIX = ".uuid";
+  private static final String PATH_SUFFIX = ".path";
+
+  private static final String STORE_PREFIX = "r";
+  private static final String STORE_SUFFIX = ".metadata";
+
+  /**
+   * The default number of revisions of each Subversion repository whose stores are kept.
+   */
+  public static final int DEFAULT_MAX_REVISIONS = 10;
+
+  /**
+   * The cache folder.
+   */
+  private final File directory;
+
+  /**
+   * The number of revisions of each Subversion repository whose stores are kept, the stores of older revisions are
+   * deleted when a store is created for a new revision.
+   */
+  private final int maxRevisions;
+
+  /**
+   * Constructs a new instance of this class which keeps the stores of the default number of revisions.
+   * 
+   * @param directory The cache folder, will be created if it does not exist.
+   */
+  public MetadataCache(File directory) {
+    this(directory, DEFAULT_MAX_REVISIONS);
+  }
+
+  /**
+   * Constructs a new instance of this class.
+   * 
+   * @param directory The cache folder, will be created if it does not exist.
+   * @param maxRevisions The number of revisions of each Subversion repository whose stores are kept.
+   */
+  public MetadataCache(File directory, int maxRevisions) {
+    if (maxRevisions < 1) {
+      throw new IllegalArgumentException("At least 1 revision must be kept, not " + maxRevisions);
+    }
+    this.directory = directory;
+    this.maxRevisions = maxRevisions;
+  }
+
+  /**
+   * Gets the UUID of the Subversion repository containing an Ivy repository root.
+   * 
+   * @param repositoryRoot URL of the Ivy repository root.
+   * @return The UUID, or null if the repository root has not been identified yet.
+   * @throws IOException If an error occurs reading the identities.
+   */
+  public String getRepositoryUUID(String repositoryRoot) throws IOException {
+    return loadRepositories().getProperty(repositoryRoot + UUID_SUFFIX);
+  }
+
+  /**
+   * Gets the path of an Ivy repository root relative to the root of the Subversion repository containing it.
+   * 
+   * @param repositoryRoot URL of the Ivy repository root.
+   * @return The path, or null if the repository root has not been identified yet.
+   * @throws IOException If an error occurs reading the identities.
+   */
+  public String getRepositoryPath(String repositoryRoot) throws IOException {
+    return loadRepositories().getProperty(repositoryRoot + PATH_SUFFIX);
+  }
+
+  /**
+   * Records the identity of an Ivy repository root.
+   * 
+   * @param repositoryRoot URL of the Ivy repository root.
+   * @param uuid The UUID of the Subversion repository containing it, null to forget the repository root.
+   * @param path The path of the Ivy repository root relative to the root of the Subversion repository.
+   * @throws IOException If an error occurs writing the identities.
+   */
+  public synchronized void putRepository(String repositoryRoot, String uuid, String path) throws IOException {
+    Properties repositories = loadRepositories();
+    if (uuid == null) {
+      repositories.remove(repositoryRoot + UUID_SUFFIX);
+      repositories.remove(repositoryRoot + PATH_SUFFIX);
+    } else {
+      repositories.setProperty(repositoryRoot + UUID_SUFFIX, uuid);
+      repositories.setProperty(repositoryRoot + PATH_SUFFIX, path);
+    }
+    directory.mkdirs();
+    // write to a temporary file first so other processes never read a partially written file
+    File temp = File.createTempFile(REPOSITORIES_FILE_NAME, null, directory);
+    OutputStream out = new FileOutputStream(temp);
+    try {
+      repositories.store(out, "Identities of Ivy repository roots in Subversion");
+    } finally {
+      out.close();
+    }
+    SvnUtils.moveFile(temp, new File(directory, REPOSITORIES_FILE_NAME));
+  }
+
+  /**
+   * Gets the store for a revision of a Subversion repository. If the store is new, the stores of the oldest revisions
+   * beyond the number to keep are deleted.
+   * 
+   * @param uuid The UUID of the Subversion repository.
+   * @param revision The revision.
+   * @return The store.
+   * @throws IOException If the store cannot be opened.
+   */
+  public MetadataStore getStore(String uuid, long revision) throws IOException {
+    File repositoryDirectory = new File(directory, uuid);
+    File file = new File(repositoryDirectory, STORE_PREFIX + revision + STORE_SUFFIX);
+    boolean created = !file.exists();
+    MetadataStore store = MetadataStore.open(file);
+    if (created) {
+      pruneStores(repositoryDirectory, revision);
+    }
+    return store;
+  }
+
+  /**
+   * Deletes the stores of the oldest revisions in a Subversion repository's folder beyond the number to keep.
+   * 
+   * @param repositoryDirectory The Subversion repository's folder.
+   * @param keptRevision A revision whose store is never deleted, as it is in use.
+   * @throws IOException If an error occurs finding the stores.
+   */
+  private void pruneStores(File repositoryDirectory, long keptRevision) throws IOException {
+    File[] files = repositoryDirectory.listFiles();
+    if (files == null) {
+      return;
+    }
+    List<Long> revisions = new ArrayList<Long>();
+    for (File file : files) {
+      String name = file.getName();
+      if (name.startsWith(STORE_PREFIX) && name.endsWith(STORE_SUFFIX)) {
+        try {
+          revisions.add(Long.valueOf(name.substring(STORE_PREFIX.length(), name.length() - STORE_SUFFIX.length())));
+        } catch (NumberFormatException e) {
+          // not a store
+        }
+      }
+    }
+    Collections.sort(revisions, Collections.reverseOrder());
+    for (Long revision : revisions.subList(Math.min(maxRevisions, revisions.size()), revisions.size())) {
+      if (revision != keptRevision) {
+        File file = new File(repositoryDirectory, STORE_PREFIX + revision + STORE_SUFFIX);
+        if (MetadataStore.delete(file)) {
+          Message.debug("Deleted metadata store " + file);
+        } else {
+          Message.warn("Could not delete metadata store " + file);
+        }
+      }
+    }
+  }
+
+  private synchronized Properties loadRepositories() throws IOException {
+    Properties repositories = new Properties();
+    File file = new File(directory, REPOSITORIES_FILE_NAME);
+    if (file.exists()) {
+      InputStream in = new FileInputStream(file);
+      try {
+        repositories.load(in);
+      } finally {
+        in.close();
+      }
+    }
+    return repositories;
+  }
+
+}
@@ -0,0 +1,535 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ivy.util.Message;
+import org.tmatesoft.svn.core.SVNNodeKind;
+
+/**
+ * Persistent store of resource metadata and folder listings for a single revision of a Subversion repository. As paths
+ * in Subversion can never change at a fixed revision, entries in the store never need to be invalidated.
+ * <p>
+ * The store is an append-only file of binary records which is memory-mapped, so lookups are served from the OS page
+ * cache. The only heap used per entry is a slot in an open-addressing index from key hash to record offset. The file
+ * is locked by the first process to open it, any other process sharing the same file gets a read-only view of the
+ * records that existed when it was opened.
+ * <p>
+ * File layout: a header (magic number, format version, offset of the end of the data) followed by records, each of
+ * which is a record type, a key and a payload. A later record for the same key replaces an earlier one.
+ */
+public class MetadataStore {
+
+  private static final int MAGIC = 0x49565331; // "IVS1"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 16;
+  private static final int END_OFFSET = 8;
+  private static final int INITIAL_CAPACITY = 64 * 1024;
+
+  private static final byte RESOURCE_RECORD = 1;
+  private static final byte LISTING_RECORD = 2;
+
+  private static final SVNNodeKind[] KINDS = { SVNNodeKind.NONE, SVNNodeKind.FILE, SVNNodeKind.DIR,
+      SVNNodeKind.UNKNOWN };
+
+  /**
+   * The maximum number of stores kept open, beyond this the least recently used store is closed.
+   */
+  private static final int MAX_OPEN_STORES = 4;
+
+  /**
+   * Open stores in least recently used order, where the key is the canonical store file, so that each file is only
+   * mapped once per JVM.
+   */
+  private static final Map<File, MetadataStore> openStores = new LinkedHashMap<File, MetadataStore>(16, 0.75f, true);
+
+  private final File file;
+  private final RandomAccessFile randomAccessFile;
+  private final FileChannel channel;
+  private final FileLock lock;
+  private MappedByteBuffer buffer;
+  private int end = HEADER_SIZE;
+  private final OffsetIndex resources = new OffsetIndex();
+  private final OffsetIndex listings = new OffsetIndex();
+
+  /**
+   * Opens the store in the passed file, creating it if necessary. Stores are shared, calling this more than once for
+   * the same file returns the same instance while it is open. Opening a store may close the least recently used
+   * store, which then behaves as an empty read-only store, so stores should be opened for each use rather than kept.
+   * 
+   * @param file The store file.
+   * @return The store.
+   * @throws IOException If the store cannot be opened.
+   */
+  public static MetadataStore open(File file) throws IOException {
+    File canonicalFile = file.getCanonicalFile();
+    synchronized (openStores) {
+      MetadataStore store = openStores.get(canonicalFile);
+      if (store == null) {
+        store = new MetadataStore(canonicalFile);
+        openStores.put(canonicalFile, store);
+        if (openStores.size() > MAX_OPEN_STORES) {
+          Iterator<MetadataStore> eldest = openStores.values().iterator();
+          MetadataStore evicted = eldest.next();
+          eldest.remove();
+          evicted.close();
+        }
+      }
+      return store;
+    }
+  }
+
+  /**
+   * Deletes the store in the passed file, closing it first if it is open.
+   * 
+   * @param file The store file.
+   * @return Whether the file was deleted.
+   * @throws IOException If the file's canonical path cannot be determined.
+   */
+  public static boolean delete(File file) throws IOException {
+    File canonicalFile = file.getCanonicalFile();
+    synchronized (openStores) {
+      MetadataStore store = openStores.get(canonicalFile);
+      if (store != null) {
+        store.close();
+      }
+      return canonicalFile.delete();
+    }
+  }
+
+  /**
+   * Constructs a new instance of this class.
+   * 
+   * @param file The store file.
+   * @throws IOException If the store cannot be opened.
+   */
+  private MetadataStore(File file) throws IOException {
+    this.file = file;
+    file.getParentFile().mkdirs();
+    randomAccessFile = new RandomAccessFile(file, "rw");
+    channel = randomAccessFile.getChannel();
+    FileLock fileLock = null;
+    try {
+      fileLock = channel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      // locked elsewhere in this JVM, fall through to a read-only view
+    }
+    lock = fileLock;
+    try {
+      load();
+    } catch (IOException e) {
+      close();
+      throw e;
+    }
+  }
+
+  /**
+   * Maps the store file and indexes its records, initialising the file if it is empty or was written using a different
+   * format.
+   * 
+   * @throws IOException If the file cannot be mapped.
+   */
+  private void load() throws IOException {
+    int length = (int) Math.min(channel.size(), Integer.MAX_VALUE);
+    boolean valid = length >= HEADER_SIZE;
+    if (lock == null) {
+      if (valid) {
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        valid = isValidHeader(length);
+      }
+      if (!valid) {
+        Message.debug("Metadata store " + file + " is being created by another process, ignoring it");
+        buffer = null;
+        end = HEADER_SIZE;
+        return;
+      }
+    } else {
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(length, INITIAL_CAPACITY));
+      if (!valid || !isValidHeader(length)) {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(END_OFFSET, HEADER_SIZE);
+      }
+    }
+    index(buffer.getInt(END_OFFSET));
+  }
+
+  /**
+   * @param length The length of the store file.
+   * @return Whether the store file has a header this version can read.
+   */
+  private boolean isValidHeader(int length) {
+    int dataEnd = buffer.getInt(END_OFFSET);
+    return buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION && dataEnd >= HEADER_SIZE && dataEnd <= length;
+  }
+
+  /**
+   * Indexes all records in the store, discarding any trailing partial record (e.g. if the process writing it died).
+   * 
+   * @param dataEnd The offset of the end of the data.
+   */
+  private void index(int dataEnd) {
+    int offset = HEADER_SIZE;
+    try {
+      while (offset < dataEnd) {
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset);
+        record.limit(dataEnd);
+        byte type = record.get();
+        byte[] key = new byte[record.getInt()];
+        record.get(key);
+        if (type == RESOURCE_RECORD) {
+          readMetadata(record, "");
+          resources.put(key, offset);
+        } else if (type == LISTING_RECORD) {
+          readListing(record);
+          listings.put(key, offset);
+        } else {
+          break;
+        }
+        offset = record.position();
+      }
+    } catch (RuntimeException e) {
+      Message.warn("Discarding corrupt record in metadata store " + file + " at offset " + offset);
+    }
+    end = offset;
+    if (lock != null) {
+      buffer.putInt(END_OFFSET, end);
+    }
+  }
+
+  /**
+   * Gets the stored metadata for a path.
+   * 
+   * @param key The path.
+   * @return The metadata, or null if there is none.
+   */
+  public synchronized ResourceMetadata getResource(String key) {
+    ByteBuffer record = getRecord(resources, key);
+    return record == null ? null : readMetadata(record, key.substring(key.lastIndexOf('/') + 1));
+  }
+
+  /**
+   * Gets the stored listing for a folder.
+   * 
+   * @param key The path to the folder.
+   * @return The listing, or null if there is none.
+   */
+  public synchronized FolderListing getListing(String key) {
+    ByteBuffer record = getRecord(listings, key);
+    return record == null ? null : readListing(record);
+  }
+
+  /**
+   * Stores the metadata for a path. Has no effect if the store is read-only, closed or already contains the same
+   * metadata.
+   * 
+   * @param key The path.
+   * @param metadata The metadata.
+   */
+  public synchronized void putResource(String key, ResourceMetadata metadata) {
+    if (lock == null || buffer == null || metadata.equals(getResource(key))) {
+      return;
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream record = startRecord(bytes, RESOURCE_RECORD, key);
+    try {
+      writeMetadata(record, metadata);
+    } catch (IOException e) {
+      throw new IllegalStateException(e); // can't happen writing to memory
+    }
+    append(resources, key, bytes.toByteArray());
+  }
+
+  /**
+   * Stores the listing for a folder. Has no effect if the store is read-only, closed or already contains a listing for
+   * the folder.
+   * 
+   * @param key The path to the folder.
+   * @param listing The listing.
+   */
+  public synchronized void putListing(String key, FolderListing listing) {
+    if (lock == null || buffer == null || getRecord(listings, key) != null) {
+      return;
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream record = startRecord(bytes, LISTING_RECORD, key);
+    try {
+      if (listing.exists()) {
+        record.writeInt(listing.getEntries().size());
+        for (ResourceMetadata entry : listing.getEntries()) {
+          writeString(record, entry.getName());
+          writeMetadata(record, entry);
+        }
+      } else {
+        record.writeInt(-1);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(e); // can't happen writing to memory
+    }
+    append(listings, key, bytes.toByteArray());
+  }
+
+  /**
+   * Closes the store, after which it behaves as an empty read-only store.
+   */
+  public void close() {
+    synchronized (openStores) {
+      if (openStores.get(file) == this) {
+        openStores.remove(file);
+      }
+    }
+    synchronized (this) {
+      if (!channel.isOpen()) {
+        return;
+      }
+      try {
+        if (lock != null && buffer != null) {
+          buffer.force();
+        }
+        channel.close(); // also releases the lock
+        randomAccessFile.close();
+      } catch (IOException e) {
+        Message.warn("Error closing metadata store " + file + ": " + e.getMessage());
+      }
+      buffer = null;
+    }
+  }
+
+  /**
+   * Gets the record for the passed key, positioned at the start of its payload.
+   * 
+   * @param index The index to look the key up in.
+   * @param key The key.
+   * @return The record, or null if there is no record for the key.
+   */
+  private ByteBuffer getRecord(OffsetIndex index, String key) {
+    if (buffer == null) {
+      return null;
+    }
+    byte[] keyBytes = toBytes(key);
+    int offset = index.get(keyBytes);
+    if (offset < 0) {
+      return null;
+    }
+    ByteBuffer record = buffer.duplicate();
+    record.position(offset + 5 + keyBytes.length);
+    return record;
+  }
+
+  /**
+   * Appends a record to the store, growing the mapped region if necessary.
+   * 
+   * @param index The index to add the record to.
+   * @param key The record's key.
+   * @param record The complete record.
+   */
+  private void append(OffsetIndex index, String key, byte[] record) {
+    try {
+      if (end + record.length > buffer.capacity()) {
+        int capacity = Math.max(buffer.capacity() * 2, end + record.length);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+      }
+    } catch (IOException e) {
+      Message.warn("Could not grow metadata store " + file + ": " + e.getMessage());
+      return;
+    }
+    ByteBuffer destination = buffer.duplicate();
+    destination.position(end);
+    destination.put(record);
+    index.put(toBytes(key), end);
+    end += record.length;
+    buffer.putInt(END_OFFSET, end); // only after the record itself so a partial record is never visible
+  }
+
+  private DataOutputStream startRecord(ByteArrayOutputStream bytes, byte type, String key) {
+    DataOutputStream record = new DataOutputStream(bytes);
+    try {
+      record.writeByte(type);
+      writeString(record, key);
+    } catch (IOException e) {
+      throw new IllegalStateException(e); // can't happen writing to memory
+    }
+    return record;
+  }
+
+  private void writeMetadata(DataOutputStream record, ResourceMetadata metadata) throws IOException {
+    int kind = 0;
+    while (kind < KINDS.length - 1 && KINDS[kind] != metadata.getKind()) {
+      kind++;
+    }
+    record.writeByte(kind);
+    record.writeLong(metadata.getSize());
+    record.writeLong(metadata.getLastModified());
+    writeString(record, metadata.getChecksum());
+  }
+
+  private ResourceMetadata readMetadata(ByteBuffer record, String name) {
+    SVNNodeKind kind = KINDS[record.get()];
+    long size = record.getLong();
+    long lastModified = record.getLong();
+    return new ResourceMetadata(name, kind, size, lastModified, readString(record));
+  }
+
+  private FolderListing readListing(ByteBuffer record) {
+    int count = record.getInt();
+    if (count < 0) {
+      return new FolderListing(null);
+    }
+    List<ResourceMetadata> entries = new ArrayList<ResourceMetadata>(count);
+    for (int i = 0; i < count; i++) {
+      entries.add(readMetadata(record, readString(record)));
+    }
+    return new FolderListing(entries);
+  }
+
+  private void writeString(DataOutputStream record, String value) throws IOException {
+    if (value == null) {
+      record.writeInt(-1);
+    } else {
+      byte[] bytes = toBytes(value);
+      record.writeInt(bytes.length);
+      record.write(bytes);
+    }
+  }
+
+  private String readString(ByteBuffer record) {
+    int length = record.getInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    record.get(bytes);
+    try {
+      return new String(bytes, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e); // every JVM supports UTF-8
+    }
+  }
+
+  private static byte[] toBytes(String value) {
+    try {
+      return value.getBytes("UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e); // every JVM supports UTF-8
+    }
+  }
+
+  /**
+   * Open-addressing hash index from record key to record offset. Each slot holds the key's hash in the upper 32 bits
+   * and the record offset in the lower 32 bits, keys themselves are only kept in the mapped file.
+   */
+  private class OffsetIndex {
+
+    private long[] slots = new long[64];
+    private int size = 0;
+
+    /**
+     * @param key The key.
+     * @return The offset of the record for the key, or -1 if there is none.
+     */
+    private int get(byte[] key) {
+      int hash = hash(key);
+      int mask = slots.length - 1;
+      for (int i = hash & mask; slots[i] != 0; i = (i + 1) & mask) {
+        if ((int) (slots[i] >>> 32) == hash && keyEquals((int) slots[i], key)) {
+          return (int) slots[i];
+        }
+      }
+      return -1;
+    }
+
+    /**
+     * Adds or replaces the record offset for a key.
+     * 
+     * @param key The key.
+     * @param offset The record offset, which is never 0 as it follows the header.
+     */
+    private void put(byte[] key, int offset) {
+      if ((size + 1) * 4 > slots.length * 3) {
+        long[] previous = slots;
+        slots = new long[previous.length * 2];
+        for (long slot : previous) {
+          if (slot != 0) {
+            slots[findEmptySlot((int) (slot >>> 32))] = slot;
+          }
+        }
+      }
+      int hash = hash(key);
+      int mask = slots.length - 1;
+      for (int i = hash & mask; slots[i] != 0; i = (i + 1) & mask) {
+        if ((int) (slots[i] >>> 32) == hash && keyEquals((int) slots[i], key)) {
+          slots[i] = ((long) hash << 32) | offset;
+          return;
+        }
+      }
+      slots[findEmptySlot(hash)] = ((long) hash << 32) | offset;
+      size++;
+    }
+
+    private int findEmptySlot(int hash) {
+      int mask = slots.length - 1;
+      int i = hash & mask;
+      while (slots[i] != 0) {
+        i = (i + 1) & mask;
+      }
+      return i;
+    }
+
+    private int hash(byte[] key) {
+      int hash = 0;
+      for (byte b : key) {
+        hash = 31 * hash + b;
+      }
+      return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @param offset A record offset.
+     * @param key A key.
+     * @return Whether the record at the offset has the passed key.
+     */
+    private boolean keyEquals(int offset, byte[] key) {
+      if (buffer.getInt(offset + 1) != key.length) {
+        return false;
+      }
+      for (int i = 0; i < key.length; i++) {
+        if (buffer.get(offset + 5 + i) != key[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+}
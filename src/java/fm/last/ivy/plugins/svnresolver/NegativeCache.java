@@ -0,0 +1,137 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import java.util.Collection;
+
+/**
+ * Cache of resources known not to exist, so that probing for them (e.g. optional source and javadoc artifacts, or
+ * patterns which other resolvers in a chain serve) can be answered without a request to subversion. Once a folder has
+ * been listed its entry names are summarised in a {@link BloomFilter}, which answers for all other names in the folder.
+ * Results for a fixed revision are valid for as long as they are cached, results for HEAD only for a limited time.
+ */
+public class NegativeCache {
+
+  /**
+   * Folder summaries, where the key is the full path of the folder in subversion.
+   */
+  private final ExpiringCache<Result> folders;
+
+  /**
+   * Individual missing resources, where the key is the full path of the resource in subversion.
+   */
+  private final ExpiringCache<Result> missing;
+
+  /**
+   * The time (in milliseconds) that results for HEAD are valid for.
+   */
+  private final long headTimeToLive;
+
+  /**
+   * Constructs a new instance of this class.
+   * 
+   * @param maxSize The maximum number of folders and (separately) missing resources to hold.
+   * @param headTimeToLive The time (in milliseconds) that results for HEAD are valid for, 0 or less to not cache them.
+   */
+  public NegativeCache(int maxSize, long headTimeToLive) {
+    this.folders = new ExpiringCache<Result>(maxSize, 0);
+    this.missing = new ExpiringCache<Result>(maxSize, 0);
+    this.headTimeToLive = headTimeToLive;
+  }
+
+  /**
+   * Determines whether the passed resource is known not to exist.
+   * 
+   * @param folderSource Full path to the folder containing the resource in subversion.
+   * @param name The name of the resource.
+   * @param revision The revision being retrieved from, -1 for HEAD.
+   * @return true if the resource definitely does not exist, false if it might.
+   */
+  public boolean isMissing(String folderSource, String name, long revision) {
+    Result folder = folders.get(folderSource);
+    if (folder != null && folder.isValid(revision) && !folder.names.mightContain(name)) {
+      return true;
+    }
+    Result resource = missing.get(folderSource + "/" + name);
+    return resource != null && resource.isValid(revision);
+  }
+
+  /**
+   * Records the names of the entries in a folder.
+   * 
+   * @param folderSource Full path to the folder in subversion.
+   * @param names The names of the entries, empty if the folder does not exist.
+   * @param revision The revision the folder was listed at, -1 for HEAD.
+   */
+  public void putFolder(String folderSource, Collection<String> names, long revision) {
+    if (revision >= 0 || headTimeToLive > 0) {
+      folders.put(folderSource, new Result(new BloomFilter(names), revision));
+    }
+  }
+
+  /**
+   * Records that a resource does not exist.
+   * 
+   * @param repositorySource Full path to the resource in subversion.
+   * @param revision The revision the resource was looked up at, -1 for HEAD.
+   */
+  public void putMissing(String repositorySource, long revision) {
+    if (revision >= 0 || headTimeToLive > 0) {
+      missing.put(repositorySource, new Result(null, revision));
+    }
+  }
+
+  /**
+   * Forgets all results.
+   */
+  public void clear() {
+    folders.clear();
+    missing.clear();
+  }
+
+  /**
+   * Generates a String representation of this cache's statistics.
+   * 
+   * @return A String representation of this object.
+   */
+  @Override
+  public String toString() {
+    return "folders [" + folders + "], missing [" + missing + "]";
+  }
+
+  /**
+   * A negative result, only valid for the revision it was obtained at.
+   */
+  private class Result {
+    private final BloomFilter names;
+    private final long revision;
+    private final long created = System.currentTimeMillis();
+
+    private Result(BloomFilter names, long revision) {
+      this.names = names;
+      this.revision = revision;
+    }
+
+    private boolean isValid(long atRevision) {
+      if (atRevision != revision) {
+        return false;
+      }
+      return revision >= 0 || System.currentTimeMillis() - created <= headTimeToLive;
+    }
+  }
+
+}
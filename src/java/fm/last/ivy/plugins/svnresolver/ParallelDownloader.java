@@ -0,0 +1,362 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ivy.util.Message;
+
+/**
+ * Downloads files from a SvnRepository in the background using a bounded number of the repository's transfer threads,
+ * so that a number of artifacts can be transferred concurrently (each on its own pooled connection). Several files in the same folder can
+ * also be downloaded together using a single request. Downloaded files are staged in a temporary location until the
+ * repository is asked for them via {@link #take(String, long)}, this keeps all Ivy transfer events on the thread which
+ * called the repository.
+ */
+public class ParallelDownloader {
+
+  /**
+   * The repository to download from.
+   */
+  private final SvnRepository repository;
+
+  /**
+   * The revision to download, -1 for HEAD. Fixed when the downloads are scheduled as the download threads are not part
+   * of the resolve which scheduled them.
+   */
+  private final long revision;
+
+  /**
+   * The executor performing the downloads, which may be shared with other transfers.
+   */
+  private final Executor executor;
+
+  /**
+   * The maximum number of downloads passed to the executor at once.
+   */
+  private final int threads;
+
+  /**
+   * The number of downloads passed to the executor which have not finished.
+   */
+  private int running = 0;
+
+  /**
+   * Downloads waiting for one of the running downloads to finish before being passed to the executor.
+   */
+  private final LinkedList<Runnable> waiting = new LinkedList<Runnable>();
+
+  /**
+   * Scheduled downloads, where the key is the full path of the file in Subversion.
+   */
+  private final Map<String, DownloadTask> tasks = new HashMap<String, DownloadTask>();
+
+  /**
+   * Constructs a new instance of this class.
+   *
+   * @param repository The repository to download from.
+   * @param revision The revision to download, -1 for HEAD.
+   * @param threads The maximum number of concurrent downloads.
+   * @param executor The executor to perform the downloads on.
+   */
+  public ParallelDownloader(SvnRepository repository, long revision, int threads, Executor executor) {
+    this.repository = repository;
+    this.revision = revision;
+    this.threads = threads;
+    this.executor = executor;
+  }
+
+  /**
+   * Creates the factory used to create transfer threads.
+   *
+   * @param useVirtualThreads Whether to attempt to use virtual threads.
+   * @return A thread factory.
+   */
+  static ThreadFactory createThreadFactory(boolean useVirtualThreads) {
+    if (useVirtualThreads) {
+      try { // looked up reflectively as this is compiled against JVMs which don't have virtual threads
+        Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+        return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+      } catch (Exception e) {
+        Message.warn("Virtual threads not supported by this JVM, using platform threads for transfers");
+      }
+    }
+    return new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "ivysvn-transfer-" + count.incrementAndGet());
+        thread.setDaemon(true); // never keep the JVM alive just for transfers
+        return thread;
+      }
+    };
+  }
+
+  /**
+   * Schedules the passed file to be downloaded in the background. Scheduling a file which is already scheduled has no
+   * effect.
+   * 
+   * @param repositorySource Full path to the file in subversion.
+   */
+  public void schedule(String repositorySource) {
+    schedule(null, Collections.singletonList(repositorySource));
+  }
+
+  /**
+   * Schedules the passed files, which must all be in the passed folder, to be downloaded in the background using a
+   * single request. Scheduling files which are already scheduled has no effect.
+   * 
+   * @param folderSource Full path to the folder in subversion.
+   * @param repositorySources Full paths to the files in subversion.
+   */
+  public void scheduleFolder(String folderSource, List<String> repositorySources) {
+    schedule(folderSource, repositorySources);
+  }
+
+  private synchronized void schedule(String folderSource, List<String> repositorySources) {
+    List<String> unscheduled = new ArrayList<String>();
+    for (String repositorySource : repositorySources) {
+      if (!tasks.containsKey(repositorySource)) {
+        unscheduled.add(repositorySource);
+      }
+    }
+    if (unscheduled.isEmpty()) {
+      return;
+    }
+    DownloadTask task = new DownloadTask(unscheduled.size() == 1 ? null : folderSource, unscheduled);
+    final FutureTask<Map<String, File>> future = new FutureTask<Map<String, File>>(task);
+    task.future = future;
+    for (String repositorySource : unscheduled) {
+      tasks.put(repositorySource, task);
+    }
+    Runnable download = new Runnable() {
+      public void run() {
+        try {
+          future.run(); // does nothing if discarded while waiting
+        } finally {
+          downloadFinished();
+        }
+      }
+    };
+    if (running < threads) {
+      running++;
+      executor.execute(download);
+    } else {
+      waiting.add(download);
+    }
+  }
+
+  /**
+   * Passes the next waiting download (if any) to the executor in place of one which has finished.
+   */
+  private synchronized void downloadFinished() {
+    Runnable next = waiting.poll();
+    if (next == null) {
+      running--;
+    } else {
+      executor.execute(next);
+    }
+  }
+
+  /**
+   * Takes the result of a scheduled download, waiting for it to complete if necessary. The caller becomes the owner of
+   * the returned file and is responsible for moving or deleting it.
+   * 
+   * @param repositorySource Full path to the file in subversion.
+   * @param timeout The maximum time to wait in milliseconds, 0 or less to wait until the download completes.
+   * @return The downloaded file, or null if the file wasn't scheduled, the download failed or didn't complete in time.
+   */
+  public File take(String repositorySource, long timeout) {
+    DownloadTask task = null;
+    synchronized (this) {
+      task = tasks.remove(repositorySource);
+    }
+    if (task == null) {
+      return null;
+    }
+    try {
+      if (timeout > 0) {
+        task.future.get(timeout, TimeUnit.MILLISECONDS);
+      } else {
+        task.future.get();
+      }
+      return task.take(repositorySource);
+    } catch (ExecutionException e) {
+      // let the caller retry the download itself so any error is reported in the normal way
+      Message.debug("Background download of " + repositorySource + " failed: " + e.getCause());
+    } catch (CancellationException e) {
+      // discarded
+    } catch (TimeoutException e) {
+      Message.debug("Timed out waiting for background download of " + repositorySource);
+      task.abandon(repositorySource); // other files in the same download may still be taken
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      task.abandon(repositorySource);
+    }
+    return null;
+  }
+
+  /**
+   * Discards all downloads which have not been taken, deleting any staged files.
+   */
+  public void discardAll() {
+    Set<DownloadTask> discarded = null;
+    synchronized (this) {
+      discarded = new HashSet<DownloadTask>(tasks.values());
+      tasks.clear();
+    }
+    for (DownloadTask task : discarded) {
+      task.discard();
+    }
+  }
+
+  /**
+   * Discards any downloads that have not been taken, after which no more should be scheduled. The executor is left
+   * running for the other transfers sharing it.
+   */
+  public void shutdown() {
+    discardAll();
+  }
+
+  /**
+   * A background download of one or more files.
+   */
+  private class DownloadTask implements Callable<Map<String, File>> {
+
+    /**
+     * The folder containing the files if they are to be downloaded using a single request, otherwise null.
+     */
+    private final String folderSource;
+    private final List<String> repositorySources;
+
+    /**
+     * The files which have been neither taken nor abandoned.
+     */
+    private final Set<String> pending;
+    private Future<Map<String, File>> future;
+    private Map<String, File> downloaded;
+    private boolean discarded = false;
+
+    private DownloadTask(String folderSource, List<String> repositorySources) {
+      this.folderSource = folderSource;
+      this.repositorySources = repositorySources;
+      this.pending = new HashSet<String>(repositorySources);
+    }
+
+    public Map<String, File> call() throws IOException {
+      Map<String, File> files = null;
+      if (folderSource == null) {
+        String repositorySource = repositorySources.get(0);
+        File file = File.createTempFile("ivysvn-", ".download");
+        try {
+          repository.download(repositorySource, file, revision);
+        } catch (IOException e) {
+          file.delete();
+          throw e;
+        }
+        files = Collections.singletonMap(repositorySource, file);
+      } else {
+        files = repository.downloadFolder(folderSource, repositorySources, revision);
+      }
+      synchronized (this) {
+        downloaded = new HashMap<String, File>();
+        for (Map.Entry<String, File> file : files.entrySet()) {
+          if (pending.contains(file.getKey())) {
+            downloaded.put(file.getKey(), file.getValue());
+          } else { // abandoned while downloading
+            file.getValue().delete();
+          }
+        }
+        if (discarded) {
+          deleteDownloaded();
+        }
+      }
+      return files;
+    }
+
+    /**
+     * Takes one of the downloaded files.
+     * 
+     * @param repositorySource Full path to the file in subversion.
+     * @return The file, or null if it wasn't downloaded.
+     */
+    private synchronized File take(String repositorySource) {
+      pending.remove(repositorySource);
+      return downloaded == null ? null : downloaded.remove(repositorySource);
+    }
+
+    /**
+     * Stops waiting for one of the files, which is deleted once downloaded. The download is only discarded once none of
+     * its files are wanted.
+     * 
+     * @param repositorySource Full path to the file in subversion.
+     */
+    private void abandon(String repositorySource) {
+      synchronized (this) {
+        pending.remove(repositorySource);
+        if (!pending.isEmpty()) {
+          File file = downloaded == null ? null : downloaded.remove(repositorySource);
+          if (file != null) {
+            file.delete();
+          }
+          return;
+        }
+      }
+      discard();
+    }
+
+    /**
+     * Discards this download, deleting any downloaded files which have not been taken.
+     */
+    private void discard() {
+      future.cancel(false);
+      synchronized (this) {
+        discarded = true;
+        deleteDownloaded();
+      }
+    }
+
+    private void deleteDownloaded() {
+      if (downloaded != null) {
+        for (File file : downloaded.values()) {
+          file.delete();
+        }
+        downloaded.clear();
+      }
+    }
+  }
+
+}
@@ -20,6 +20,7 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 import org.tmatesoft.svn.core.SVNException;
 
@@ -39,9 +40,14 @@ public class PutOperation {
   private boolean overwrite;
 
   /**
-   * The contents of the file.
+   * The file the contents are read from, either the file to put or a private copy of it.
    */
-  byte[] data;
+  private File dataFile;
+
+  /**
+   * The SHA-1 and MD5 checksums of the contents, null until computed.
+   */
+  private String[] checksums;
 
   /**
    * The folder path of the file.
@@ -58,6 +64,11 @@ public class PutOperation {
    */
   private String fileName;
 
+  /**
+   * Whether the repository already holds identical contents at the destination, in which case the file is not put.
+   */
+  private boolean unchanged = false;
+
   /**
    * Constructs a new PutOperation.
    * 
@@ -68,10 +79,11 @@ public class PutOperation {
    */
   public PutOperation(File file, String destination, boolean overwrite) throws IOException {
     this.file = file;
+    this.dataFile = file;
     if (file.getName().startsWith("ivytemp") || file.getAbsolutePath().startsWith(System.getProperty("java.io.tmpdir"))) {
-      // most likely a checksum generated by ivy, we need to store file in memory as ivy deletes this
+      // most likely a checksum generated by ivy, we need to keep a copy as ivy deletes this
       // inbetween calls to put so it will be gone when we try publish transaction
-      loadFileData();
+      copyFileData();
     }
     this.destination = destination;
     this.overwrite = overwrite;
@@ -94,25 +106,24 @@ public class PutOperation {
   }
 
   /**
-   * Loads the file data from disk into an in-memory byte array.
+   * Copies the file to a private temporary file which the contents are read from instead, and which is deleted by
+   * {@link #dispose()}.
    * 
-   * @throws IOException If an error occurs reading the file.
+   * @throws IOException If an error occurs copying the file.
    */
-  private void loadFileData() throws IOException {
-    BufferedInputStream fileInputStream = null;
+  private void copyFileData() throws IOException {
+    if (!file.isFile()) {
+      throw new IOException("No file data found.");
+    }
+    File copy = File.createTempFile("ivysvn-", ".publish");
+    copy.deleteOnExit();
     try {
-      if (file != null && file.isFile()) {
-        data = new byte[(int) file.length()];
-        fileInputStream = new BufferedInputStream(new FileInputStream(file));
-        fileInputStream.read(data); // convert from file to byte array
-      } else {
-        throw new IOException("No file data found.");
-      }
-    } finally {
-      if (fileInputStream != null) {
-        fileInputStream.close();
-      }
+      SvnUtils.copyFile(file, copy);
+    } catch (IOException e) {
+      copy.delete();
+      throw e;
     }
+    dataFile = copy;
   }
 
   /**
@@ -186,16 +197,72 @@ public class PutOperation {
   }
 
   /**
-   * Returns this operations file data as a byte[].
+   * @return Whether the repository already holds identical contents at this operation's destination.
+   */
+  public boolean isUnchanged() {
+    return unchanged;
+  }
+
+  /**
+   * @param unchanged Whether the repository already holds identical contents at this operation's destination.
+   */
+  public void setUnchanged(boolean unchanged) {
+    this.unchanged = unchanged;
+  }
+
+  /**
+   * Opens a stream over this operation's file data, which the caller must close.
+   * 
+   * @return The stream.
+   * @throws IOException If the file data cannot be read.
+   */
+  public InputStream openData() throws IOException {
+    if (!dataFile.isFile()) {
+      throw new IOException("No file data found.");
+    }
+    return new BufferedInputStream(new FileInputStream(dataFile));
+  }
+
+  /**
+   * @return The size of this operation's file data in bytes.
+   */
+  public long getLength() {
+    return dataFile.length();
+  }
+
+  /**
+   * Gets the checksums of this operation's file data, computed the first time they are needed.
+   * 
+   * @return The SHA-1 and MD5 checksums, as hex strings.
+   * @throws IOException If the file data cannot be read.
+   */
+  public String[] getChecksums() throws IOException {
+    if (checksums == null) {
+      if (!dataFile.isFile()) {
+        throw new IOException("No file data found.");
+      }
+      checksums = SvnUtils.computeChecksums(dataFile);
+    }
+    return checksums;
+  }
+
+  /**
+   * Adds this operation's file data to the passed content store.
    * 
-   * @return The file data as a byte array.
-   * @throws IOException If an error occurs reading the file data.
+   * @param store The store.
+   * @throws IOException If the file data cannot be read or added to the store.
+   */
+  public void addTo(ContentStore store) throws IOException {
+    store.insert(getChecksums()[1], dataFile);
+  }
+
+  /**
+   * Deletes any private copy of the file data made by this operation, after which it can no longer be performed.
    */
-  public byte[] getData() throws IOException {
-    if (data == null) {
-      loadFileData();
+  public void dispose() {
+    if (dataFile != file) {
+      dataFile.delete();
     }
-    return data;
   }
 
 }
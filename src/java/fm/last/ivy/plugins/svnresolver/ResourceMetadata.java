@@ -0,0 +1,135 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import org.tmatesoft.svn.core.SVNDirEntry;
+import org.tmatesoft.svn.core.SVNNodeKind;
+
+/**
+ * Immutable description of a single path in Subversion at a certain revision.
+ */
+public class ResourceMetadata {
+
+  private final String name;
+  private final SVNNodeKind kind;
+  private final long size;
+  private final long lastModified;
+  private final String checksum;
+
+  /**
+   * Constructs a new instance of this class.
+   * 
+   * @param name The name of the path (i.e. the last path segment).
+   * @param kind The kind of node at the path, SVNNodeKind.NONE if there is nothing at the path.
+   * @param size The size in bytes (0 for folders).
+   * @param lastModified When the path was last modified (committed).
+   * @param checksum The MD5 checksum of the file contents, null if not known.
+   */
+  public ResourceMetadata(String name, SVNNodeKind kind, long size, long lastModified, String checksum) {
+    this.name = name;
+    this.kind = kind;
+    this.size = size;
+    this.lastModified = lastModified;
+    this.checksum = checksum;
+  }
+
+  /**
+   * Creates metadata for a path where nothing exists.
+   * 
+   * @param name The name of the path.
+   * @return The metadata.
+   */
+  public static ResourceMetadata missing(String name) {
+    return new ResourceMetadata(name, SVNNodeKind.NONE, 0, 0, null);
+  }
+
+  /**
+   * Creates metadata from an entry returned by Subversion.
+   * 
+   * @param entry The entry.
+   * @return The metadata.
+   */
+  public static ResourceMetadata fromEntry(SVNDirEntry entry) {
+    long lastModified = entry.getDate() == null ? 0 : entry.getDate().getTime();
+    return new ResourceMetadata(entry.getName(), entry.getKind(), entry.getSize(), lastModified, null);
+  }
+
+  /**
+   * @return The name of the path (i.e. the last path segment).
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return The kind of node at the path.
+   */
+  public SVNNodeKind getKind() {
+    return kind;
+  }
+
+  /**
+   * @return Whether anything exists at the path.
+   */
+  public boolean exists() {
+    return kind != SVNNodeKind.NONE;
+  }
+
+  /**
+   * @return The size in bytes.
+   */
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * @return When the path was last modified (committed).
+   */
+  public long getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * @return The MD5 checksum of the file contents, null if not known.
+   */
+  public String getChecksum() {
+    return checksum;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof ResourceMetadata)) {
+      return false;
+    }
+    ResourceMetadata metadata = (ResourceMetadata) other;
+    return name.equals(metadata.name) && kind == metadata.kind && size == metadata.size
+        && lastModified == metadata.lastModified
+        && (checksum == null ? metadata.checksum == null : checksum.equals(metadata.checksum));
+  }
+
+  @Override
+  public int hashCode() {
+    return name.hashCode() * 31 + (int) (size ^ (size >>> 32));
+  }
+
+  @Override
+  public String toString() {
+    return name + " [kind=" + kind + ", size=" + size + ", lastModified=" + lastModified + ", checksum=" + checksum
+        + "]";
+  }
+
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.ivy.util.Message;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+
+/**
+ * Runs calls to Subversion, retrying those which fail with transient errors (e.g. dropped connections) after a jittered
+ * exponential backoff. Failures are also tracked per host by a circuit breaker shared by all repositories in the JVM:
+ * once enough consecutive calls to a host have failed, further calls fail immediately until the host has been left
+ * alone for a while, after which a single call is let through to test it.
+ */
+public class RetryPolicy {
+
+  /**
+   * The default number of attempts made for each call.
+   */
+  public static final int DEFAULT_ATTEMPTS = 3;
+
+  /**
+   * The default time (in milliseconds) to wait before the first retry, doubled for each further retry.
+   */
+  public static final long DEFAULT_BACKOFF = 250;
+
+  /**
+   * The longest time (in milliseconds) to wait before a retry.
+   */
+  private static final long MAX_BACKOFF = 10 * 1000;
+
+  /**
+   * The default number of consecutive failed calls to a host which opens its circuit breaker.
+   */
+  public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+  /**
+   * The default time (in milliseconds) a host's circuit breaker stays open for.
+   */
+  public static final long DEFAULT_OPEN_TIME = 30 * 1000;
+
+  /**
+   * Circuit breakers, where the key is protocol://host:port.
+   */
+  private static final Map<String, CircuitBreaker> breakers = new HashMap<String, CircuitBreaker>();
+
+  private static final Random random = new Random();
+
+  private int attempts = DEFAULT_ATTEMPTS;
+
+  private long backoff = DEFAULT_BACKOFF;
+
+  private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+
+  private long openTime = DEFAULT_OPEN_TIME;
+
+  /**
+   * A call to Subversion which can safely be made again if it fails.
+   * 
+   * @param <T> The type of the call's result.
+   */
+  public interface RemoteCall<T> {
+
+    /**
+     * Makes the call.
+     * 
+     * @return The result.
+     * @throws SVNException If an error occurs talking to Subversion.
+     * @throws IOException If an error occurs handling the result.
+     */
+    T call() throws SVNException, IOException;
+
+  }
+
+  /**
+   * Makes a call to a host, retrying it if it fails with a transient error.
+   * 
+   * @param url A URL on the host the call is made to.
+   * @param call The call.
+   * @return The call's result.
+   * @throws SVNException If the call fails with an error which isn't transient, fails on every attempt, or the host's
+   *           circuit breaker is open.
+   * @throws IOException If the call fails handling its result.
+   */
+  public <T> T execute(SVNURL url, RemoteCall<T> call) throws SVNException, IOException {
+    return execute(url, call, true);
+  }
+
+  /**
+   * Makes a call to a host.
+   * 
+   * @param url A URL on the host the call is made to.
+   * @param call The call.
+   * @param retry Whether to retry the call if it fails with a transient error, if not the call is only subject to the
+   *          host's circuit breaker.
+   * @return The call's result.
+   * @throws SVNException If the call fails with an error which isn't transient, fails on every attempt, or the host's
+   *           circuit breaker is open.
+   * @throws IOException If the call fails handling its result.
+   */
+  public <T> T execute(SVNURL url, RemoteCall<T> call, boolean retry) throws SVNException, IOException {
+    String host = url.getProtocol() + "://" + url.getHost() + ":" + url.getPort();
+    CircuitBreaker breaker = getCircuitBreaker(host);
+    int maxAttempts = retry ? attempts : 1;
+    for (int attempt = 1;; attempt++) {
+      if (!breaker.allowRequest(openTime)) {
+        throw new CircuitOpenException(SVNErrorMessage.create(SVNErrorCode.UNKNOWN,
+            "Failing fast after repeated errors talking to {0}, retrying after {1}ms", new Object[] {host, openTime}));
+      }
+      try {
+        T result = call.call();
+        breaker.recordSuccess();
+        return result;
+      } catch (IOException e) {
+        breaker.recordSuccess(); // failed handling the result, not talking to the host
+        throw e;
+      } catch (RuntimeException e) {
+        breaker.recordSuccess();
+        throw e;
+      } catch (SVNException e) {
+        if (!isRetryable(e)) {
+          breaker.recordSuccess(); // the host answered
+          throw e;
+        }
+        if (breaker.recordFailure(failureThreshold)) {
+          Message.warn("Repeated errors talking to " + host + ", failing fast for " + openTime + "ms");
+        }
+        if (attempt >= maxAttempts) {
+          throw e;
+        }
+        long wait = getBackoff(attempt);
+        Message.info("Error talking to " + host + " (attempt " + attempt + " of " + maxAttempts + "), retrying in "
+            + wait + "ms: " + e.getMessage());
+        try {
+          Thread.sleep(wait);
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+          throw e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Determines whether the passed error is transient, i.e. whether the call which caused it may succeed if retried.
+   * 
+   * @param e An error.
+   * @return true if the error is transient.
+   */
+  public static boolean isRetryable(SVNException e) {
+    SVNErrorCode errorCode = e.getErrorMessage().getErrorCode();
+    if (errorCode == SVNErrorCode.RA_SVN_CONNECTION_CLOSED || errorCode == SVNErrorCode.RA_SVN_IO_ERROR
+        || errorCode == SVNErrorCode.RA_SVN_MALFORMED_DATA || errorCode == SVNErrorCode.RA_DAV_REQUEST_FAILED
+        || errorCode == SVNErrorCode.RA_DAV_SOCK_INIT || errorCode == SVNErrorCode.RA_DAV_MALFORMED_DATA
+        || errorCode == SVNErrorCode.IO_ERROR) {
+      return true;
+    }
+    return e.getCause() instanceof IOException; // e.g. a socket timeout
+  }
+
+  /**
+   * Determines whether the passed error, thrown by {@link #execute(SVNURL, RemoteCall)}, means the host could not be
+   * reached, i.e. the call failed with a transient error on every attempt or the host's circuit breaker is open.
+   * 
+   * @param e An error.
+   * @return true if the host could not be reached.
+   */
+  public static boolean isUnreachable(SVNException e) {
+    return e instanceof CircuitOpenException || isRetryable(e);
+  }
+
+  /**
+   * Gets the time to wait before retrying, a random time between half and all of the exponential backoff for the
+   * attempt so that clients which failed together don't all retry together.
+   * 
+   * @param attempt The attempt which failed, starting at 1.
+   * @return The time to wait in milliseconds.
+   */
+  long getBackoff(int attempt) {
+    long exponential = Math.min(MAX_BACKOFF, backoff << Math.min(attempt - 1, 20));
+    long half = exponential / 2;
+    synchronized (random) {
+      return half + (long) (random.nextDouble() * (exponential - half));
+    }
+  }
+
+  private static CircuitBreaker getCircuitBreaker(String host) {
+    synchronized (breakers) {
+      CircuitBreaker breaker = breakers.get(host);
+      if (breaker == null) {
+        breaker = new CircuitBreaker();
+        breakers.put(host, breaker);
+      }
+      return breaker;
+    }
+  }
+
+  /**
+   * Closes all circuit breakers, so every host is tried again.
+   */
+  public static void resetCircuitBreakers() {
+    synchronized (breakers) {
+      breakers.clear();
+    }
+  }
+
+  /**
+   * Sets the number of attempts made for each call, 1 disables retries.
+   * 
+   * @param attempts The number of attempts.
+   */
+  public void setAttempts(int attempts) {
+    this.attempts = Math.max(1, attempts);
+  }
+
+  /**
+   * Sets the time to wait before the first retry, doubled for each further retry.
+   * 
+   * @param backoff The time in milliseconds.
+   */
+  public void setBackoff(long backoff) {
+    this.backoff = Math.max(0, backoff);
+  }
+
+  /**
+   * Sets the number of consecutive failed calls to a host which opens its circuit breaker, 0 or less disables circuit
+   * breaking.
+   * 
+   * @param failureThreshold The number of failed calls.
+   */
+  public void setFailureThreshold(int failureThreshold) {
+    this.failureThreshold = failureThreshold;
+  }
+
+  /**
+   * Sets the time a host's circuit breaker stays open for before a call is let through to test the host.
+   * 
+   * @param openTime The time in milliseconds.
+   */
+  public void setOpenTime(long openTime) {
+    this.openTime = openTime;
+  }
+
+  /**
+   * Thrown instead of making a call to a host whose circuit breaker is open.
+   */
+  private static class CircuitOpenException extends SVNException {
+
+    private static final long serialVersionUID = 1L;
+
+    private CircuitOpenException(SVNErrorMessage errorMessage) {
+      super(errorMessage);
+    }
+  }
+
+  /**
+   * Circuit breaker for a single host.
+   */
+  private static class CircuitBreaker {
+    private int failures = 0;
+    private long openedAt = -1;
+    private boolean testing = false;
+
+    /**
+     * Determines whether a call may be made, letting a single call through once the breaker has been open long enough.
+     */
+    private synchronized boolean allowRequest(long openTime) {
+      if (openedAt < 0) {
+        return true;
+      }
+      if (!testing && System.currentTimeMillis() - openedAt >= openTime) {
+        testing = true;
+        return true;
+      }
+      return false;
+    }
+
+    private synchronized void recordSuccess() {
+      failures = 0;
+      openedAt = -1;
+      testing = false;
+    }
+
+    /**
+     * @return true if this failure opened the breaker.
+     */
+    private synchronized boolean recordFailure(int failureThreshold) {
+      failures++;
+      if (testing) { // the test call failed, stay open
+        testing = false;
+        openedAt = System.currentTimeMillis();
+        return false;
+      }
+      if (failureThreshold > 0 && openedAt < 0 && failures >= failureThreshold) {
+        openedAt = System.currentTimeMillis();
+        return true;
+      }
+      return false;
+    }
+  }
+
+}
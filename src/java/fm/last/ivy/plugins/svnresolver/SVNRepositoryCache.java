@@ -17,29 +17,76 @@
 package fm.last.ivy.plugins.svnresolver;
 
 import java.io.File;
+import java.io.UnsupportedEncodingException;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
 import java.util.Map;
 
+import org.apache.ivy.util.Message;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNURL;
 import org.tmatesoft.svn.core.io.SVNRepository;
 
 /**
- * Simple cache of SVNRepository instances stored against their host and protocol. Used by ivy-svn so that the
- * authentication mechanism only needs to be setup once per set of operations (retrieve/publish) instead of per file
- * within an operation.
+ * Pool of SVNRepository instances stored against the full set of connection credentials (protocol, host, port, user,
+ * key file, SSH port, certificate file and a hash of the password and passphrases). Used by ivy-svn so that the
+ * authentication mechanism only needs to be setup once per session instead of per file, while still allowing several
+ * threads to talk to Subversion concurrently.
+ *
+ * Repositories are checked out using {@link #borrowRepository} and MUST be handed back using
+ * {@link #returnRepository} once the caller is finished with them, they should never be shared between threads while
+ * checked out. The number of open repositories per host is limited and idle repositories are closed after a timeout,
+ * both of which are passed by each borrower so that resolvers with different settings don't override each other.
  */
 public class SVNRepositoryCache {
 
+  /**
+   * The default maximum number of open repositories per host.
+   */
+  public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+
+  /**
+   * The default time (in milliseconds) after which an idle repository is closed.
+   */
+  public static final long DEFAULT_IDLE_TIMEOUT = 60 * 1000;
+
+  /**
+   * The default time (in milliseconds) a repository can be idle for before it is validated when borrowed.
+   */
+  public static final long DEFAULT_VALIDATION_INTERVAL = 10 * 1000;
+
+  /**
+   * The default time (in milliseconds) to wait for a repository to become available.
+   */
+  public static final long DEFAULT_BORROW_TIMEOUT = 5 * 60 * 1000;
+
   /**
    * Singleton instance of this cache.
    */
   private static SVNRepositoryCache instance = new SVNRepositoryCache();
 
   /**
-   * Cache of SVNRepository instances where the key is protocol:host.
+   * Idle repositories, where the key is made up of all values used to create the repository.
    */
-  private Map<String, SVNRepository> repositoryCache = new HashMap<String, SVNRepository>();
+  private Map<String, LinkedList<PooledRepository>> idleRepositories =
+      new HashMap<String, LinkedList<PooledRepository>>();
+
+  /**
+   * The number of open repositories (checked out or idle), where the key is protocol:host:port.
+   */
+  private Map<String, Integer> openCounts = new HashMap<String, Integer>();
+
+  /**
+   * Repositories that are currently checked out.
+   */
+  private Map<SVNRepository, PooledRepository> checkedOut = new IdentityHashMap<SVNRepository, PooledRepository>();
+
+  private long validationInterval = DEFAULT_VALIDATION_INTERVAL;
+
+  private long borrowTimeout = DEFAULT_BORROW_TIMEOUT;
 
   /**
    * Private constructor to enfore singleton pattern.
@@ -49,7 +96,7 @@ public class SVNRepositoryCache {
 
   /**
    * Gets the one and only instance of this class.
-   * 
+   *
    * @return The one and only instance of this class.
    */
   public static SVNRepositoryCache getInstance() {
@@ -57,11 +104,9 @@ public class SVNRepositoryCache {
   }
 
   /**
-   * Gets a repository instance for the passed URL. The same instance will be returned for the same protocol + host
-   * combination. If the repository cannot be found in the cache a new one will be created, the passed parameters
-   * determine the authentication mechanism which will be used for this. The returned repository will have its location
-   * set to the passed url.
-   * 
+   * Borrows a repository instance for the passed URL using the default pool settings, see
+   * {@link #borrowRepository(SVNURL, String, String, File, String, int, File, String, boolean, int, long)}.
+   *
    * @param url A SVNURL object with at the very least the protocol and host set.
    * @param userName Subversion user name.
    * @param userPassword Subversion password.
@@ -71,21 +116,265 @@ public class SVNRepositoryCache {
    * @param certFile SSL certificate file.
    * @param sslPassphrase SSL certificate passphrase.
    * @param storageAllowed Whether to allow credential storage or not.
-   * @return A repository for the passed url.
-   * @throws SVNException If an error occurs creating the repository.
+   * @return A repository for the passed url, which must be passed to {@link #returnRepository} after use.
+   * @throws SVNException If an error occurs creating the repository or none became available in time.
    */
-  public synchronized SVNRepository getRepository(SVNURL url, String userName, String userPassword, File keyFile,
+  public SVNRepository borrowRepository(SVNURL url, String userName, String userPassword, File keyFile,
       String sshPassphrase, int portNumber, File certFile, String sslPassphrase, boolean storageAllowed)
     throws SVNException {
-    String key = url.getProtocol() + ":" + url.getHost();
-    SVNRepository repository = repositoryCache.get(key);
-    if (repository == null) {
-      repository = SvnUtils.createRepository(url, userName, userPassword, keyFile, sshPassphrase, portNumber, certFile,
-          sslPassphrase, storageAllowed);
-      repositoryCache.put(key, repository);
+    return borrowRepository(url, userName, userPassword, keyFile, sshPassphrase, portNumber, certFile, sslPassphrase,
+        storageAllowed, DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_IDLE_TIMEOUT);
+  }
+
+  /**
+   * Borrows a repository instance for the passed URL. An idle repository created with the same credentials will be
+   * reused if possible, otherwise a new one will be created, the passed parameters determine the authentication
+   * mechanism which will be used for this. If the maximum number of repositories for the host are already open this
+   * will block until one is returned. The returned repository will have its location set to the passed url.
+   *
+   * @param url A SVNURL object with at the very least the protocol and host set.
+   * @param userName Subversion user name.
+   * @param userPassword Subversion password.
+   * @param keyFile SSH Key file.
+   * @param sshPassphrase SSH key file passphrase.
+   * @param portNumber SSH port number.
+   * @param certFile SSL certificate file.
+   * @param sslPassphrase SSL certificate passphrase.
+   * @param storageAllowed Whether to allow credential storage or not.
+   * @param maxConnectionsPerHost The maximum number of repositories the caller allows to be open to the host.
+   * @param idleTimeout The time (in milliseconds) after which the repository is closed once returned, if it isn't
+   *          borrowed again.
+   * @return A repository for the passed url, which must be passed to {@link #returnRepository} after use.
+   * @throws SVNException If an error occurs creating the repository or none became available in time.
+   */
+  public SVNRepository borrowRepository(SVNURL url, String userName, String userPassword, File keyFile,
+      String sshPassphrase, int portNumber, File certFile, String sslPassphrase, boolean storageAllowed,
+      int maxConnectionsPerHost, long idleTimeout) throws SVNException {
+    if (maxConnectionsPerHost < 1) {
+      throw new IllegalArgumentException("maxConnectionsPerHost must be at least 1");
+    }
+    String hostKey = url.getProtocol() + ":" + url.getHost() + ":" + url.getPort();
+    String key = hostKey + ":" + userName + ":" + keyFile + ":" + portNumber + ":" + certFile + ":" + storageAllowed
+        + ":" + hashSecrets(userPassword, sshPassphrase, sslPassphrase);
+    PooledRepository idle = null;
+    synchronized (this) {
+      long waitUntil = System.currentTimeMillis() + borrowTimeout;
+      while (true) {
+        evictIdleRepositories();
+        LinkedList<PooledRepository> idleList = idleRepositories.get(key);
+        if (idleList != null && !idleList.isEmpty()) {
+          idle = idleList.removeFirst(); // most recently used first, most likely to still be connected
+          break;
+        }
+        if (getOpenCount(hostKey) < maxConnectionsPerHost) {
+          openCounts.put(hostKey, getOpenCount(hostKey) + 1); // reserve a slot for the repository we will create
+          break;
+        }
+        if (!closeIdleRepository(hostKey)) { // nothing idle for this host we can close to make room, so wait
+          long timeLeft = waitUntil - System.currentTimeMillis();
+          if (timeLeft <= 0) {
+            throw new SVNException(SVNErrorMessage.create(SVNErrorCode.RA_SVN_IO_ERROR,
+                "Timed out waiting for a connection to {0}", hostKey));
+          }
+          try {
+            wait(timeLeft);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SVNException(SVNErrorMessage.create(SVNErrorCode.CANCELLED,
+                "Interrupted waiting for a connection to {0}", hostKey));
+          }
+        }
+      }
+    }
+
+    SVNRepository repository = null;
+    try {
+      if (idle != null) {
+        repository = idle.repository;
+        if (System.currentTimeMillis() - idle.idleSince > validationInterval) {
+          try {
+            repository.testConnection();
+          } catch (SVNException e) {
+            Message.debug("Discarding stale connection to " + hostKey + ": " + e.getMessage());
+            repository.closeSession();
+            repository = null;
+          }
+        }
+      }
+      if (repository == null) {
+        repository = SvnUtils.createRepository(url, userName, userPassword, keyFile, sshPassphrase, portNumber,
+            certFile, sslPassphrase, storageAllowed);
+      }
+      repository.setLocation(url, false);
+    } catch (SVNException e) {
+      releaseSlot(hostKey);
+      throw e;
+    }
+    synchronized (this) {
+      checkedOut.put(repository, new PooledRepository(repository, key, hostKey, idleTimeout));
     }
-    repository.setLocation(url, false);
     return repository;
   }
 
+  /**
+   * Hashes the secrets used to authenticate a repository, so that repositories authenticated with different secrets
+   * are pooled separately without the secrets themselves being held in the pool's keys.
+   *
+   * @param secrets The secrets, any of which may be null.
+   * @return A SHA-1 hash of the secrets.
+   */
+  private static String hashSecrets(String... secrets) {
+    StringBuilder joined = new StringBuilder();
+    for (String secret : secrets) {
+      // prefixed so that a null secret can't hash the same as any string
+      joined.append(secret == null ? "-" : "+" + secret).append('\0');
+    }
+    try {
+      return SvnUtils.computeChecksum(joined.toString().getBytes("UTF-8"), "SHA-1");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException("UTF-8 not supported", e);
+    }
+  }
+
+  /**
+   * Returns a repository previously obtained via {@link #borrowRepository} to the pool so it can be reused.
+   *
+   * @param repository The repository to return, null values are ignored.
+   */
+  public synchronized void returnRepository(SVNRepository repository) {
+    if (repository == null) {
+      return;
+    }
+    PooledRepository pooled = checkedOut.remove(repository);
+    if (pooled == null) {
+      throw new IllegalStateException("Repository was not borrowed from this cache");
+    }
+    LinkedList<PooledRepository> idleList = idleRepositories.get(pooled.key);
+    if (idleList == null) {
+      idleList = new LinkedList<PooledRepository>();
+      idleRepositories.put(pooled.key, idleList);
+    }
+    pooled.idleSince = System.currentTimeMillis();
+    idleList.addFirst(pooled);
+    notifyAll();
+  }
+
+  /**
+   * Closes all idle repositories.
+   */
+  public synchronized void clear() {
+    for (PooledRepository idle : idleEntries()) {
+      closeIdleRepository(idle);
+    }
+  }
+
+  /**
+   * Closes any repositories which have been idle for longer than the idle timeout they were borrowed with.
+   */
+  private void evictIdleRepositories() {
+    long now = System.currentTimeMillis();
+    for (PooledRepository idle : idleEntries()) {
+      if (now - idle.idleSince > idle.idleTimeout) {
+        closeIdleRepository(idle);
+      }
+    }
+  }
+
+  /**
+   * Closes the longest idle repository for the passed host, regardless of the credentials it was created with.
+   *
+   * @param hostKey The host key.
+   * @return true if a repository was closed, false if there were no idle repositories for the host.
+   */
+  private boolean closeIdleRepository(String hostKey) {
+    PooledRepository oldest = null;
+    for (PooledRepository idle : idleEntries()) {
+      if (idle.hostKey.equals(hostKey) && (oldest == null || idle.idleSince < oldest.idleSince)) {
+        oldest = idle;
+      }
+    }
+    if (oldest == null) {
+      return false;
+    }
+    closeIdleRepository(oldest);
+    return true;
+  }
+
+  private void closeIdleRepository(PooledRepository idle) {
+    LinkedList<PooledRepository> idleList = idleRepositories.get(idle.key);
+    idleList.remove(idle);
+    if (idleList.isEmpty()) {
+      idleRepositories.remove(idle.key);
+    }
+    idle.repository.closeSession();
+    decrementOpenCount(idle.hostKey);
+  }
+
+  private synchronized void releaseSlot(String hostKey) {
+    decrementOpenCount(hostKey);
+    notifyAll();
+  }
+
+  private void decrementOpenCount(String hostKey) {
+    int count = getOpenCount(hostKey) - 1;
+    if (count <= 0) {
+      openCounts.remove(hostKey);
+    } else {
+      openCounts.put(hostKey, count);
+    }
+  }
+
+  private int getOpenCount(String hostKey) {
+    Integer count = openCounts.get(hostKey);
+    return count == null ? 0 : count;
+  }
+
+  /**
+   * @return A snapshot of all idle repositories, which is safe to modify the pool while iterating over.
+   */
+  private LinkedList<PooledRepository> idleEntries() {
+    LinkedList<PooledRepository> entries = new LinkedList<PooledRepository>();
+    for (LinkedList<PooledRepository> idleList : idleRepositories.values()) {
+      entries.addAll(idleList);
+    }
+    return entries;
+  }
+
+  /**
+   * Sets the time a repository can be idle for before it is validated (by testing its connection) when borrowed.
+   *
+   * @param validationInterval The validation interval in milliseconds.
+   */
+  public synchronized void setValidationInterval(long validationInterval) {
+    this.validationInterval = validationInterval;
+  }
+
+  /**
+   * Sets the maximum time to wait for a repository to become available.
+   *
+   * @param borrowTimeout The borrow timeout in milliseconds.
+   */
+  public synchronized void setBorrowTimeout(long borrowTimeout) {
+    this.borrowTimeout = borrowTimeout;
+  }
+
+  /**
+   * A pooled repository, the key it is stored against, the host it counts against, the idle timeout it was borrowed
+   * with and the time it was last returned to the pool.
+   */
+  private static class PooledRepository {
+    private final SVNRepository repository;
+    private final String key;
+    private final String hostKey;
+    private final long idleTimeout;
+    private long idleSince;
+
+    private PooledRepository(SVNRepository repository, String key, String hostKey, long idleTimeout) {
+      this.repository = repository;
+      this.key = key;
+      this.hostKey = hostKey;
+      this.idleTimeout = idleTimeout;
+    }
+  }
+
 }
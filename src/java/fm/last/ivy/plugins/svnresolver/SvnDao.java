@@ -16,36 +16,70 @@
  */
 package fm.last.ivy.plugins.svnresolver;
 
-import java.io.BufferedOutputStream;
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.ivy.util.Message;
+import org.tmatesoft.svn.core.ISVNDirEntryHandler;
 import org.tmatesoft.svn.core.SVNDirEntry;
-import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNProperty;
+import org.tmatesoft.svn.core.SVNPropertyValue;
 import org.tmatesoft.svn.core.SVNURL;
 import org.tmatesoft.svn.core.io.ISVNEditor;
 import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
 
 /**
- * Data access object that performs needed "CRUD" operations in Subversion.
+ * Data access object that performs needed "CRUD" operations in Subversion. Instances are not thread-safe, as the
+ * repository they read from can only serve one request at a time: each instance must be confined to the thread (or
+ * operation) that owns its repository.
+ * <p>
+ * All paths are relative to the location of the repository when this DAO was constructed (the session root), which
+ * the repository is kept at so that its connection stays open across calls.
  */
 public class SvnDao {
 
+  /**
+   * Property recording the SHA-1 checksum of a published artifact.
+   */
+  public static final String PROPERTY_SHA1 = "ivysvn:sha1";
+
+  /**
+   * Property recording the MD5 checksum of a published artifact, which matches the Subversion checksum of its contents
+   * for as long as they are unchanged since it was published.
+   */
+  public static final String PROPERTY_MD5 = "ivysvn:md5";
+
+  /**
+   * Folder property recording the checksums of all artifacts published to the folder, a line per artifact made up of
+   * its name, SHA-1 and MD5 checksums separated by spaces. Allows the checksums to be read along with a folder listing.
+   */
+  public static final String PROPERTY_CHECKSUMS = "ivysvn:checksums";
+
   /**
    * Repository to use to perform read operations.
    */
   private SVNRepository readRepository;
 
+  /**
+   * The location of the read repository that all paths are relative to.
+   */
   private SVNURL initialLocation;
   
   /**
@@ -53,6 +87,34 @@ public class SvnDao {
    */
   private Set<String> existingFolderPaths = new HashSet<String>();
 
+  /**
+   * Listener to report the progress of files put by {@link #putFile(ISVNEditor, InputStream, long, String[], String,
+   * String, boolean)} and {@link #putCopiedFile(ISVNEditor, InputStream, long, String[], String, String, long)} to,
+   * null if progress isn't reported.
+   */
+  private TransferMonitor.Listener transferListener;
+
+  /**
+   * The number of bytes put between progress reports.
+   */
+  private long progressInterval = TransferMonitor.DEFAULT_PROGRESS_INTERVAL;
+
+  /**
+   * Whether overwritten files are sent as deltas against their current contents.
+   */
+  private boolean sendDeltas = false;
+
+  /**
+   * Store to read the current contents of overwritten files from before fetching them, null if there is none.
+   */
+  private ContentStore baseStore;
+
+  /**
+   * Folders listed (along with their properties) before a commit, where the key is the folder path, used to answer
+   * reads at HEAD without a request each. Null if nothing has been prefetched.
+   */
+  private Map<String, PrefetchedFolder> prefetchedFolders = null;
+
   /**
    * Constructs a new instance of this class. The passed repository will be used for all "read" operations in
    * subversion. This repository MUST not be used for any commit operations and should preferably not be used outside of
@@ -68,7 +130,8 @@ public class SvnDao {
 
   /**
    * Puts a file into Subversion, does update or add depending on whether file already exists or not. Folder containing
-   * file *must* already exist.
+   * file *must* already exist. Unless the file is itself a checksum file, its checksums are recorded in the
+   * {@link #PROPERTY_SHA1} and {@link #PROPERTY_MD5} properties.
    * 
    * @param editor An initialised commit editor.
    * @param data File data as a byte array.
@@ -81,8 +144,32 @@ public class SvnDao {
    */
   public boolean putFile(ISVNEditor editor, byte[] data, String destinationFolder, String fileName, boolean overwrite)
     throws SVNException {
+    String[] checksums = new String[] {SvnUtils.computeChecksum(data, "SHA-1"), SvnUtils.computeChecksum(data)};
+    return putFile(editor, new ByteArrayInputStream(data), data.length, checksums, destinationFolder, fileName,
+        overwrite);
+  }
+
+  /**
+   * Puts a file into Subversion, as {@link #putFile(ISVNEditor, byte[], String, String, boolean)}, streaming its
+   * contents from the passed stream so that they never need to be held in memory. Progress is reported to the transfer
+   * listener, if set.
+   * 
+   * @param editor An initialised commit editor.
+   * @param data Stream over the file data, which is not closed.
+   * @param length The size of the file data in bytes.
+   * @param checksums The SHA-1 and MD5 checksums of the file data.
+   * @param destinationFolder Destination folder in svn.
+   * @param fileName File name.
+   * @param overwrite Whether existing file should be overwritten or not.
+   * @return true if File was updated or added, false if it was ignored (i.e. it already exists and overwrite was
+   *         false).
+   * @throws SVNException If an error occurs putting the file into Subversion.
+   */
+  public boolean putFile(ISVNEditor editor, InputStream data, long length, String[] checksums,
+      String destinationFolder, String fileName, boolean overwrite) throws SVNException {
     String filePath = destinationFolder + "/" + fileName;
-    if (fileExists(filePath, -1)) { // updating existing file
+    boolean exists = fileExists(filePath, -1);
+    if (exists) { // updating existing file
       if (overwrite) {
         Message.debug("Updating file " + filePath);
         editor.openFile(filePath, -1);
@@ -94,11 +181,312 @@ public class SvnDao {
       Message.debug("Adding file " + filePath);
       editor.addFile(filePath, null, -1);
     }
+    sendContents(editor, data, length, checksums, filePath, exists ? filePath : null, -1);
+    return true;
+  }
+
+  /**
+   * Puts a file into a folder which has been copied earlier in the same commit, replacing the copied file if there is
+   * one. Unlike {@link #putFile(ISVNEditor, InputStream, long, String[], String, String, boolean)} whether the file
+   * exists is determined by the caller, as it isn't in the repository yet. Progress is reported to the transfer
+   * listener, if set.
+   * 
+   * @param editor An initialised commit editor.
+   * @param data Stream over the file data, which is not closed.
+   * @param length The size of the file data in bytes.
+   * @param checksums The SHA-1 and MD5 checksums of the file data.
+   * @param filePath Path to the file.
+   * @param copiedFromPath Path to the file the copied folder's file was copied from, null if the copied folder has no
+   *          file with this name.
+   * @param copiedFromRevision The revision the folder was copied from.
+   * @throws SVNException If an error occurs putting the file into Subversion.
+   */
+  public void putCopiedFile(ISVNEditor editor, InputStream data, long length, String[] checksums, String filePath,
+      String copiedFromPath, long copiedFromRevision) throws SVNException {
+    if (copiedFromPath != null) {
+      Message.debug("Updating copied file " + filePath);
+      editor.openFile(filePath, -1);
+    } else {
+      Message.debug("Adding file " + filePath);
+      editor.addFile(filePath, null, -1);
+    }
+    sendContents(editor, data, length, checksums, filePath, copiedFromPath, copiedFromRevision);
+  }
+
+  /**
+   * Records the checksums of a file which has been added or opened in a commit, sends its contents and closes it.
+   * 
+   * @param editor An initialised commit editor.
+   * @param data Stream over the file data, which is not closed.
+   * @param length The size of the file data in bytes.
+   * @param checksums The SHA-1 and MD5 checksums of the file data.
+   * @param filePath Path to the file.
+   * @param basePath Path to the file's current contents, null if it has none.
+   * @param baseRevision The revision of the file's current contents.
+   * @throws SVNException If an error occurs sending the file.
+   */
+  private void sendContents(ISVNEditor editor, InputStream data, long length, String[] checksums, String filePath,
+      String basePath, long baseRevision) throws SVNException {
+    if (!isChecksumFile(filePath)) {
+      editor.changeFileProperty(filePath, PROPERTY_SHA1, SVNPropertyValue.create(checksums[0]));
+      editor.changeFileProperty(filePath, PROPERTY_MD5, SVNPropertyValue.create(checksums[1]));
+    }
+    TransferMonitor monitor = new TransferMonitor(filePath, length, progressInterval, transferListener);
+    if (basePath != null && sendDeltas) {
+      sendFileDelta(editor, data, filePath, basePath, baseRevision, monitor);
+    } else {
+      sendFile(editor, data, filePath, monitor);
+    }
+  }
+
+  /**
+   * Sends the contents of a file which has been opened in a commit as a delta against its current contents, and closes
+   * it. The current contents are read from the base store if it has them, otherwise they are fetched (and added to the
+   * store). If they can't be fetched the full contents are sent instead.
+   * 
+   * @param editor An initialised commit editor.
+   * @param data Stream over the file data, which is not closed.
+   * @param filePath Path to the file.
+   * @param basePath Path to the file's current contents, which differs from the file path if it has been copied.
+   * @param baseRevision The revision of the file's current contents.
+   * @param monitor Monitor for the transfer of the file contents.
+   * @throws SVNException If an error occurs sending the file.
+   */
+  private void sendFileDelta(ISVNEditor editor, InputStream data, String filePath, String basePath,
+      long baseRevision, TransferMonitor monitor) throws SVNException {
+    SVNURL url = initialLocation.appendPath(basePath.startsWith("/") ? basePath.substring(1) : basePath, false);
+    InputStream base = null;
+    File baseFile = null;
+    try {
+      String baseChecksum = null;
+      try {
+        if (baseStore != null) {
+          baseChecksum = getFileProperties(url, baseRevision).getStringValue(SVNProperty.CHECKSUM);
+          base = baseStore.open(baseChecksum);
+        }
+        if (base == null) {
+          baseFile = File.createTempFile("ivysvn-", ".base");
+          baseChecksum = getFile(url, baseFile, baseRevision).getStringValue(SVNProperty.CHECKSUM);
+          if (baseStore != null) {
+            baseStore.insert(baseChecksum, baseFile);
+          }
+          base = new BufferedInputStream(new FileInputStream(baseFile));
+        }
+      } catch (IOException e) {
+        Message.warn("Could not read current contents of " + filePath + ", sending full contents: " + e.getMessage());
+        sendFile(editor, data, filePath, monitor);
+        return;
+      } catch (SVNException e) {
+        Message.warn("Could not fetch current contents of " + filePath + ", sending full contents: " + e.getMessage());
+        sendFile(editor, data, filePath, monitor);
+        return;
+      }
+      Message.debug("Sending " + filePath + " as a delta against " + baseChecksum);
+      editor.applyTextDelta(filePath, baseChecksum); // the commit fails if the file has changed since
+      monitor.start();
+      String checksum = new SVNDeltaGenerator().sendDelta(filePath, base, 0, monitor.monitor(data), editor, true);
+      monitor.complete();
+      editor.closeFile(filePath, checksum);
+    } finally {
+      if (base != null) {
+        try {
+          base.close();
+        } catch (IOException e) {
+          // only read from
+        }
+      }
+      if (baseFile != null) {
+        baseFile.delete();
+      }
+    }
+  }
+
+  /**
+   * Sets the listener to report the progress of files put by {@link #putFile(ISVNEditor, InputStream, long, String[],
+   * String, String, boolean)} (and so {@link #putFile(ISVNEditor, byte[], String, String, boolean)}) and
+   * {@link #putCopiedFile(ISVNEditor, InputStream, long, String[], String, String, long)} to.
+   * 
+   * @param transferListener The listener, null to not report progress.
+   * @param progressInterval The number of bytes put between progress reports.
+   */
+  public void setTransferListener(TransferMonitor.Listener transferListener, long progressInterval) {
+    this.transferListener = transferListener;
+    this.progressInterval = progressInterval;
+  }
+
+  /**
+   * Sets whether files overwritten by {@link #putFile(ISVNEditor, InputStream, long, String[], String, String,
+   * boolean)} are sent as deltas against their current contents rather than in full.
+   * 
+   * @param sendDeltas Whether to send deltas.
+   * @param baseStore Store to read the current contents from before fetching them, null to always fetch them.
+   */
+  public void setSendDeltas(boolean sendDeltas, ContentStore baseStore) {
+    this.sendDeltas = sendDeltas;
+    this.baseStore = baseStore;
+  }
+
+  /**
+   * Lists the passed folders (and their properties) using a request per folder, after which existence checks, listings
+   * and folder properties at HEAD for those folders are answered from the listings until
+   * {@link #clearPrefetchedFolders()} is called. For any folder which doesn't exist its parent is listed too, so that
+   * every folder which would need to be created is known. Any previously prefetched folders are discarded.
+   * 
+   * @param folderPaths The folder paths.
+   * @param revision The revision to list, -1 for HEAD. Listing a fixed revision lets a commit based on it be made
+   *          entirely from the listings.
+   * @throws SVNException If an error occurs listing a folder.
+   */
+  public void prefetchFolders(Collection<String> folderPaths, long revision) throws SVNException {
+    prefetchedFolders = null; // always list the current contents
+    Map<String, PrefetchedFolder> folders = new HashMap<String, PrefetchedFolder>();
+    for (String folderPath : folderPaths) {
+      while (folderPath.length() > 0 && !folders.containsKey(folderPath)) {
+        SVNProperties properties = new SVNProperties();
+        List<SVNDirEntry> entries = getEntries(folderPath, revision, properties);
+        folders.put(folderPath, new PrefetchedFolder(entries, properties));
+        if (entries != null) {
+          break; // so all its parents exist too
+        }
+        folderPath = folderPath.substring(0, Math.max(folderPath.lastIndexOf('/'), 0));
+      }
+    }
+    Message.debug("Prefetched " + folders.size() + " folders");
+    prefetchedFolders = folders;
+  }
+
+  /**
+   * Discards any prefetched folders, after which all reads go to the repository again. Must be called once the
+   * contents of the folders may have changed, e.g. after a commit.
+   */
+  public void clearPrefetchedFolders() {
+    prefetchedFolders = null;
+  }
+
+  /**
+   * Gets a prefetched folder.
+   * 
+   * @param folderPath The folder path.
+   * @param revision The revision being read, only HEAD (-1) reads can be answered.
+   * @return The folder, or null if it hasn't been prefetched.
+   */
+  private PrefetchedFolder getPrefetchedFolder(String folderPath, long revision) {
+    if (prefetchedFolders == null || revision != -1) {
+      return null;
+    }
+    return prefetchedFolders.get(folderPath);
+  }
+
+  /**
+   * Determines whether the passed folder exists using the prefetched folders.
+   * 
+   * @param folderPath The folder path.
+   * @param revision The revision being read.
+   * @return Whether the folder exists, or null if this can't be determined from the prefetched folders.
+   */
+  private Boolean prefetchedFolderExists(String folderPath, long revision) {
+    PrefetchedFolder folder = getPrefetchedFolder(folderPath, revision);
+    if (folder != null) {
+      return folder.entries != null;
+    }
+    int index = folderPath.lastIndexOf('/');
+    if (index > 0) {
+      PrefetchedFolder parent = getPrefetchedFolder(folderPath.substring(0, index), revision);
+      if (parent != null) {
+        SVNDirEntry entry = parent.getEntry(folderPath.substring(index + 1));
+        return entry != null && entry.getKind() == SVNNodeKind.DIR;
+      }
+    }
+    if (prefetchedFolders != null && revision == -1) {
+      for (Map.Entry<String, PrefetchedFolder> entry : prefetchedFolders.entrySet()) {
+        if (entry.getValue().entries != null && entry.getKey().startsWith(folderPath + "/")) {
+          return true; // contains an existing folder
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Determines whether the passed file name is that of a checksum file published alongside an artifact.
+   * 
+   * @param fileName The file name.
+   * @return true if the file is a checksum file.
+   */
+  public static boolean isChecksumFile(String fileName) {
+    return fileName.endsWith(".sha1") || fileName.endsWith(".md5");
+  }
+
+  /**
+   * Gets the value of a property of a folder.
+   * 
+   * @param folderPath A folder path.
+   * @param propertyName The property name.
+   * @param revision The revision to use.
+   * @return The property value, or null if the folder doesn't exist or doesn't have the property.
+   * @throws SVNException If an error occurs reading the folder's properties.
+   */
+  public String getFolderProperty(String folderPath, String propertyName, long revision) throws SVNException {
+    PrefetchedFolder folder = getPrefetchedFolder(folderPath, revision);
+    if (folder != null) {
+      return folder.entries == null ? null : folder.properties.getStringValue(propertyName);
+    }
+    SVNProperties properties = new SVNProperties();
+    try {
+      readRepository.getDir(folderPath, revision, properties, 0, (ISVNDirEntryHandler) null);
+    } catch (SVNException e) {
+      if (SvnUtils.getNodeKind(e) == null) {
+        throw e;
+      }
+      return null; // no folder at this path
+    }
+    return properties.getStringValue(propertyName);
+  }
+
+  /**
+   * Puts a file into Subversion as part of a commit which will fail if the file has been changed (or added) by another
+   * commit since the passed revision. Folder containing file *must* already exist.
+   * 
+   * @param editor An initialised commit editor.
+   * @param data File data as a byte array.
+   * @param filePath Path to the file.
+   * @param baseRevision The revision at which the file was read.
+   * @param exists Whether the file existed at the base revision.
+   * @throws SVNException If an error occurs putting the file into Subversion.
+   */
+  public void putFile(ISVNEditor editor, byte[] data, String filePath, long baseRevision, boolean exists)
+    throws SVNException {
+    if (exists) {
+      editor.openFile(filePath, baseRevision);
+    } else {
+      editor.addFile(filePath, null, -1);
+    }
+    sendFile(editor, new ByteArrayInputStream(data), filePath, null);
+  }
+
+  /**
+   * Sends the contents of a file which has been opened or added in a commit and closes it.
+   * 
+   * @param editor An initialised commit editor.
+   * @param data Stream over the file data, which is not closed.
+   * @param filePath Path to the file.
+   * @param monitor Monitor for the transfer of the file contents, null if not monitored.
+   * @throws SVNException If an error occurs sending the file.
+   */
+  private void sendFile(ISVNEditor editor, InputStream data, String filePath, TransferMonitor monitor)
+    throws SVNException {
     editor.applyTextDelta(filePath, null);
     SVNDeltaGenerator deltaGenerator = new SVNDeltaGenerator();
-    String checksum = deltaGenerator.sendDelta(filePath, new ByteArrayInputStream(data), editor, true);
+    InputStream input = data;
+    if (monitor != null) {
+      monitor.start();
+      input = monitor.monitor(input);
+    }
+    String checksum = deltaGenerator.sendDelta(filePath, input, editor, true);
+    if (monitor != null) {
+      monitor.complete();
+    }
     editor.closeFile(filePath, checksum);
-    return true;
   }
 
   /**
@@ -155,6 +543,15 @@ public class SvnDao {
    */
   public List<String> list(String folderPath, long revision) throws SVNException {
     List<String> contents = new ArrayList<String>();
+    PrefetchedFolder folder = getPrefetchedFolder(folderPath, revision);
+    if (folder != null) {
+      if (folder.entries != null) {
+        for (SVNDirEntry entry : folder.entries) {
+          contents.add(entry.getName());
+        }
+      }
+      return contents;
+    }
     if (folderExists(folderPath, revision, false)) {
       List<SVNDirEntry> entries = new ArrayList<SVNDirEntry>();
       readRepository.getDir(folderPath, revision, false, entries);
@@ -165,6 +562,51 @@ public class SvnDao {
     return contents;
   }
 
+  /**
+   * Gets the entries (including their kind, size, date and last changed revision) in the passed folder using a single
+   * request.
+   * 
+   * @param folderPath A folder path.
+   * @param revision The revision to use.
+   * @return The entries in the folder, or null if the folder does not exist.
+   * @throws SVNException If an error occurs listing the contents.
+   */
+  public List<SVNDirEntry> getEntries(String folderPath, long revision) throws SVNException {
+    return getEntries(folderPath, revision, null);
+  }
+
+  /**
+   * Gets the entries (including their kind, size, date and last changed revision) in the passed folder and the folder's
+   * properties using a single request.
+   * 
+   * @param folderPath A folder path.
+   * @param revision The revision to use.
+   * @param folderProperties The folder's properties are added to this, may be null if they aren't needed.
+   * @return The entries in the folder, or null if the folder does not exist.
+   * @throws SVNException If an error occurs listing the contents.
+   */
+  public List<SVNDirEntry> getEntries(String folderPath, long revision, SVNProperties folderProperties)
+    throws SVNException {
+    PrefetchedFolder folder = getPrefetchedFolder(folderPath, revision);
+    if (folder != null) {
+      if (folder.entries != null && folderProperties != null) {
+        folderProperties.putAll(folder.properties);
+      }
+      return folder.entries == null ? null : new ArrayList<SVNDirEntry>(folder.entries);
+    }
+    List<SVNDirEntry> entries = new ArrayList<SVNDirEntry>();
+    try {
+      readRepository.getDir(folderPath, revision, folderProperties, SVNDirEntry.DIRENT_KIND | SVNDirEntry.DIRENT_SIZE
+          | SVNDirEntry.DIRENT_TIME | SVNDirEntry.DIRENT_CREATED_REVISION, entries);
+    } catch (SVNException e) {
+      if (SvnUtils.getNodeKind(e) == null) {
+        throw e;
+      }
+      return null; // no folder at this path
+    }
+    return entries;
+  }
+
   /**
    * Determines whether the passed folder exists. All folders paths are relative to the initial location of the
    * repository when used to construct this DAO object.
@@ -177,8 +619,11 @@ public class SvnDao {
   public boolean folderExists(String folderPath, long revision, boolean useCache) throws SVNException {
     if (useCache && existingFolderPaths.contains(folderPath)) { // first check our cache if this path is known to exist
       return true;
+    }
+    Boolean prefetched = prefetchedFolderExists(folderPath, revision);
+    if (prefetched != null) {
+      return prefetched;
     } else { // not previously cached, so check against repository
-      readRepository.setLocation(initialLocation, true);
       SVNNodeKind nodeKind = readRepository.checkPath(folderPath.toString(), revision);
       if (SVNNodeKind.DIR == nodeKind) {
         if (useCache) {
@@ -199,7 +644,12 @@ public class SvnDao {
    * @throws SVNException If an error occurs determining whether the file exists.
    */
   public boolean fileExists(String path, long revision) throws SVNException {
-    readRepository.setLocation(initialLocation, true);
+    int index = path.lastIndexOf('/');
+    PrefetchedFolder folder = index > 0 ? getPrefetchedFolder(path.substring(0, index), revision) : null;
+    if (folder != null) {
+      SVNDirEntry entry = folder.getEntry(path.substring(index + 1));
+      return entry != null && entry.getKind() == SVNNodeKind.FILE;
+    }
     SVNNodeKind kind = readRepository.checkPath(path, revision);
     if (kind == SVNNodeKind.FILE) {
       return true;
@@ -208,30 +658,183 @@ public class SvnDao {
   }
 
   /**
-   * Gets a file from the repository.
+   * Gets the contents of a small file in a single request.
+   * 
+   * @param path File path.
+   * @param revision Revision to use.
+   * @return The file contents, or null if the file doesn't exist.
+   * @throws SVNException If an error occurs retrieving the file.
+   */
+  public byte[] getFileContents(String path, long revision) throws SVNException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try {
+      readRepository.getFile(path, revision, null, output);
+    } catch (SVNException e) {
+      if (SvnUtils.getNodeKind(e) == null) {
+        throw e;
+      }
+      return null; // no file at this path
+    }
+    return output.toByteArray();
+  }
+
+  /**
+   * Gets a file from the repository. This is done in a single request, if the file doesn't exist (or isn't a file) this
+   * is determined from the error returned by the server.
    * 
    * @param sourceURL The full path to the file, reachable via the read repository.
    * @param destination The destination file.
    * @param revision The subversion revision.
+   * @return The file's properties (including entry properties like the committed date).
    * @throws SVNException If an error occurs retrieving the file from Subversion.
-   * @throws IOException If an error occurs writing the file contents to disk.
+   * @throws IOException If the file doesn't exist or an error occurs writing the file contents to disk.
    */
-  public void getFile(SVNURL sourceURL, File destination, long revision) throws SVNException, IOException {
-    readRepository.setLocation(sourceURL, false);
-    SVNNodeKind nodeKind = readRepository.checkPath("", revision);
-    SVNErrorMessage error = SvnUtils.checkNodeIsFile(nodeKind, sourceURL);
-    if (error != null) {
-      Message.error("Error retrieving" + sourceURL + " [revision=" + revision + "]");
-      throw new IOException(error.getMessage());
+  public SVNProperties getFile(SVNURL sourceURL, File destination, long revision) throws SVNException, IOException {
+    return getFile(sourceURL, destination, revision, -1);
+  }
+
+  /**
+   * Gets a file from the repository. This is done in a single request, if the file doesn't exist (or isn't a file) this
+   * is determined from the error returned by the server. The destination is only replaced once the whole file has been
+   * retrieved, so it is never seen partially written.
+   * 
+   * @param sourceURL The full path to the file, reachable via the read repository.
+   * @param destination The destination file.
+   * @param revision The subversion revision.
+   * @param expectedLength The expected length of the file, used to preallocate space for it, or -1 if not known.
+   * @return The file's properties (including entry properties like the committed date).
+   * @throws SVNException If an error occurs retrieving the file from Subversion.
+   * @throws IOException If the file doesn't exist or an error occurs writing the file contents to disk.
+   */
+  public SVNProperties getFile(SVNURL sourceURL, File destination, long revision, long expectedLength)
+    throws SVNException, IOException {
+    return getFile(sourceURL, destination, revision, expectedLength, null);
+  }
+
+  /**
+   * Gets a file from the repository, as {@link #getFile(SVNURL, File, long, long)}, counting the bytes received with
+   * the passed monitor.
+   * 
+   * @param sourceURL The full path to the file, reachable via the read repository.
+   * @param destination The destination file.
+   * @param revision The subversion revision.
+   * @param expectedLength The expected length of the file, used to preallocate space for it, or -1 if not known.
+   * @param monitor Monitor for the transfer, null if not monitored.
+   * @return The file's properties (including entry properties like the committed date).
+   * @throws SVNException If an error occurs retrieving the file from Subversion.
+   * @throws IOException If the file doesn't exist or an error occurs writing the file contents to disk.
+   */
+  public SVNProperties getFile(SVNURL sourceURL, File destination, long revision, long expectedLength,
+      TransferMonitor monitor) throws SVNException, IOException {
+    AtomicFileOutputStream output = new AtomicFileOutputStream(destination, expectedLength);
+    try {
+      if (monitor != null) {
+        monitor.start();
+      }
+      SVNProperties properties = getFile(sourceURL, monitor == null ? output : monitor.monitor(output), revision);
+      if (monitor != null) {
+        monitor.complete();
+      }
+      output.commit();
+      return properties;
+    } finally {
+      output.close(); // discards the partial file if the file wasn't retrieved
     }
-    BufferedOutputStream output = null;
+  }
+
+  /**
+   * Gets a file from the repository, writing its contents to the passed stream. This is done in a single request, if
+   * the file doesn't exist (or isn't a file) this is determined from the error returned by the server. Files outside of
+   * the session root are reached by moving the repository to them for the duration of the request.
+   * 
+   * @param sourceURL The full path to the file, reachable via the read repository.
+   * @param output The stream to write the file contents to (which is not closed), null to skip the contents.
+   * @param revision The subversion revision.
+   * @return The file's properties (including entry properties like the committed date).
+   * @throws SVNException If an error occurs retrieving the file from Subversion.
+   * @throws IOException If the file doesn't exist.
+   */
+  public SVNProperties getFile(SVNURL sourceURL, OutputStream output, long revision) throws SVNException,
+      IOException {
+    String path = getRelativePath(sourceURL);
+    if (path == null) {
+      readRepository.setLocation(sourceURL, false);
+    }
+    SVNProperties properties = new SVNProperties();
     try {
-      output = new BufferedOutputStream(new FileOutputStream(destination));
-      readRepository.getFile("", revision, null, output);
+      readRepository.getFile(path == null ? "" : path, revision, properties, output);
+    } catch (SVNException e) {
+      SVNNodeKind nodeKind = SvnUtils.getNodeKind(e);
+      if (nodeKind == null) {
+        throw e;
+      }
+      Message.error("Error retrieving" + sourceURL + " [revision=" + revision + "]");
+      throw new IOException(SvnUtils.checkNodeIsFile(nodeKind, sourceURL).getMessage());
     } finally {
-      if (output != null) {
-        output.close();
+      if (path == null) {
+        readRepository.setLocation(initialLocation, false);
+      }
+    }
+    return properties;
+  }
+
+  /**
+   * Gets the path of the passed URL relative to the session root.
+   * 
+   * @param url A URL.
+   * @return The relative path, or null if the URL is not at or below the session root.
+   */
+  private String getRelativePath(SVNURL url) {
+    String root = initialLocation.toDecodedString();
+    String target = url.toDecodedString();
+    if (target.equals(root)) {
+      return "";
+    }
+    if (target.startsWith(root + "/")) {
+      return target.substring(root.length() + 1);
+    }
+    return null;
+  }
+
+  /**
+   * Gets the properties of a file (including entry properties like the committed date and checksum) without its
+   * contents.
+   * 
+   * @param sourceURL The full path to the file, reachable via the read repository.
+   * @param revision The subversion revision.
+   * @return The file's properties.
+   * @throws SVNException If an error occurs retrieving the properties from Subversion.
+   * @throws IOException If the file doesn't exist.
+   */
+  public SVNProperties getFileProperties(SVNURL sourceURL, long revision) throws SVNException, IOException {
+    return getFile(sourceURL, (OutputStream) null, revision);
+  }
+
+  /**
+   * The entries and properties of a prefetched folder.
+   */
+  private static class PrefetchedFolder {
+
+    /**
+     * The entries in the folder, or null if it doesn't exist.
+     */
+    private final List<SVNDirEntry> entries;
+    private final SVNProperties properties;
+
+    private PrefetchedFolder(List<SVNDirEntry> entries, SVNProperties properties) {
+      this.entries = entries;
+      this.properties = properties;
+    }
+
+    private SVNDirEntry getEntry(String name) {
+      if (entries != null) {
+        for (SVNDirEntry entry : entries) {
+          if (entry.getName().equals(name)) {
+            return entry;
+          }
+        }
       }
+      return null;
     }
   }
 
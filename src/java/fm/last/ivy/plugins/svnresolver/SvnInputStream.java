@@ -0,0 +1,235 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Input stream over the contents of a file in Subversion. The file is read from the repository by one of the
+ * repository's transfer threads and handed over in chunks via a bounded queue, so only a few chunks are ever held in
+ * memory regardless of the size of the file. Closing the stream before the end of the file has been reached cancels
+ * the transfer. If all transfer threads are busy the transfer waits for one, so a thread holding several streams open
+ * should read each to the end (or close it) in the order they were opened.
+ */
+public class SvnInputStream extends InputStream {
+
+  /**
+   * The size of the chunks handed from the background thread to the reader.
+   */
+  private static final int CHUNK_SIZE = 32 * 1024;
+
+  /**
+   * The maximum number of chunks waiting to be read.
+   */
+  private static final int MAX_CHUNKS = 8;
+
+  /**
+   * Time in milliseconds the background thread waits for space in the queue before checking for cancellation.
+   */
+  private static final long OFFER_INTERVAL = 100;
+
+  /**
+   * Marks the end of the file in the queue.
+   */
+  private static final byte[] END = new byte[0];
+
+  private final String repositorySource;
+  private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<byte[]>(MAX_CHUNKS);
+  private volatile boolean closed = false;
+  private volatile IOException error;
+  private byte[] chunk;
+  private int position;
+
+  /**
+   * Constructs a new instance of this class, starting the transfer in the background. Any error getting the file
+   * (including it not existing) is thrown when the stream is read.
+   * 
+   * @param repository The repository to get the file from.
+   * @param repositorySource Full path to the file in subversion.
+   * @param revision The revision to get, -1 for HEAD.
+   * @param executor The executor to perform the transfer on.
+   */
+  public SvnInputStream(final SvnRepository repository, final String repositorySource, final long revision,
+      Executor executor) {
+    this.repositorySource = repositorySource;
+    executor.execute(new Runnable() {
+      public void run() {
+        if (closed) {
+          return; // closed before the transfer started
+        }
+        try {
+          ChunkOutputStream output = new ChunkOutputStream();
+          repository.download(repositorySource, output, revision);
+          output.flush();
+        } catch (IOException e) {
+          error = e;
+        } catch (RuntimeException e) {
+          error = (IOException) new IOException("Error streaming " + repositorySource).initCause(e);
+        }
+        if (!closed) {
+          try {
+            offer(END);
+          } catch (IOException e) {
+            // closed while waiting, nobody left to tell
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Queues a chunk for the reader, waiting for space if necessary.
+   * 
+   * @param data The chunk.
+   * @throws IOException If the stream was closed.
+   */
+  private void offer(byte[] data) throws IOException {
+    try {
+      while (!chunks.offer(data, OFFER_INTERVAL, TimeUnit.MILLISECONDS)) {
+        if (closed) {
+          throw new IOException("Stream for " + repositorySource + " closed by reader");
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted streaming " + repositorySource);
+    }
+  }
+
+  /**
+   * Makes sure there is a chunk with unread data available.
+   * 
+   * @return false if the end of the file has been reached.
+   * @throws IOException If an error occurred getting the file or the stream is closed.
+   */
+  private boolean nextChunk() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    while (chunk == null || (chunk != END && position == chunk.length)) {
+      try {
+        chunk = chunks.take();
+        position = 0;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted reading " + repositorySource);
+      }
+    }
+    if (chunk == END) {
+      if (error != null) {
+        throw error;
+      }
+      return false;
+    }
+    return true;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!nextChunk()) {
+      return -1;
+    }
+    return chunk[position++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    if (!nextChunk()) {
+      return -1;
+    }
+    int read = Math.min(length, chunk.length - position);
+    System.arraycopy(chunk, position, buffer, offset, read);
+    position += read;
+    return read;
+  }
+
+  @Override
+  public int available() throws IOException {
+    return chunk == null || chunk == END ? 0 : chunk.length - position;
+  }
+
+  /**
+   * Closes this stream, cancelling the transfer if it has not finished yet.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    chunks.clear(); // release memory and unblock the background thread
+  }
+
+  /**
+   * Output stream written to by the background thread which cuts the file into chunks for the reader.
+   */
+  private class ChunkOutputStream extends OutputStream {
+
+    private byte[] buffer = new byte[CHUNK_SIZE];
+    private int count = 0;
+
+    @Override
+    public void write(int b) throws IOException {
+      if (count == buffer.length) {
+        flush();
+      }
+      buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+      while (length > 0) {
+        if (count == buffer.length) {
+          flush();
+        }
+        int copied = Math.min(length, buffer.length - count);
+        System.arraycopy(data, offset, buffer, count, copied);
+        count += copied;
+        offset += copied;
+        length -= copied;
+      }
+    }
+
+    /**
+     * Hands the buffered data to the reader.
+     */
+    @Override
+    public void flush() throws IOException {
+      if (closed) {
+        throw new IOException("Stream for " + repositorySource + " closed by reader");
+      }
+      if (count > 0) {
+        byte[] data = buffer;
+        if (count < buffer.length) {
+          data = new byte[count];
+          System.arraycopy(buffer, 0, data, 0, count);
+        }
+        offer(data);
+        buffer = new byte[CHUNK_SIZE];
+        count = 0;
+      }
+    }
+
+  }
+
+}
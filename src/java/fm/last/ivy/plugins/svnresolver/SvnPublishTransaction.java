@@ -18,19 +18,29 @@ package fm.last.ivy.plugins.svnresolver;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.Map.Entry;
 
 import org.apache.ivy.core.module.id.ModuleRevisionId;
 import org.apache.ivy.util.Message;
 import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.tmatesoft.svn.core.SVNDirEntry;
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNPropertyValue;
 import org.tmatesoft.svn.core.SVNURL;
 import org.tmatesoft.svn.core.io.ISVNEditor;
 import org.tmatesoft.svn.core.io.SVNRepository;
@@ -99,6 +109,55 @@ public class SvnPublishTransaction {
    */
   private SVNURL ivyRepositoryRootURL = null;
 
+  /**
+   * The number of times a commit is attempted when the artifact index is changed by another commit at the same time.
+   */
+  private static final int ARTIFACT_INDEX_COMMIT_ATTEMPTS = 3;
+
+  /**
+   * Whether to update the artifact indexes of the folders published to as part of the commit.
+   */
+  private boolean updateArtifactIndex = false;
+
+  /**
+   * Store that published files are added to once committed, so that the next version of each can be sent as a delta
+   * against it, null if there is none.
+   */
+  private ContentStore contentStore = null;
+
+  /**
+   * Whether to skip putting files which the repository already holds with identical contents.
+   */
+  private boolean skipUnchanged = false;
+
+  /**
+   * Whether binary diffs are made in the same commit as the files are put, by copying each binary diff folder as it was
+   * before the commit and applying the same changes to the copy, rather than copying it in a second commit.
+   */
+  private boolean singleCommit = false;
+
+  /**
+   * The revision the folders are listed (and with single commit binary diffs, copied) at, -1 for HEAD.
+   */
+  private long baseRevision = -1;
+
+  /**
+   * The contents the folders changed by the current commit will have once it is made, to be recorded in their artifact
+   * indexes, where the key is the folder path. Empty if the indexes are not being updated.
+   */
+  private Map<String, Collection<ResourceMetadata>> indexedFolders =
+      new HashMap<String, Collection<ResourceMetadata>>();
+
+  /**
+   * The artifact indexes being updated by the current commit, where the key is the path of the folder each is in.
+   */
+  private Map<String, ArtifactIndex> artifactIndexes = new HashMap<String, ArtifactIndex>();
+
+  /**
+   * The revision each artifact index being updated was last changed in, -1 if it doesn't exist yet.
+   */
+  private Map<String, Long> artifactIndexRevisions = new HashMap<String, Long>();
+
   /**
    * Constructs a new instance of this class.
    * 
@@ -141,54 +200,519 @@ public class SvnPublishTransaction {
       overwrite = true; // force overwrite for binary diff
     }
 
-    if (destinationFolderPath.startsWith("/")) {
-      destinationFolderPath = destinationFolderPath.substring(1);
-    }
-    String[] pathComponents = destinationFolderPath.split("/");
-    int pathIndex = 0;
-    DirectoryTree currentTree = publishTree; // start with the root tree
-    while (pathIndex < pathComponents.length) {
-      currentTree = currentTree.subDir(pathComponents[pathIndex]); // build up a tree for each subdir
-      pathIndex++;
+    // add the put operation to the deepest level of the tree
+    getTree(publishTree, destinationFolderPath).addPutOperation(operation);
+  }
+
+  /**
+   * Gets the tree for the passed folder, building up a tree for each folder on the way to it.
+   * 
+   * @param root The tree to start from.
+   * @param folderPath The path of the folder, relative to the passed tree.
+   * @return The tree for the folder.
+   */
+  private DirectoryTree getTree(DirectoryTree root, String folderPath) {
+    DirectoryTree currentTree = root;
+    for (String pathComponent : folderPath.split("/")) {
+      if (pathComponent.length() > 0) {
+        currentTree = currentTree.subDir(pathComponent);
+      }
     }
-    currentTree.addPutOperation(operation); // add the put operation to the deepest level of the tree
+    return currentTree;
   }
 
   /**
-   * Commits all files scheduled to be put.
+   * Commits all files scheduled to be put. If an artifact index is being updated and another commit changes it at the
+   * same time, the commit is retried against the new index.
    * 
    * @throws SVNException If an error occurs committing the transaction.
    * @throws IOException If an error occurs reading any file data.
    */
   public void commit() throws SVNException, IOException {
-    // reset the repository to the ivy repository root and tell it to connect if necessary
-    commitRepository.setLocation(ivyRepositoryRootURL, true);
+    Map<String, String> foldersToCopy = null;
+    try {
+      prefetchFolders();
+      if (skipUnchanged && !markUnchangedPutOperations()) {
+        Message.info("All files are unchanged, nothing to commit");
+        return;
+      }
+      // move the repository to the ivy repository root, reusing its connection if it has one
+      commitRepository.setLocation(ivyRepositoryRootURL, false);
+      for (int attempt = 1; foldersToCopy == null; attempt++) {
+        if (attempt > 1) { // the folders were changed by the other commit
+          prefetchFolders();
+        }
+        try {
+          foldersToCopy = commitPutOperations();
+        } catch (SVNException e) {
+          if (artifactIndexes.isEmpty() || attempt >= ARTIFACT_INDEX_COMMIT_ATTEMPTS || !isOutOfDate(e)) {
+            throw e;
+          }
+          Message.info("Artifact index changed by another commit, retrying: " + e.getMessage());
+          abortQuietly();
+        }
+      }
+    } finally {
+      svnDAO.clearPrefetchedFolders(); // out of date once committed
+    }
+    boolean copied = false;
+    for (int attempt = 1; !copied; attempt++) {
+      try {
+        copyDiff(foldersToCopy);
+        copied = true;
+      } catch (SVNException e) {
+        if (artifactIndexes.isEmpty() || attempt >= ARTIFACT_INDEX_COMMIT_ATTEMPTS || !isOutOfDate(e)) {
+          throw e;
+        }
+        Message.info("Artifact index changed by another commit, retrying binary diff: " + e.getMessage());
+        abortQuietly();
+      }
+    }
+    if (contentStore != null) {
+      storePublishedFiles(publishTree);
+    }
+  }
+
+  /**
+   * Lists every folder the files are put into (and with binary diffs, copied to) before the commit is opened, so that
+   * whether each file and folder needs adding or opening, and which files cleanup needs to delete, is known without a
+   * request for each. If the artifact indexes are being updated, the folders they are in are listed too.
+   * 
+   * @throws SVNException If an error occurs listing the folders.
+   */
+  private void prefetchFolders() throws SVNException {
+    Set<String> folderPaths = new LinkedHashSet<String>();
+    collectFolderPaths(publishTree, folderPaths);
+    // a single commit binary diff copies the folders at the revision they were listed at
+    baseRevision = binaryDiff && singleCommit ? commitRepository.getLatestRevision() : -1;
+    svnDAO.prefetchFolders(folderPaths, baseRevision);
+  }
+
+  /**
+   * Collects the paths of the folders the passed tree's operations put files into or copy them to.
+   * 
+   * @param tree Tree containing PutOperations.
+   * @param folderPaths The folder paths, added to by this method.
+   */
+  private void collectFolderPaths(DirectoryTree tree, Set<String> folderPaths) {
+    for (DirectoryTree subDir : tree.getSubDirectoryTrees()) {
+      collectFolderPaths(subDir, folderPaths);
+    }
+    for (PutOperation operation : tree.getPutOperations()) {
+      folderPaths.add(tree.getPath());
+      folderPaths.add(operation.getFolderPath());
+      if (binaryDiff) {
+        folderPaths.add(operation.determineBinaryDiffFolderPath(revision, binaryDiffFolderName));
+      }
+      if (updateArtifactIndex) {
+        folderPaths.add(ArtifactIndex.getIndexFolderPath(operation.getFolderPath()));
+      }
+    }
+  }
+
+  /**
+   * Compares the files to be put with those in the repository, marking the operations whose files are already there
+   * with identical contents as unchanged. The checksums are read from the {@link SvnDao#PROPERTY_CHECKSUMS} property
+   * of each destination folder, which is prefetched along with its listing. With binary diffs a folder is copied as a
+   * whole, so its operations are only marked unchanged if all of them are.
+   * 
+   * @return Whether any operation is changed and needs to be committed.
+   * @throws SVNException If an error occurs reading the destination folders.
+   * @throws IOException If an error occurs reading any file data.
+   */
+  private boolean markUnchangedPutOperations() throws SVNException, IOException {
+    Map<String, List<PutOperation>> folders = new LinkedHashMap<String, List<PutOperation>>();
+    collectPutOperations(publishTree, folders);
+    boolean changed = false;
+    for (Entry<String, List<PutOperation>> entry : folders.entrySet()) {
+      Set<PutOperation> unchanged = findUnchanged(entry.getKey(), entry.getValue());
+      if (binaryDiff && unchanged.size() < entry.getValue().size()) {
+        unchanged.clear();
+      }
+      for (PutOperation operation : entry.getValue()) {
+        operation.setUnchanged(unchanged.contains(operation));
+        if (!operation.isUnchanged()) {
+          changed = true;
+        }
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Groups the operations in the passed tree by the folder their files are ultimately put into.
+   * 
+   * @param tree Tree containing PutOperations.
+   * @param folders The operations per folder, added to by this method.
+   */
+  private void collectPutOperations(DirectoryTree tree, Map<String, List<PutOperation>> folders) {
+    for (DirectoryTree subDir : tree.getSubDirectoryTrees()) {
+      collectPutOperations(subDir, folders);
+    }
+    for (PutOperation operation : tree.getPutOperations()) {
+      List<PutOperation> operations = folders.get(operation.getFolderPath());
+      if (operations == null) {
+        operations = new ArrayList<PutOperation>();
+        folders.put(operation.getFolderPath(), operations);
+      }
+      operations.add(operation);
+    }
+  }
+
+  /**
+   * Finds the operations whose files are already in the passed folder with identical contents, as recorded in the
+   * folder's {@link SvnDao#PROPERTY_CHECKSUMS} property. Checksum files are compared against the checksum recorded for
+   * their artifact, and any other file which isn't recorded is considered changed. If the folder will be cleaned up
+   * (or replaced by a binary diff) and contains files which aren't being put, nothing in it is considered unchanged as
+   * those files will be removed.
+   * 
+   * @param folderPath The folder path.
+   * @param operations The operations putting files into the folder.
+   * @return The unchanged operations.
+   * @throws SVNException If an error occurs reading the folder.
+   * @throws IOException If an error occurs reading any file data.
+   */
+  private Set<PutOperation> findUnchanged(String folderPath, List<PutOperation> operations) throws SVNException,
+      IOException {
+    Set<PutOperation> unchanged = new HashSet<PutOperation>();
+    SVNProperties folderProperties = new SVNProperties();
+    List<SVNDirEntry> entries = svnDAO.getEntries(folderPath, -1, folderProperties);
+    if (entries == null) {
+      return unchanged;
+    }
+    Map<String, SVNDirEntry> existing = new HashMap<String, SVNDirEntry>();
+    for (SVNDirEntry entry : entries) {
+      existing.put(entry.getName(), entry);
+    }
+    if (binaryDiff || (cleanupPublishFolder != null && cleanupPublishFolder)) {
+      Set<String> putNames = new HashSet<String>();
+      for (PutOperation operation : operations) {
+        putNames.add(operation.getFileName());
+      }
+      if (!putNames.containsAll(existing.keySet())) {
+        return unchanged;
+      }
+    }
+    Map<String, String[]> recorded = ChecksumCache.parseProperty(folderProperties
+        .getStringValue(SvnDao.PROPERTY_CHECKSUMS));
+    for (PutOperation operation : operations) {
+      SVNDirEntry entry = existing.get(operation.getFileName());
+      if (entry == null || entry.getKind() != SVNNodeKind.FILE || entry.getSize() != operation.getLength()) {
+        continue;
+      }
+      boolean same = false;
+      if (recorded.containsKey(operation.getFileName())) {
+        same = operation.getChecksums()[1].equalsIgnoreCase(recorded.get(operation.getFileName())[1]);
+      } else {
+        String checksum = ChecksumCache.getChecksum(operation.getFileName(), recorded);
+        same = checksum != null && checksum.equalsIgnoreCase(readChecksumFile(operation));
+      }
+      if (same) {
+        Message.debug("Unchanged, not putting " + operation.getFilePath());
+        unchanged.add(operation);
+      }
+    }
+    return unchanged;
+  }
+
+  /**
+   * Reads the checksum put by an operation putting a checksum file.
+   * 
+   * @param operation The operation.
+   * @return The checksum, with any surrounding whitespace removed.
+   * @throws IOException If an error occurs reading the file data.
+   */
+  private String readChecksumFile(PutOperation operation) throws IOException {
+    InputStream data = operation.openData();
+    try {
+      StringBuilder checksum = new StringBuilder();
+      int c;
+      while ((c = data.read()) != -1) {
+        checksum.append((char) c);
+      }
+      return checksum.toString().trim();
+    } finally {
+      data.close();
+    }
+  }
+
+  /**
+   * Adds the files put by all operations in the passed tree to the content store.
+   * 
+   * @param tree Tree containing PutOperations.
+   */
+  private void storePublishedFiles(DirectoryTree tree) {
+    for (DirectoryTree subDir : tree.getSubDirectoryTrees()) {
+      storePublishedFiles(subDir);
+    }
+    for (PutOperation operation : tree.getPutOperations()) {
+      try {
+        operation.addTo(contentStore);
+      } catch (IOException e) {
+        Message.warn("Could not add " + operation.getFilePath() + " to content store: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Commits all put operations in a single commit.
+   * 
+   * @return A Map of folders which need to be copied in the binary diff transaction, where the key is the ultimate
+   *         destination folder and the value is the intermediate binary diff folder.
+   * @throws SVNException If an error occurs committing the transaction.
+   * @throws IOException If an error occurs reading any file data.
+   */
+  private Map<String, String> commitPutOperations() throws SVNException, IOException {
+    Map<String, String> foldersToCopy = findBinaryDiffs(publishTree);
+    indexedFolders.clear();
+    artifactIndexes.clear();
+    if (updateArtifactIndex) {
+      listIndexedFolders(foldersToCopy);
+      if (!binaryDiff || singleCommit) { // with two commit binary diffs the indexes are updated along with the copies
+        readArtifactIndexes();
+      }
+    }
     commitEditor = commitRepository.getCommitEditor(commitMessage, null);
     commitStarted = true;
     commitEditor.openRoot(-1);
-    int putFileCount = commitTree(publishTree);
+    Map<String, List<PutOperation>> copiedOperations = new HashMap<String, List<PutOperation>>();
+    DirectoryTree tree = publishTree;
+    if (binaryDiff && singleCommit) { // the editor must only open each folder once, so copy as the tree is committed
+      collectPutOperations(publishTree, copiedOperations);
+      tree = createCopyTree(foldersToCopy);
+      addPutOperations(publishTree, tree);
+    }
+    int putFileCount = commitTree(tree, copiedOperations);
     if (putFileCount == 0) {
       commitEditor.abortEdit();
       Message.info("Nothing to commit");
+      return new HashMap<String, String>();
+    }
+    if (binaryDiff && singleCommit) {
+      foldersToCopy = new HashMap<String, String>(); // nothing left to copy in a second commit
     } else {
-      Map<String, String> foldersToCopy = prepareBinaryDiff(publishTree); // prepare binary diff in existing
-      // transaction
-      commitEditor.closeDir(); // close root
-      SVNCommitInfo info = commitEditor.closeEdit();
-      Message.info("Commit finished " + info);
-      copyDiff(foldersToCopy);
+      deleteReleaseFolders(foldersToCopy); // prepare binary diff in existing transaction
     }
+    commitEditor.closeDir(); // close root
+    SVNCommitInfo info = commitEditor.closeEdit();
+    Message.info("Commit finished " + info);
+    return foldersToCopy;
   }
 
   /**
-   * Commits the contents of the passed DirectoryTree.
+   * Works out the contents each folder published to will have once committed, to be recorded in the artifact index of
+   * the folder containing it. With binary diffs these are the release folders copied, which end up with the same
+   * contents as their binary diff folders. Folders which the commit leaves unchanged are not recorded again.
    * 
-   * @param tree Tree containing PutOperations to commit.
+   * @param foldersToCopy Map of folders to copy where key is destination and value is source.
+   * @throws SVNException If an error occurs listing a folder.
+   * @throws IOException If an error occurs reading any file data.
+   */
+  private void listIndexedFolders(Map<String, String> foldersToCopy) throws SVNException, IOException {
+    Map<String, List<PutOperation>> folders = new LinkedHashMap<String, List<PutOperation>>();
+    collectPutOperations(publishTree, folders);
+    for (Entry<String, List<PutOperation>> entry : folders.entrySet()) {
+      String folderPath = entry.getKey();
+      if (binaryDiff && !foldersToCopy.containsKey(folderPath)) {
+        continue; // not copied so left as it is
+      }
+      Collection<ResourceMetadata> listing = listFolder(binaryDiff ? foldersToCopy.get(folderPath) : folderPath, entry
+          .getValue());
+      if (listing != null) {
+        indexedFolders.put(folderPath, listing);
+      }
+    }
+  }
+
+  /**
+   * Works out the contents a folder will have once the passed operations have been committed to it, from its prefetched
+   * listing and the checksums recorded in its {@link SvnDao#PROPERTY_CHECKSUMS} property.
+   * 
+   * @param folderPath The folder path.
+   * @param operations The operations putting files into the folder.
+   * @return The contents of the folder, or null if the operations won't change it.
+   * @throws SVNException If an error occurs listing the folder.
+   * @throws IOException If an error occurs reading any file data.
+   */
+  private Collection<ResourceMetadata> listFolder(String folderPath, List<PutOperation> operations)
+    throws SVNException, IOException {
+    Map<String, ResourceMetadata> listing = new TreeMap<String, ResourceMetadata>();
+    SVNProperties folderProperties = new SVNProperties();
+    List<SVNDirEntry> entries = svnDAO.getEntries(folderPath, -1, folderProperties);
+    if (entries != null) {
+      Map<String, String[]> checksums = ChecksumCache.parseProperty(folderProperties
+          .getStringValue(SvnDao.PROPERTY_CHECKSUMS));
+      for (SVNDirEntry entry : entries) {
+        ResourceMetadata metadata = ResourceMetadata.fromEntry(entry);
+        String[] recorded = checksums.get(entry.getName());
+        if (recorded != null) {
+          metadata = new ResourceMetadata(metadata.getName(), metadata.getKind(), metadata.getSize(), metadata
+              .getLastModified(), recorded[1]);
+        }
+        listing.put(entry.getName(), metadata);
+      }
+    }
+    Set<String> putFiles = new HashSet<String>();
+    boolean changed = false;
+    for (PutOperation operation : operations) {
+      String fileName = operation.getFileName();
+      putFiles.add(fileName);
+      if (operation.isUnchanged() || (!binaryDiff && !operation.isOverwrite() && listing.containsKey(fileName))) {
+        continue; // won't be put
+      }
+      listing.put(fileName, new ResourceMetadata(fileName, SVNNodeKind.FILE, operation.getLength(), System
+          .currentTimeMillis(), operation.getChecksums()[1]));
+      changed = true;
+    }
+    if (!changed) {
+      return null;
+    }
+    if (cleanupPublishFolder != null && cleanupPublishFolder) {
+      listing.keySet().retainAll(putFiles);
+    }
+    return listing.values();
+  }
+
+  /**
+   * Reads the artifact indexes of the folders containing the folders being recorded, at the latest revision, and
+   * records the folders in them ready to be written by the commit.
+   * 
+   * @throws SVNException If an error occurs reading an index.
+   */
+  private void readArtifactIndexes() throws SVNException {
+    artifactIndexes.clear();
+    artifactIndexRevisions.clear();
+    for (Entry<String, Collection<ResourceMetadata>> entry : indexedFolders.entrySet()) {
+      String folderPath = entry.getKey();
+      String indexFolderPath = ArtifactIndex.getIndexFolderPath(folderPath);
+      ArtifactIndex index = artifactIndexes.get(indexFolderPath);
+      if (index == null) {
+        index = readArtifactIndex(indexFolderPath);
+        artifactIndexes.put(indexFolderPath, index);
+      }
+      index.putFolder(folderPath.substring(folderPath.lastIndexOf('/') + 1), entry.getValue());
+    }
+  }
+
+  /**
+   * Reads the artifact index in the passed folder, dropping any folders which have been changed since they were
+   * recorded in it.
+   * 
+   * @param folderPath The path of the folder the index is in.
+   * @return The index, which is empty if it doesn't exist or is invalid.
+   * @throws SVNException If an error occurs reading the index.
+   */
+  private ArtifactIndex readArtifactIndex(String folderPath) throws SVNException {
+    Map<String, Long> folderRevisions = new HashMap<String, Long>();
+    long indexRevision = -1;
+    List<SVNDirEntry> entries = svnDAO.getEntries(folderPath, -1);
+    if (entries != null) {
+      for (SVNDirEntry entry : entries) {
+        if (entry.getKind() == SVNNodeKind.DIR) {
+          folderRevisions.put(entry.getName(), entry.getRevision());
+        } else if (ArtifactIndex.FILE_NAME.equals(entry.getName())) {
+          indexRevision = entry.getRevision();
+        }
+      }
+    }
+    artifactIndexRevisions.put(folderPath, indexRevision);
+    ArtifactIndex index = new ArtifactIndex(folderPath);
+    if (indexRevision >= 0) {
+      try {
+        index = new ArtifactIndex(folderPath, svnDAO.getFileContents(ArtifactIndex.getFilePath(folderPath), -1));
+      } catch (IOException e) {
+        Message.warn("Replacing invalid artifact index in " + folderPath + ": " + e.getMessage());
+      }
+    }
+    index.retainUnchanged(folderRevisions, indexRevision);
+    return index;
+  }
+
+  /**
+   * Writes an updated artifact index as part of the current commit, which will fail if the index has been changed by
+   * another commit since it was read. The folder the index is in must be open.
+   * 
+   * @param index The index.
+   * @throws SVNException If an error occurs writing the index.
+   */
+  private void writeArtifactIndex(ArtifactIndex index) throws SVNException {
+    long indexRevision = artifactIndexRevisions.get(index.getFolderPath());
+    Message.debug("Updating artifact index in " + index.getFolderPath() + " [" + index.size() + " folders]");
+    svnDAO.putFile(commitEditor, index.toByteArray(), ArtifactIndex.getFilePath(index.getFolderPath()),
+        indexRevision, indexRevision >= 0);
+  }
+
+  /**
+   * Determines whether the passed error was caused by a path in the commit having been changed by another commit.
+   * 
+   * @param e The error.
+   * @return true if the commit was out of date.
+   */
+  private boolean isOutOfDate(SVNException e) {
+    SVNErrorCode errorCode = e.getErrorMessage().getErrorCode();
+    return errorCode == SVNErrorCode.FS_TXN_OUT_OF_DATE || errorCode == SVNErrorCode.FS_CONFLICT
+        || errorCode == SVNErrorCode.FS_OUT_OF_DATE || errorCode == SVNErrorCode.RA_OUT_OF_DATE
+        || errorCode == SVNErrorCode.FS_ALREADY_EXISTS || errorCode == SVNErrorCode.RA_DAV_ALREADY_EXISTS;
+  }
+
+  /**
+   * Aborts the current commit (if any), ignoring errors as the commit has already failed.
+   */
+  private void abortQuietly() {
+    if (commitEditor != null) {
+      try {
+        commitEditor.abortEdit();
+      } catch (SVNException e) {
+        Message.debug("Error aborting failed commit: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Builds a tree holding the binary diff copies, to which the put operations can be added so that a single commit can
+   * make them all while opening each folder once, as the commit editor requires.
+   * 
+   * @param foldersToCopy Map of folders to copy where key is destination and value is source.
+   * @return The tree.
+   */
+  private DirectoryTree createCopyTree(Map<String, String> foldersToCopy) {
+    DirectoryTree copyTree = new DirectoryTree("", null);
+    for (Entry<String, String> entry : foldersToCopy.entrySet()) {
+      String destination = entry.getKey();
+      int index = destination.lastIndexOf('/');
+      getTree(copyTree, index > 0 ? destination.substring(0, index) : "").addFolderCopy(destination, entry
+          .getValue());
+    }
+    return copyTree;
+  }
+
+  /**
+   * Adds the operations in the passed tree to the same folders in another tree.
+   * 
+   * @param tree Tree containing PutOperations.
+   * @param combinedTree The tree to add them to.
+   */
+  private void addPutOperations(DirectoryTree tree, DirectoryTree combinedTree) {
+    for (DirectoryTree subDir : tree.getSubDirectoryTrees()) {
+      addPutOperations(subDir, combinedTree);
+    }
+    for (PutOperation operation : tree.getPutOperations()) {
+      getTree(combinedTree, tree.getPath()).addPutOperation(operation);
+    }
+  }
+
+  /**
+   * Commits the contents of the passed DirectoryTree, depth-first so that each folder is opened once. The artifact
+   * index in each folder is written once everything in the folder has been committed.
+   * 
+   * @param tree Tree containing PutOperations and folder copies to commit.
+   * @param copiedOperations The operations putting files into each folder copied, where the key is the folder path.
    * @return The number of files committed. put operations.
    * @throws SVNException If an error occurs performing any of the put operations.
    * @throws IOException If an error occurs reading any file data.
    */
-  private int commitTree(DirectoryTree tree) throws SVNException, IOException {
+  private int commitTree(DirectoryTree tree, Map<String, List<PutOperation>> copiedOperations) throws SVNException,
+      IOException {
     int fileCount = 0;
     if (tree.getParent() != null) {
       if (svnDAO.folderExists(tree.getPath(), -1, true)) { // open dir to correct path in tree
@@ -199,9 +723,27 @@ public class SvnPublishTransaction {
       }
     }
     for (DirectoryTree subDir : tree.getSubDirectoryTrees()) {
-      fileCount += commitTree(subDir);
+      fileCount += commitTree(subDir, copiedOperations);
     }
     fileCount += performPutOperations(tree.getPutOperations()); // perform put operations at current open dir
+    for (Entry<String, String> entry : tree.getFolderCopies().entrySet()) {
+      String destination = entry.getKey();
+      if (singleCommit) {
+        if (svnDAO.folderExists(destination, -1, true)) {
+          Message.info("Binary diff deleting " + destination);
+          commitEditor.deleteEntry(destination, -1);
+        }
+        copyBinaryDiff(destination, entry.getValue(), copiedOperations.get(destination));
+      } else { // deleted by the commit which put the files into the binary diff folder
+        Message.info("Copying from " + entry.getValue() + " to " + destination);
+        commitEditor.addDir(destination, entry.getValue(), baseRevision);
+        commitEditor.closeDir();
+      }
+    }
+    ArtifactIndex index = artifactIndexes.get(tree.getPath());
+    if (index != null) {
+      writeArtifactIndex(index);
+    }
     if (tree.getParent() != null) {
       commitEditor.closeDir(); // finished with this path, close dir
     }
@@ -209,7 +751,9 @@ public class SvnPublishTransaction {
   }
 
   /**
-   * Performs all necessary put operations. The commitEditor is assumed to be in a valid state before this is called.
+   * Performs all necessary put operations. The commitEditor is assumed to be in a valid state before this is called,
+   * with the folder the operations put files into open so that the checksums of the files put can be recorded in its
+   * {@link SvnDao#PROPERTY_CHECKSUMS} property.
    * 
    * @return The number of put operations that were performed.
    * @throws SVNException If an error occurs performing any of the put operations.
@@ -219,6 +763,8 @@ public class SvnPublishTransaction {
     checkCommitEditor();
     int putFileCount = 0;
     Map<String, Set<String>> putFiles = new HashMap<String, Set<String>>();
+    Map<String, String[]> putChecksums = new HashMap<String, String[]>();
+    String putFolderPath = null;
     for (PutOperation operation : putOperations) {
       String destinationFolderPath = operation.getFolderPath(); // assume no binary diff
       boolean overwrite = operation.isOverwrite();
@@ -231,8 +777,23 @@ public class SvnPublishTransaction {
         overwrite = true; // force overwrite for binary diff
       }
       // destinationFolderPath and overwrite will be set according to whether binary diff or not
-      if (svnDAO.putFile(commitEditor, operation.getData(), destinationFolderPath, operation.getFileName(), overwrite)) {
+      boolean put = false;
+      if (!operation.isUnchanged()) {
+        InputStream data = operation.openData();
+        try {
+          put = svnDAO.putFile(commitEditor, data, operation.getLength(), operation.getChecksums(),
+              destinationFolderPath, operation.getFileName(), overwrite);
+        } finally {
+          data.close();
+        }
+      }
+      if (put) {
         putFileCount++;
+        String fileName = operation.getFileName();
+        if (!SvnDao.isChecksumFile(fileName) && fileName.indexOf(' ') < 0) {
+          putChecksums.put(fileName, operation.getChecksums());
+        }
+        putFolderPath = destinationFolderPath;
       }
 
       Set<String> files = putFiles.get(destinationFolderPath);
@@ -244,13 +805,39 @@ public class SvnPublishTransaction {
     }
 
     // only clean up if set to AND we are actually going to publish something
-    if (cleanupPublishFolder != null && cleanupPublishFolder && putFileCount > 0) {
+    boolean cleanup = cleanupPublishFolder != null && cleanupPublishFolder && putFileCount > 0;
+    if (cleanup) {
       cleanupPublishFolder(putFiles);
     }
+    if (!putChecksums.isEmpty()) {
+      recordChecksums(putFolderPath, putChecksums, cleanup ? putFiles.get(putFolderPath) : null);
+    }
 
     return putFileCount;
   }
 
+  /**
+   * Records the checksums of the files put into the currently open folder in its {@link SvnDao#PROPERTY_CHECKSUMS}
+   * property, keeping those of any other files in it.
+   * 
+   * @param folderPath The path of the currently open folder.
+   * @param putChecksums The checksums of the files put, where the key is the file name and the value is its SHA-1 and
+   *          MD5 checksums.
+   * @param keptFiles The names of all files left in the folder if the others have been deleted, otherwise null.
+   * @throws SVNException If an error occurs reading or changing the property.
+   */
+  private void recordChecksums(String folderPath, Map<String, String[]> putChecksums, Set<String> keptFiles)
+    throws SVNException {
+    Map<String, String[]> checksums = new TreeMap<String, String[]>(ChecksumCache.parseProperty(svnDAO
+        .getFolderProperty(folderPath, SvnDao.PROPERTY_CHECKSUMS, -1)));
+    if (keptFiles != null) {
+      checksums.keySet().retainAll(keptFiles);
+    }
+    checksums.putAll(putChecksums);
+    commitEditor.changeDirProperty(SvnDao.PROPERTY_CHECKSUMS, SVNPropertyValue.create(ChecksumCache
+        .formatProperty(checksums)));
+  }
+
   /**
    * Deletes any files in the publish folder which are not part of this transaction's set of files to publish.
    * 
@@ -273,49 +860,47 @@ public class SvnPublishTransaction {
   }
 
   /**
-   * Prepares the repository for the binary diff transaction, if necessary.
+   * Determines the binary diff copies needed, if any.
    * 
-   * @return A Map of folders which need to be copied in the binary diff transaction, where the key is the ultimate
-   *         destination folder and the value is the intermediate binary diff folder.
-   * @throws SVNException If an error occurs deleting previous releases in the repository.
+   * @param tree DirectoryTree to use to determine what binary diff actions are necessary.
+   * @return A Map of folders which need to be copied, where the key is the ultimate destination folder and the value is
+   *         the intermediate binary diff folder.
+   * @throws SVNException If an error occurs checking existing folders.
    */
-  private Map<String, String> prepareBinaryDiff(DirectoryTree tree) throws SVNException {
+  private Map<String, String> findBinaryDiffs(DirectoryTree tree) throws SVNException {
     Map<String, String> binaryDiffs = new HashMap<String, String>();
     if (binaryDiff) {
       Set<String> processedFolders = new HashSet<String>();
-      prepareBinaryDiff(tree, binaryDiffs, processedFolders);
+      findBinaryDiffs(tree, binaryDiffs, processedFolders);
     }
     return binaryDiffs;
   }
 
   /**
-   * Prepares the repository for the binary diffs needed for the passed tree.
+   * Determines the binary diff copies needed for the passed tree.
    * 
    * @param tree DirectoryTree to use to determine what binary diff actions are necessary.
-   * @param binaryDiffs A Map of folders which need to be copied in the binary diff transaction, values in the map will
-   *          be added to or deleted by this method as necessary.
+   * @param binaryDiffs A Map of folders which need to be copied, values in the map will be added to or deleted by this
+   *          method as necessary.
    * @param processedFolders A set of folders which have already been processed.
-   * @throws SVNException If an error occurs checking existing folders or deleting removed folders.
+   * @throws SVNException If an error occurs checking existing folders.
    */
-  private void prepareBinaryDiff(DirectoryTree tree, Map<String, String> binaryDiffs, Set<String> processedFolders)
+  private void findBinaryDiffs(DirectoryTree tree, Map<String, String> binaryDiffs, Set<String> processedFolders)
     throws SVNException {
-    for (DirectoryTree subDir : tree.getSubDirectoryTrees()) { // depth-first calls to prepare binary diff
-      prepareBinaryDiff(subDir, binaryDiffs, processedFolders);
+    for (DirectoryTree subDir : tree.getSubDirectoryTrees()) { // depth-first calls to find binary diffs
+      findBinaryDiffs(subDir, binaryDiffs, processedFolders);
     }
     for (PutOperation operation : tree.getPutOperations()) {
       String currentFolder = operation.getFolderPath();
+      if (operation.isUnchanged()) { // the whole folder is unchanged so there is nothing to copy
+        continue;
+      }
       if (!processedFolders.contains(currentFolder)) { // we haven't dealt with this folder yet
         String binaryDiffFolderPath = operation.determineBinaryDiffFolderPath(revision, binaryDiffFolderName);
         binaryDiffs.put(currentFolder, binaryDiffFolderPath); // schedule this to be processed later
-        if (svnDAO.folderExists(currentFolder, -1, true)) {
-          if (operation.isOverwrite()) {
-            // delete old release, we will copy over to release folder again in binary diff commit later
-            Message.info("Binary diff deleting " + currentFolder);
-            commitEditor.deleteEntry(currentFolder, -1);
-          } else {
-            Message.info("Overwrite set to false, ignoring copy to " + currentFolder);
-            binaryDiffs.remove(currentFolder);
-          }
+        if (svnDAO.folderExists(currentFolder, -1, true) && !operation.isOverwrite()) {
+          Message.info("Overwrite set to false, ignoring copy to " + currentFolder);
+          binaryDiffs.remove(currentFolder);
         }
       }
       processedFolders.add(currentFolder);
@@ -323,41 +908,104 @@ public class SvnPublishTransaction {
   }
 
   /**
-   * Performs any necessary binary diff copy operations as contained in the passed Map.
+   * Deletes the existing release folders which the binary diff transaction will copy over again.
+   * 
+   * @param foldersToCopy Map of folders to copy where key is destination and value is source.
+   * @throws SVNException If an error occurs deleting a folder.
+   */
+  private void deleteReleaseFolders(Map<String, String> foldersToCopy) throws SVNException {
+    for (String destination : foldersToCopy.keySet()) {
+      if (svnDAO.folderExists(destination, -1, true)) {
+        Message.info("Binary diff deleting " + destination);
+        commitEditor.deleteEntry(destination, -1);
+      }
+    }
+  }
+
+  /**
+   * Performs any necessary binary diff copy operations as contained in the passed Map. If the artifact indexes are
+   * being updated, the copied folders are recorded in them.
    * 
    * @param foldersToCopy Map of folders to copy where key is destination and value is source.
    * @throws SVNException If an error occurs copying one or more folders.
+   * @throws IOException If an error occurs reading any file data.
    */
-  private void copyDiff(Map<String, String> foldersToCopy) throws SVNException {
+  private void copyDiff(Map<String, String> foldersToCopy) throws SVNException, IOException {
     if (foldersToCopy.size() > 0) {
-      long rev = commitRepository.getLatestRevision(); // copying dirs requires valid revision
+      if (!indexedFolders.isEmpty()) {
+        readArtifactIndexes();
+      }
+      baseRevision = commitRepository.getLatestRevision(); // copying dirs requires valid revision
       commitEditor = commitRepository.getCommitEditor(commitMessage, null);
       commitEditor.openRoot(-1);
-      String currentFolder = null;
-      for (Entry<String, String> entry : foldersToCopy.entrySet()) {
-        String source = entry.getValue();
-        String destination = entry.getKey();
-        Message.info("Copying from " + source + " to " + destination);
-        int index = destination.lastIndexOf("/");
-        if (index > 0) { // addDir can't handle creating sub folders so we have to do it
-          String subFolderPath = destination.substring(0, index);
-          // SVNKit side effect of creating a folder is to change to this folder
-          boolean subFolderCreated = svnDAO.createFolders(commitEditor, subFolderPath, rev);
-          if (!subFolderCreated) { // if we didn't create a folder, we manually need to change to it
-            if (!subFolderPath.equals(currentFolder)) { // but only change to it if we haven't already
-              commitEditor.openDir(subFolderPath, rev);
-            }
-          }
-          currentFolder = subFolderPath;
-        }
-        commitEditor.addDir(entry.getKey(), entry.getValue(), rev);
-        commitEditor.closeDir();
-      }
+      commitTree(createCopyTree(foldersToCopy), new HashMap<String, List<PutOperation>>());
       commitEditor.closeDir(); // close root
       Message.info("Binary diff finished : " + commitEditor.closeEdit());
     }
   }
 
+  /**
+   * Replaces a release folder (which must have been deleted if it existed) with a copy of its binary diff folder at the
+   * base revision, then puts, deletes and records the checksums of files in the copy just as the current commit does in
+   * the binary diff folder, so that both end up with the same contents. Files which the copy already holds with the
+   * same contents are not sent again.
+   * 
+   * @param destination The release folder.
+   * @param source The binary diff folder.
+   * @param operations The operations putting files into the release folder.
+   * @throws SVNException If an error occurs copying the folder or putting a file.
+   * @throws IOException If an error occurs reading any file data.
+   */
+  private void copyBinaryDiff(String destination, String source, List<PutOperation> operations)
+    throws SVNException, IOException {
+    Set<String> copiedFiles = new HashSet<String>();
+    Map<String, String[]> copiedChecksums = new TreeMap<String, String[]>();
+    if (svnDAO.folderExists(source, -1, false)) {
+      Message.info("Copying from " + source + "@" + baseRevision + " to " + destination);
+      commitEditor.addDir(destination, source, baseRevision);
+      copiedFiles.addAll(svnDAO.list(source, -1));
+      copiedChecksums.putAll(ChecksumCache.parseProperty(svnDAO.getFolderProperty(source,
+          SvnDao.PROPERTY_CHECKSUMS, -1)));
+    } else {
+      Message.info("Creating " + destination);
+      commitEditor.addDir(destination, null, -1);
+    }
+    Map<String, String[]> checksums = new TreeMap<String, String[]>(copiedChecksums);
+    Set<String> putFiles = new HashSet<String>();
+    for (PutOperation operation : operations) {
+      String fileName = operation.getFileName();
+      putFiles.add(fileName);
+      String[] copied = copiedChecksums.get(fileName);
+      if (copiedFiles.contains(fileName) && copied != null && copied[1].equalsIgnoreCase(operation.getChecksums()[1])) {
+        continue; // already in the copy
+      }
+      InputStream data = operation.openData();
+      try {
+        svnDAO.putCopiedFile(commitEditor, data, operation.getLength(), operation.getChecksums(), destination + "/"
+            + fileName, copiedFiles.contains(fileName) ? source + "/" + fileName : null, baseRevision);
+      } finally {
+        data.close();
+      }
+      if (!SvnDao.isChecksumFile(fileName) && fileName.indexOf(' ') < 0) {
+        checksums.put(fileName, operation.getChecksums());
+      }
+    }
+    if (cleanupPublishFolder != null && cleanupPublishFolder) {
+      for (String copiedFile : copiedFiles) {
+        if (!putFiles.contains(copiedFile)) {
+          Message.info("Deleting " + destination + "/" + copiedFile);
+          commitEditor.deleteEntry(destination + "/" + copiedFile, -1);
+        }
+      }
+      checksums.keySet().retainAll(putFiles);
+    }
+    if (!checksums.isEmpty()) {
+      commitEditor.changeDirProperty(SvnDao.PROPERTY_CHECKSUMS, SVNPropertyValue.create(ChecksumCache
+          .formatProperty(checksums)));
+    }
+    commitEditor.closeDir();
+  }
+
   /**
    * Abort the transaction.
    * 
@@ -369,6 +1017,23 @@ public class SvnPublishTransaction {
     commitEditor = null;
   }
 
+  /**
+   * Deletes any private copies of file data made by the put operations in this transaction, after which it can no
+   * longer be committed.
+   */
+  public void dispose() {
+    dispose(publishTree);
+  }
+
+  private void dispose(DirectoryTree tree) {
+    for (DirectoryTree subDir : tree.getSubDirectoryTrees()) {
+      dispose(subDir);
+    }
+    for (PutOperation operation : tree.getPutOperations()) {
+      operation.dispose();
+    }
+  }
+
   /**
    * Check if a commit editor has been set.
    * 
@@ -416,6 +1081,38 @@ public class SvnPublishTransaction {
     this.cleanupPublishFolder = cleanupPublishFolder;
   }
 
+  /**
+   * Set whether to update the artifact indexes of the folders published to as part of the commit.
+   * 
+   * @param updateArtifactIndex Whether to update the artifact indexes.
+   */
+  public void setUpdateArtifactIndex(boolean updateArtifactIndex) {
+    this.updateArtifactIndex = updateArtifactIndex;
+  }
+
+  /**
+   * Set the store that published files are added to once committed.
+   * 
+   * @param contentStore The store, null to not add published files to a store.
+   */
+  public void setContentStore(ContentStore contentStore) {
+    this.contentStore = contentStore;
+  }
+
+  /**
+   * @param skipUnchanged Whether to skip putting files which the repository already holds with identical contents.
+   */
+  public void setSkipUnchanged(boolean skipUnchanged) {
+    this.skipUnchanged = skipUnchanged;
+  }
+
+  /**
+   * @param singleCommit Whether to make binary diffs in the same commit as the files are put.
+   */
+  public void setSingleCommit(boolean singleCommit) {
+    this.singleCommit = singleCommit;
+  }
+
   /**
    * Set the repository to use for performing commit operations.
    * 
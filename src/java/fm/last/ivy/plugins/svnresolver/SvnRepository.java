@@ -18,31 +18,71 @@ package fm.last.ivy.plugins.svnresolver;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.lang.ref.WeakReference;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
+import org.apache.ivy.core.IvyContext;
 import org.apache.ivy.core.module.id.ModuleRevisionId;
+import org.apache.ivy.core.resolve.ResolveData;
 import org.apache.ivy.plugins.repository.AbstractRepository;
 import org.apache.ivy.plugins.repository.Resource;
 import org.apache.ivy.plugins.repository.TransferEvent;
 import org.apache.ivy.util.Message;
+import org.tmatesoft.svn.core.ISVNCanceller;
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
+import org.tmatesoft.svn.core.SVNCancelException;
+import org.tmatesoft.svn.core.SVNDepth;
 import org.tmatesoft.svn.core.SVNDirEntry;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNLogEntryPath;
 import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNProperty;
 import org.tmatesoft.svn.core.SVNURL;
 import org.tmatesoft.svn.core.internal.io.dav.DAVRepositoryFactory;
 import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
 import org.tmatesoft.svn.core.internal.io.svn.SVNRepositoryFactoryImpl;
+import org.tmatesoft.svn.core.internal.util.SVNDate;
+import org.tmatesoft.svn.core.io.ISVNReporter;
+import org.tmatesoft.svn.core.io.ISVNReporterBaton;
 import org.tmatesoft.svn.core.io.SVNRepository;
 
 /**
  * Ivy repository that uses Subversion for artifact storage.
+ * <p>
+ * A single instance may be used by several threads at once (e.g. by parallel resolves sharing the same settings). The
+ * concurrency model is:
+ * <ul>
+ * <li>Configuration (the setters) must be complete before the repository is first used and is not changed after.</li>
+ * <li>Every retrieve operation borrows its own Subversion session from the {@link SVNRepositoryCache} for the duration
+ * of the operation, sessions and the {@link SvnDao}s wrapping them are never used by two threads at once.</li>
+ * <li>Shared caches (resources, resolved metadata, folder listings, checksums etc.) are thread-safe.</li>
+ * <li>Publish state (the module being published and its transaction) and scheduled background downloads belong to the
+ * calling thread, so a publish must begin, put and commit on one thread.</li>
+ * <li>Transfer events are tracked per thread, so concurrent transfers each report their own progress.</li>
+ * </ul>
  */
 public class SvnRepository extends AbstractRepository {
 
@@ -91,7 +131,93 @@ public class SvnRepository extends AbstractRepository {
    */
   private boolean storageAllowed = false;
 
-  private Map<String, Resource> resourcesCache = new HashMap<String, Resource>();
+  /**
+   * The maximum number of pooled connections this repository allows to be open to a single Subversion host.
+   */
+  private int maxConnectionsPerHost = SVNRepositoryCache.DEFAULT_MAX_CONNECTIONS_PER_HOST;
+
+  /**
+   * The time (in milliseconds) after which this repository's idle pooled connections are closed.
+   */
+  private long connectionIdleTimeout = SVNRepositoryCache.DEFAULT_IDLE_TIMEOUT;
+
+  /**
+   * The default maximum number of resources held in the resources cache.
+   */
+  public static final int DEFAULT_RESOURCE_CACHE_SIZE = 10000;
+
+  private int resourceCacheSize = DEFAULT_RESOURCE_CACHE_SIZE;
+
+  private long resourceCacheTimeToLive = 0;
+
+  private int resolvedMetadataCacheSize = 0;
+
+  /**
+   * The default time (in milliseconds) that resources found to be missing at HEAD are remembered for.
+   */
+  public static final long DEFAULT_NEGATIVE_CACHE_TIME_TO_LIVE = 60 * 1000;
+
+  /**
+   * The maximum number of folders and missing resources held in the negative cache.
+   */
+  private static final int NEGATIVE_CACHE_SIZE = 10000;
+
+  /**
+   * Resources known not to exist.
+   */
+  private NegativeCache negativeCache = new NegativeCache(NEGATIVE_CACHE_SIZE, DEFAULT_NEGATIVE_CACHE_TIME_TO_LIVE);
+
+  private long negativeCacheTimeToLive = DEFAULT_NEGATIVE_CACHE_TIME_TO_LIVE;
+
+  /**
+   * Cache of resources, where the key is the full path to the resource in subversion qualified by the revision (see
+   * {@link #getCacheKey(String, long)}).
+   */
+  private ExpiringCache<Resource> resourcesCache = new ExpiringCache<Resource>(resourceCacheSize,
+      resourceCacheTimeToLive);
+
+  /**
+   * Cache of the metadata of resolved resources, keyed like the resources cache. Null if resolved metadata is held by
+   * the resources in the resources cache instead.
+   */
+  private ExpiringCache<ResourceMetadata> resolvedMetadata;
+
+  /**
+   * Checksums recorded when artifacts were published, used to serve their checksum files. These are kept when HEAD
+   * moves as a checksum is only served if the artifact's contents are still those it was recorded for.
+   */
+  private final ChecksumCache checksumCache = new ChecksumCache(DEFAULT_RESOURCE_CACHE_SIZE);
+
+  /**
+   * How calls to subversion are retried when they fail with transient errors.
+   */
+  private final RetryPolicy retryPolicy = new RetryPolicy();
+
+  /**
+   * The number of resources in a folder that need to be resolved before the folder's listing is fetched and used to
+   * resolve the rest.
+   */
+  private static final int FOLDER_LISTING_THRESHOLD = 2;
+
+  /**
+   * Listings of folders that resources have been resolved from at fixed revisions, where the key is the full path to
+   * the folder qualified by the revision.
+   */
+  private ExpiringCache<FolderListing> folderListings = new ExpiringCache<FolderListing>(resourceCacheSize,
+      resourceCacheTimeToLive);
+
+  /**
+   * Listings of folders that resources have been resolved from at HEAD, which are only used for as long as the
+   * negative cache trusts what is missing at HEAD. Null if listings at HEAD are not reused.
+   */
+  private ExpiringCache<FolderListing> headFolderListings = new ExpiringCache<FolderListing>(resourceCacheSize,
+      DEFAULT_NEGATIVE_CACHE_TIME_TO_LIVE);
+
+  /**
+   * The number of resources resolved per folder which hasn't been listed yet, where the key is the full path to the
+   * folder. Updates are guarded by the cache itself.
+   */
+  private ExpiringCache<Integer> folderProbes = new ExpiringCache<Integer>(resourceCacheSize, resourceCacheTimeToLive);
 
   /**
    * The path to the root of the Ivy repository within subversion.
@@ -99,9 +225,9 @@ public class SvnRepository extends AbstractRepository {
   private String repositoryRoot;
 
   /**
-   * The svn transaction for putting files.
+   * The svn transaction for putting files, per publishing thread.
    */
-  private SvnPublishTransaction publishTransaction;
+  private final ThreadLocal<SvnPublishTransaction> publishTransaction = new ThreadLocal<SvnPublishTransaction>();
 
   /**
    * Whether to perform binary diffs or not.
@@ -119,20 +245,233 @@ public class SvnRepository extends AbstractRepository {
   private String binaryDiffFolderName = DEFAULT_BINARY_DIFF_FOLDER_NAME;
 
   /**
-   * The revision id of the module being published.
+   * The revision id of the module being published, per publishing thread.
    */
-  private ModuleRevisionId moduleRevisionId;
+  private final ThreadLocal<ModuleRevisionId> moduleRevisionId = new ThreadLocal<ModuleRevisionId>();
 
   /**
    * The SVN revision value to use when retrieving artifacts.
    */
   private long svnRetrieveRevision = -1; // default to -1 which is equivalent to HEAD
 
+  /**
+   * Whether to resolve HEAD to a concrete revision once per resolve and use it for all retrieve operations during the
+   * resolve, only used if no retrieve revision is set.
+   */
+  private boolean pinHeadRevision = false;
+
+  /**
+   * Pins HEAD for each resolve, weakly keyed so resolves can be garbage collected once over. Guarded by itself, the
+   * pinning is run outside the lock by the first thread which needs it and the others wait for its result.
+   */
+  private final Map<ResolveData, FutureTask<Long>> pinnedRevisions = new WeakHashMap<ResolveData, FutureTask<Long>>();
+
+  /**
+   * The revision HEAD was last pinned to, -1 if it has never been pinned.
+   */
+  private volatile long pinnedRevision = -1;
+
   /**
    * Whether to cleanup the contents of the publish folder during publish.
    */
   private Boolean cleanupPublishFolder = null;
 
+  /**
+   * The number of threads to use to download artifacts, 1 disables parallel downloads.
+   */
+  private int retrieveThreads = 1;
+
+  /**
+   * Whether to download several artifacts in the same folder using a single request.
+   */
+  private boolean bulkRetrieve = false;
+
+  /**
+   * Whether to use virtual threads for parallel downloads (if supported by the JVM).
+   */
+  private boolean useVirtualThreads = false;
+
+  /**
+   * Whether to send overwritten files as deltas against their current contents when publishing.
+   */
+  private boolean publishDeltas = false;
+
+  /**
+   * Whether to skip publishing files which the repository already holds with identical contents.
+   */
+  private boolean skipUnchanged = false;
+
+  /**
+   * Whether to make binary diffs in the same commit as the published files are put.
+   */
+  private boolean singleCommitBinaryDiff = false;
+
+  /**
+   * Performs the background downloads scheduled for the artifacts currently being downloaded by each thread, unset if
+   * none are scheduled.
+   */
+  private final ThreadLocal<ParallelDownloader> downloader = new ThreadLocal<ParallelDownloader>();
+
+  /**
+   * The time (in milliseconds) an idle transfer thread is kept for.
+   */
+  private static final long TRANSFER_THREAD_KEEP_ALIVE = 60 * 1000;
+
+  /**
+   * Performs background transfers (parallel downloads and streams), created when first needed. Limited to one thread
+   * per pooled connection this repository may open, as a transfer without a connection can only wait for one.
+   */
+  private ThreadPoolExecutor transferExecutor;
+
+  /**
+   * The transfer event for the transfer currently being performed by each thread.
+   */
+  private final ThreadLocal<SvnTransferEvent> transferEvent = new ThreadLocal<SvnTransferEvent>();
+
+  /**
+   * The number of bytes transferred between progress events.
+   */
+  private long progressInterval = TransferMonitor.DEFAULT_PROGRESS_INTERVAL;
+
+  /**
+   * Fires progress events for the file being retrieved by the calling thread, whose initiated and completed events are
+   * fired by {@link #get(String, File)}.
+   */
+  private final TransferMonitor.Listener getListener = new TransferMonitor.Listener() {
+    public void transferStarted(TransferMonitor monitor) {
+      if (monitor.getTotalLength() > 0) {
+        fireTransferStarted(monitor.getTotalLength());
+      } else {
+        fireTransferStarted();
+      }
+    }
+
+    public void transferProgress(TransferMonitor monitor, long length) {
+      fireTransferProgress(length);
+    }
+
+    public void transferCompleted(TransferMonitor monitor) {
+    }
+  };
+
+  /**
+   * Fires the events for each file sent to subversion by a commit, as publishing only schedules files to be sent.
+   */
+  private final TransferMonitor.Listener putListener = new TransferMonitor.Listener() {
+    public void transferStarted(TransferMonitor monitor) {
+      String path = monitor.getPath().startsWith("/") ? monitor.getPath().substring(1) : monitor.getPath();
+      fireTransferInitiated(getRepositoryResource(getRepositoryRoot() + path), TransferEvent.REQUEST_PUT);
+      fireTransferStarted(monitor.getTotalLength());
+    }
+
+    public void transferProgress(TransferMonitor monitor, long length) {
+      fireTransferProgress(length);
+    }
+
+    public void transferCompleted(TransferMonitor monitor) {
+      fireTransferCompleted(monitor.getTransferred());
+    }
+  };
+
+  /**
+   * The maximum time (in milliseconds) a get or commit may take, 0 for no limit.
+   */
+  private long operationTimeout = 0;
+
+  /**
+   * The time by which the get or commit currently being performed by each thread must finish, unset if there is no
+   * limit.
+   */
+  private final ThreadLocal<Long> operationDeadline = new ThreadLocal<Long>();
+
+  /**
+   * Cancels calls to subversion made by a thread once its operation deadline has passed. Set on every repository this
+   * uses, SVNKit checks it between reads and writes so a blocked read is only interrupted by the read timeout.
+   */
+  private final ISVNCanceller deadlineCanceller = new ISVNCanceller() {
+    public void checkCancelled() throws SVNCancelException {
+      Long deadline = operationDeadline.get();
+      if (deadline != null && System.currentTimeMillis() > deadline) {
+        throw new SVNCancelException(SVNErrorMessage.create(SVNErrorCode.CANCELLED,
+            "Operation did not complete within {0}ms", Long.valueOf(operationTimeout)));
+      }
+    }
+  };
+
+  /**
+   * Persistent cache of metadata for resources at fixed revisions, null if disabled.
+   */
+  private volatile MetadataCache metadataCache;
+
+  /**
+   * The folder holding the metadata cache, null if disabled.
+   */
+  private File metadataCacheDir;
+
+  /**
+   * The number of revisions whose metadata is kept in the metadata cache.
+   */
+  private int metadataCacheRevisions = MetadataCache.DEFAULT_MAX_REVISIONS;
+
+  /**
+   * Local store of downloaded file contents keyed by checksum, null if disabled.
+   */
+  private ContentStore contentStore;
+
+  /**
+   * UUID of the subversion repository containing the repository root, null until identified via the metadata cache.
+   */
+  private volatile String repositoryUUID;
+
+  /**
+   * Path of the repository root relative to the root of the subversion repository, null until identified via the
+   * metadata cache.
+   */
+  private volatile String repositoryPath;
+
+  /**
+   * Whether to maintain the artifact indexes when publishing and consult them when retrieving.
+   */
+  private boolean useArtifactIndex = false;
+
+  /**
+   * The maximum number of artifact index files whose contents are kept, so that they are only read again once changed.
+   */
+  private static final int ARTIFACT_INDEX_CACHE_SIZE = 1000;
+
+  /**
+   * The artifact indexes checked for the current retrieve revision, where the key is the path of the folder each is in
+   * relative to the repository root and the value is null if the folder has no usable index.
+   */
+  private Map<String, ArtifactIndex> artifactIndexes = new HashMap<String, ArtifactIndex>();
+
+  /**
+   * The retrieve revision the artifact indexes were checked for.
+   */
+  private long artifactIndexesRevision = -1;
+
+  /**
+   * The resolve during which the artifact indexes were checked, at HEAD they are only checked once per resolve.
+   */
+  private WeakReference<ResolveData> artifactIndexesResolve;
+
+  /**
+   * The contents of the artifact index files read, where the key is the path of the folder each is in and the revision
+   * it was last changed in.
+   */
+  private final ExpiringCache<byte[]> artifactIndexFiles = new ExpiringCache<byte[]>(ARTIFACT_INDEX_CACHE_SIZE, 0);
+
+  /**
+   * The maximum number of revisions the listing cache will be brought up to date over using the log, beyond this it is
+   * cheaper to discard it.
+   */
+  private static final int MAX_LOG_REVISIONS = 1000;
+
+  /**
+   * Folder listings returned by {@link #list(String)} when the metadata cache isn't used.
+   */
+  private final ListingCache listingCache = new ListingCache();
+
   /**
    * Initialises repository to accept requests for svn protocol.
    */
@@ -170,27 +509,112 @@ public class SvnRepository extends AbstractRepository {
   }
 
   /**
-   * Gets a repository referencing the passed URL, with authentication setup based on the values currently set in this
-   * object.
+   * Gets a new repository referencing the passed URL, with authentication setup based on the values currently set in
+   * this object. The repository is not pooled and is owned by the caller.
    * 
    * @param url Subversion repository URL.
-   * @param cache Whether to cache repository reference.
    * @return An initialised repository object.
    * @throws SVNException If the URL or authentication credentials are invalid.
    */
-  private SVNRepository getRepository(SVNURL url, boolean cache) throws SVNException {
-    SVNRepository repository = null;
-    if (cache) {
-      repository = SVNRepositoryCache.getInstance().getRepository(url, userName, userPassword, keyFile, sshPassphrase,
-          portNumber, certFile, sslPassphrase, storageAllowed);
-    } else {
-      repository = SvnUtils.createRepository(url, userName, userPassword, keyFile, sshPassphrase, portNumber, certFile,
-          sslPassphrase, storageAllowed);
-      repository.setLocation(url, false);
-    }
+  private SVNRepository createRepository(SVNURL url) throws SVNException {
+    SVNRepository repository = SvnUtils.createRepository(url, userName, userPassword, keyFile, sshPassphrase,
+        portNumber, certFile, sslPassphrase, storageAllowed);
+    repository.setLocation(url, false);
+    repository.setCanceller(deadlineCanceller);
     return repository;
   }
 
+  /**
+   * Borrows a pooled repository referencing the passed URL, with authentication setup based on the values currently
+   * set in this object. The repository MUST be handed back via {@link #returnRepository(SVNRepository)} after use.
+   * 
+   * @param url Subversion repository URL.
+   * @return An initialised repository object.
+   * @throws SVNException If the URL or authentication credentials are invalid.
+   */
+  private SVNRepository borrowRepository(SVNURL url) throws SVNException {
+    SVNRepository repository = SVNRepositoryCache.getInstance().borrowRepository(url, userName, userPassword, keyFile,
+        sshPassphrase, portNumber, certFile, sslPassphrase, storageAllowed, maxConnectionsPerHost,
+        connectionIdleTimeout);
+    repository.setCanceller(deadlineCanceller);
+    return repository;
+  }
+
+  /**
+   * Starts the deadline for a get or commit by the calling thread, if operations are limited.
+   */
+  private void startOperationDeadline() {
+    if (operationTimeout > 0) {
+      operationDeadline.set(System.currentTimeMillis() + operationTimeout);
+    }
+  }
+
+  /**
+   * Ends the deadline for a get or commit by the calling thread.
+   */
+  private void endOperationDeadline() {
+    operationDeadline.remove();
+  }
+
+  /**
+   * Returns a repository previously obtained via {@link #borrowRepository(SVNURL)} to the pool.
+   * 
+   * @param repository The repository, may be null in which case nothing is done.
+   */
+  private void returnRepository(SVNRepository repository) {
+    SVNRepositoryCache.getInstance().returnRepository(repository);
+  }
+
+  /**
+   * Makes a call to subversion using a pooled repository referencing the passed URL, retrying it according to the retry
+   * policy if it fails with a transient error. Each attempt borrows a repository, which is closed if the attempt fails
+   * as its connection may be broken or part way through a response.
+   * 
+   * @param url Subversion repository URL.
+   * @param call The call.
+   * @return The call's result.
+   * @throws SVNException If the call fails.
+   * @throws IOException If the call fails handling its result.
+   */
+  private <T> T execute(final SVNURL url, final RepositoryCall<T> call) throws SVNException, IOException {
+    return retryPolicy.execute(url, new RetryPolicy.RemoteCall<T>() {
+      public T call() throws SVNException, IOException {
+        deadlineCanceller.checkCancelled(); // don't start another attempt once the deadline has passed
+        SVNRepository repository = borrowRepository(url);
+        boolean completed = false;
+        try {
+          T result = call.call(repository);
+          completed = true;
+          return result;
+        } finally {
+          if (!completed) {
+            repository.closeSession();
+          }
+          returnRepository(repository);
+        }
+      }
+    });
+  }
+
+  /**
+   * A call to subversion made using a pooled repository, which may be made more than once.
+   * 
+   * @param <T> The type of the call's result.
+   */
+  private interface RepositoryCall<T> {
+
+    /**
+     * Makes the call.
+     * 
+     * @param repository The repository to use, this must not be returned to the pool.
+     * @return The result.
+     * @throws SVNException If an error occurs talking to subversion.
+     * @throws IOException If an error occurs handling the result.
+     */
+    T call(SVNRepository repository) throws SVNException, IOException;
+
+  }
+
   /**
    * Starts a publish transaction.
    * 
@@ -199,185 +623,1145 @@ public class SvnRepository extends AbstractRepository {
   public void beginPublishTransaction(ModuleRevisionId mrid) {
     ensureNoPublishTransaction();
     Message.debug("Starting transaction " + mrid + "...");
-    this.moduleRevisionId = mrid;
+    moduleRevisionId.set(mrid);
+  }
+
+  /**
+   * Commits the previously started publish transaction.
+   * 
+   * @throws IOException If an error occurs committing the transaction.
+   */
+  public void commitPublishTransaction() throws IOException {
+    ensurePublishTransaction();
+    Message.debug("Committing transaction...");
+    startOperationDeadline();
+    try {
+      // not retried as the outcome of a commit whose connection failed is unknown, but counted by the circuit breaker
+      retryPolicy.execute(SVNURL.parseURIEncoded(getRepositoryRoot()), new RetryPolicy.RemoteCall<Object>() {
+        public Object call() throws SVNException, IOException {
+          publishTransaction.get().commit();
+          return null;
+        }
+      }, false);
+      publishTransaction.get().dispose();
+      publishTransaction.remove();
+      moduleRevisionId.remove();
+      clearFolderListings(); // published files will be missing from any listings fetched before
+      negativeCache.clear();
+      synchronized (this) {
+        artifactIndexes = new HashMap<String, ArtifactIndex>(); // the indexes may have been updated by the commit
+      }
+    } catch (SVNException e) {
+      throw (IOException) new IOException().initCause(e);
+    } finally {
+      endOperationDeadline();
+    }
+  }
+
+  /**
+   * Aborts a previously started publish transaction.
+   * 
+   * @throws IOException If an error occurs aborting the publish transaction.
+   */
+  public void abortPublishTransaction() throws IOException {
+    SvnPublishTransaction transaction = publishTransaction.get();
+    if (transaction == null) {
+      Message.info("Transaction not created, nothing to abort");
+      return;
+    }
+    transaction.dispose();
+    if (!transaction.commitStarted()) {
+      Message.info("Commit transaction not started, nothing to abort");
+      return;
+    }
+    Message.info("Aborting transaction");
+    try {
+      transaction.abort();
+      publishTransaction.remove();
+      moduleRevisionId.remove();
+    } catch (SVNException e) {
+      throw (IOException) new IOException().initCause(e);
+    }
+  }
+
+  /**
+   * Ensures that a transaction has been created by the calling thread.
+   * 
+   * @throws IllegalStateException If a transaction has not been created.
+   */
+  private void ensurePublishTransaction() {
+    if (publishTransaction.get() == null) {
+      throw new IllegalStateException("Transaction not initialised");
+    }
+  }
+
+  /**
+   * Ensures that no transaction is lingering around for the calling thread.
+   * 
+   * @throws IllegalStateException If a transaction is still active.
+   */
+  private void ensureNoPublishTransaction() {
+    if (publishTransaction.get() != null) {
+      throw new IllegalStateException("Previous transaction is still active");
+    }
+  }
+
+  /**
+   * Starts a new transfer event for the calling thread, rather than reusing the single event held by the superclass.
+   * 
+   * @param resource The resource being transferred.
+   * @param requestType The type of the transfer.
+   */
+  @Override
+  protected void fireTransferInitiated(Resource resource, int requestType) {
+    SvnTransferEvent event = new SvnTransferEvent(this, resource, requestType);
+    transferEvent.set(event);
+    fireTransferEvent(event);
+  }
+
+  @Override
+  protected void fireTransferStarted() {
+    fireTransferEvent(updateTransferEvent(TransferEvent.TRANSFER_STARTED));
+  }
+
+  @Override
+  protected void fireTransferStarted(long totalLength) {
+    SvnTransferEvent event = updateTransferEvent(TransferEvent.TRANSFER_STARTED);
+    event.updateTotalLength(totalLength);
+    fireTransferEvent(event);
+  }
+
+  @Override
+  protected void fireTransferProgress(long length) {
+    SvnTransferEvent event = updateTransferEvent(TransferEvent.TRANSFER_PROGRESS);
+    event.updateLength(length);
+    fireTransferEvent(event);
+  }
+
+  @Override
+  protected void fireTransferCompleted() {
+    SvnTransferEvent event = updateTransferEvent(TransferEvent.TRANSFER_COMPLETED);
+    if (event.getTotalLength() > 0 && !event.isTotalLengthSet()) {
+      event.setTotalLengthSet(true);
+    }
+    transferEvent.remove();
+    fireTransferEvent(event);
+  }
+
+  @Override
+  protected void fireTransferCompleted(long totalLength) {
+    SvnTransferEvent event = updateTransferEvent(TransferEvent.TRANSFER_COMPLETED);
+    event.updateTotalLength(totalLength);
+    transferEvent.remove();
+    fireTransferEvent(event);
+  }
+
+  @Override
+  protected void fireTransferError() {
+    SvnTransferEvent event = updateTransferEvent(TransferEvent.TRANSFER_ERROR);
+    transferEvent.remove();
+    fireTransferEvent(event);
+  }
+
+  @Override
+  protected void fireTransferError(Exception e) {
+    SvnTransferEvent event = updateTransferEvent(TransferEvent.TRANSFER_ERROR);
+    event.setException(e);
+    transferEvent.remove();
+    fireTransferEvent(event);
+  }
+
+  /**
+   * Moves the calling thread's transfer event on to the passed stage of the transfer.
+   * 
+   * @param eventType The new event type.
+   * @return The event.
+   * @throws IllegalStateException If no transfer has been initiated by the calling thread.
+   */
+  private SvnTransferEvent updateTransferEvent(int eventType) {
+    SvnTransferEvent event = transferEvent.get();
+    if (event == null) {
+      throw new IllegalStateException("No transfer initiated by this thread");
+    }
+    event.update(eventType);
+    return event;
+  }
+
+  /**
+   * Handles a request to add/update a file to/in the repository.
+   * 
+   * @param source The source file.
+   * @param destination The location of the file in the repository.
+   * @param overwrite Whether to overwite the file if it already exists.
+   * @throws IOException If an error occurs putting a file (invalid path, invalid login credentials etc.)
+   */
+  public void put(File source, String destination, boolean overwrite) throws IOException {
+    fireTransferInitiated(getResource(destination), TransferEvent.REQUEST_PUT);
+    Message.debug("Scheduling publish from " + source.getAbsolutePath() + " to " + getRepositoryRoot() + destination);
+    Message.info("Scheduling publish to " + getRepositoryRoot() + destination);
+    try {
+      SVNURL destinationURL = SVNURL.parseURIEncoded(getRepositoryRoot() + destination);
+      SvnPublishTransaction transaction = publishTransaction.get();
+      if (transaction == null) { // haven't initialised transaction on a previous put
+
+        // first create a repository which transaction can use for various file checks
+        SVNURL repositoryRootURL = SVNURL.parseURIEncoded(getRepositoryRoot());
+        SVNRepository ancillaryRepository = createRepository(repositoryRootURL);
+        SvnDao svnDAO = new SvnDao(ancillaryRepository);
+        svnDAO.setTransferListener(putListener, progressInterval);
+        svnDAO.setSendDeltas(publishDeltas, contentStore);
+
+        // now create another repository which transaction will use to do actual commits
+        SVNRepository commitRepository = createRepository(destinationURL);
+
+        transaction = new SvnPublishTransaction(svnDAO, moduleRevisionId.get(), commitRepository, repositoryRootURL);
+        transaction.setBinaryDiff(binaryDiff);
+        transaction.setBinaryDiffFolderName(binaryDiffFolderName);
+        transaction.setCleanupPublishFolder(cleanupPublishFolder);
+        transaction.setUpdateArtifactIndex(useArtifactIndex);
+        transaction.setContentStore(publishDeltas ? contentStore : null);
+        transaction.setSkipUnchanged(skipUnchanged);
+        transaction.setSingleCommit(singleCommitBinaryDiff);
+        publishTransaction.set(transaction);
+      }
+      // add all info needed to put the file to the transaction
+      transaction.addPutOperation(source, destination, overwrite);
+    } catch (SVNException e) {
+      throw (IOException) new IOException().initCause(e);
+    }
+  }
+
+  /**
+   * Handles a request to retrieve a file from the repository.
+   * 
+   * @param source Path to the resource to retrieve, including the repository root.
+   * @param destination The location where the file should be retrieved to.
+   * @throws IOException If an error occurs retrieving the file.
+   */
+  public void get(String source, File destination) throws IOException {
+    String repositorySource = source;
+    if (!source.startsWith(getRepositoryRoot())) {
+      repositorySource = getRepositoryRoot() + source;
+    }
+    fireTransferInitiated(getRepositoryResource(repositorySource), TransferEvent.REQUEST_GET);
+    startOperationDeadline();
+    try {
+      retrieve(repositorySource, destination);
+    } finally {
+      endOperationDeadline();
+    }
+    fireTransferCompleted(destination.length());
+  }
+
+  /**
+   * Retrieves a file from the repository, from a background download or the published checksums if possible.
+   * 
+   * @param repositorySource Full path to the file in subversion.
+   * @param destination The location where the file should be retrieved to.
+   * @throws IOException If an error occurs retrieving the file.
+   */
+  private void retrieve(String repositorySource, File destination) throws IOException {
+    File downloaded = takeScheduledDownload(repositorySource);
+    String checksum = downloaded == null ? checksumCache.getChecksum(repositorySource) : null;
+    if (downloaded != null) {
+      Message.debug("Using background download of " + repositorySource + " for " + destination.getAbsolutePath());
+      SvnUtils.moveFile(downloaded, destination);
+    } else if (checksum != null) {
+      Message.debug("Using published checksum for " + repositorySource + " for " + destination.getAbsolutePath());
+      byte[] data = checksum.getBytes("US-ASCII");
+      AtomicFileOutputStream out = new AtomicFileOutputStream(destination, data.length);
+      try {
+        out.write(data);
+        out.commit();
+      } finally {
+        out.close();
+      }
+    } else {
+      long revision = getRetrieveRevision();
+      Message.debug("Getting file for user " + userName + " from " + repositorySource + " [revision=" + revision
+          + "] to " + destination.getAbsolutePath());
+      download(repositorySource, destination, revision);
+    }
+  }
+
+  /**
+   * Downloads a file from the repository without firing any transfer events, using a single request. If the content
+   * store is enabled and already contains the file's contents they are copied from there instead, otherwise they are
+   * added to it. The metadata of the cached resource for the file is updated from the response. Safe to call from
+   * multiple threads concurrently as each call uses its own pooled connection.
+   * 
+   * @param repositorySource Full path to the file in subversion.
+   * @param destination The location where the file should be downloaded to.
+   * @param revision The revision to download, -1 for HEAD.
+   * @throws IOException If an error occurs downloading the file.
+   */
+  void download(String repositorySource, final File destination, final long revision) throws IOException {
+    try {
+      final SVNURL url = SVNURL.parseURIEncoded(repositorySource);
+      ResourceMetadata metadata = null;
+      if (contentStore != null) {
+        MetadataStore store = getMetadataStore(revision);
+        metadata = store == null ? null : store.getResource(getMetadataKey(repositorySource));
+        if (metadata == null || !metadata.exists() || metadata.getChecksum() == null) {
+          SVNProperties properties = execute(url, new RepositoryCall<SVNProperties>() {
+            public SVNProperties call(SVNRepository repository) throws SVNException, IOException {
+              return new SvnDao(repository).getFileProperties(url, revision);
+            }
+          });
+          metadata = createFileMetadata(repositorySource, properties, 0);
+          recordPublishedChecksums(repositorySource, properties);
+        }
+        if (contentStore.retrieve(metadata.getChecksum(), destination)) {
+          Message.debug("Copied " + repositorySource + " from content store");
+        } else {
+          metadata = null;
+        }
+      }
+      if (metadata == null) {
+        final long knownContentLength = getKnownContentLength(repositorySource, revision);
+        // only the thread which initiated the transfer can report its progress, background downloads just log it
+        final TransferMonitor.Listener listener = transferEvent.get() == null ? null : getListener;
+        final String path = repositorySource;
+        SVNProperties properties = execute(url, new RepositoryCall<SVNProperties>() {
+          public SVNProperties call(SVNRepository repository) throws SVNException, IOException {
+            TransferMonitor monitor = new TransferMonitor(path, knownContentLength, progressInterval, listener);
+            SVNProperties fileProperties = new SvnDao(repository).getFile(url, destination, revision,
+                knownContentLength, monitor);
+            verifyRepositoryUUID(repository);
+            return fileProperties;
+          }
+        });
+        metadata = createFileMetadata(repositorySource, properties, destination.length());
+        recordPublishedChecksums(repositorySource, properties);
+        if (contentStore != null) {
+          contentStore.insert(metadata.getChecksum(), destination);
+        }
+      }
+      recordDownload(repositorySource, destination, metadata, revision);
+    } catch (SVNException e) {
+      Message.error("Error retrieving " + repositorySource + " [revision=" + revision + "]");
+      throw (IOException) new IOException().initCause(e);
+    }
+  }
+
+  /**
+   * Downloads a file from the repository to the passed stream without firing any transfer events, using a single
+   * request. If the download fails (including being cancelled by the stream) the connection used is closed, as it may
+   * be part way through a response.
+   * 
+   * @param repositorySource Full path to the file in subversion.
+   * @param output The stream to write the file contents to, this is not closed.
+   * @param revision The revision to download, -1 for HEAD.
+   * @throws IOException If an error occurs downloading the file.
+   */
+  void download(String repositorySource, final OutputStream output, final long revision) throws IOException {
+    try {
+      final SVNURL url = SVNURL.parseURIEncoded(repositorySource);
+      // not retried as part of the file may already have been written to the stream
+      retryPolicy.execute(url, new RetryPolicy.RemoteCall<Object>() {
+        public Object call() throws SVNException, IOException {
+          SVNRepository repository = borrowRepository(url);
+          boolean downloaded = false;
+          try {
+            new SvnDao(repository).getFile(url, output, revision);
+            downloaded = true;
+          } finally {
+            if (!downloaded) {
+              repository.closeSession();
+            }
+            returnRepository(repository);
+          }
+          return null;
+        }
+      }, false);
+    } catch (SVNException e) {
+      throw (IOException) new IOException("Error streaming " + repositorySource).initCause(e);
+    }
+  }
+
+  /**
+   * Opens a stream over the contents of a file in the repository, which is read in the background as the stream is
+   * consumed.
+   * 
+   * @param source Path to the file, including the repository root.
+   * @return The stream.
+   */
+  InputStream openStream(String source) {
+    String repositorySource = source;
+    if (!source.startsWith(getRepositoryRoot())) {
+      repositorySource = getRepositoryRoot() + source;
+    }
+    long revision = getRetrieveRevision();
+    Message.debug("Streaming " + repositorySource + " [revision=" + revision + "]");
+    return new SvnInputStream(this, repositorySource, revision, getTransferExecutor());
+  }
+
+  /**
+   * Gets the executor for background transfers, creating it if necessary. Its threads are stopped once idle for a
+   * while, so it is never shut down.
+   * 
+   * @return The executor.
+   */
+  private synchronized Executor getTransferExecutor() {
+    if (transferExecutor == null) {
+      transferExecutor = new ThreadPoolExecutor(maxConnectionsPerHost, maxConnectionsPerHost,
+          TRANSFER_THREAD_KEEP_ALIVE, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), ParallelDownloader
+              .createThreadFactory(useVirtualThreads));
+      transferExecutor.allowCoreThreadTimeOut(true);
+    }
+    return transferExecutor;
+  }
+
+  /**
+   * Downloads several files in the same folder without firing any transfer events, using a single update report so
+   * that all files are sent in one response. The metadata of the cached resources for the files is updated from the
+   * response.
+   * 
+   * @param folderSource Full path to the folder in subversion.
+   * @param repositorySources Full paths to the files in subversion, all of which must be in the folder.
+   * @param revision The revision to download, -1 for HEAD.
+   * @return The downloaded files in temporary locations, where the key is the full path of the file in subversion.
+   *         Files which do not exist are missing from the result. The caller is responsible for deleting the files.
+   * @throws IOException If an error occurs downloading the files.
+   */
+  Map<String, File> downloadFolder(String folderSource, List<String> repositorySources, final long revision)
+    throws IOException {
+    Message.debug("Getting " + repositorySources.size() + " files in " + folderSource + " [revision="
+        + revision + "]");
+    final Map<String, File> destinations = new HashMap<String, File>();
+    try {
+      for (String repositorySource : repositorySources) {
+        destinations.put(repositorySource.substring(folderSource.length() + 1), File.createTempFile("ivysvn-",
+            ".download"));
+      }
+      BulkDownloadEditor editor = execute(SVNURL.parseURIEncoded(folderSource),
+          new RepositoryCall<BulkDownloadEditor>() {
+            public BulkDownloadEditor call(SVNRepository repository) throws SVNException {
+              final long updateRevision = revision < 0 ? repository.getLatestRevision() : revision;
+              BulkDownloadEditor bulkEditor = new BulkDownloadEditor(destinations); // overwrites any earlier attempt
+              repository.update(updateRevision, null, SVNDepth.FILES, false, new ISVNReporterBaton() {
+                public void report(ISVNReporter reporter) throws SVNException {
+                  // claim to have the whole folder apart from the wanted files, so that only they are sent
+                  reporter.setPath("", null, updateRevision, SVNDepth.FILES, false);
+                  for (String name : destinations.keySet()) {
+                    reporter.deletePath(name);
+                  }
+                  reporter.finishReport();
+                }
+              }, bulkEditor);
+              verifyRepositoryUUID(repository);
+              return bulkEditor;
+            }
+          });
+      Map<String, File> downloaded = new HashMap<String, File>();
+      for (ResourceMetadata metadata : editor.getReceived().values()) {
+        String repositorySource = folderSource + "/" + metadata.getName();
+        File file = destinations.remove(metadata.getName());
+        recordDownload(repositorySource, file, metadata, revision);
+        if (contentStore != null) {
+          contentStore.insert(metadata.getChecksum(), file);
+        }
+        downloaded.put(repositorySource, file);
+      }
+      return downloaded;
+    } catch (SVNException e) {
+      Message.error("Error retrieving files in " + folderSource + " [revision=" + revision + "]");
+      throw (IOException) new IOException().initCause(e);
+    } finally {
+      for (File file : destinations.values()) { // files which weren't received
+        file.delete();
+      }
+    }
+  }
+
+  /**
+   * Records the metadata of a file which has been downloaded in the resources cache and metadata cache.
+   * 
+   * @param repositorySource Full path to the file in subversion.
+   * @param file The downloaded file.
+   * @param metadata The metadata of the file, apart from its size which is taken from the downloaded file.
+   * @param revision The revision the file was downloaded from, -1 for HEAD.
+   */
+  private void recordDownload(String repositorySource, File file, ResourceMetadata metadata, long revision) {
+    ResourceMetadata downloaded = new ResourceMetadata(metadata.getName(), SVNNodeKind.FILE, file.length(), metadata
+        .getLastModified(), metadata.getChecksum());
+    cacheResolvedResource(repositorySource, downloaded, revision);
+    checksumCache.putDownloaded(repositorySource, metadata.getChecksum());
+    MetadataStore store = getMetadataStore(revision);
+    if (store != null) {
+      store.putResource(getMetadataKey(repositorySource), downloaded);
+    }
+  }
+
+  /**
+   * Records the checksums of a file when it was published, if they were recorded in its properties.
+   * 
+   * @param repositorySource Full path to the file in subversion.
+   * @param properties The file's properties.
+   */
+  private void recordPublishedChecksums(String repositorySource, SVNProperties properties) {
+    checksumCache.putPublished(repositorySource, properties.getStringValue(SvnDao.PROPERTY_SHA1), properties
+        .getStringValue(SvnDao.PROPERTY_MD5));
+  }
+
+  /**
+   * Adds the metadata of a resolved resource to the resolved metadata cache if enabled, otherwise adds a resolved
+   * resource to the resources cache.
+   * 
+   * @param repositorySource Full path to the resource in subversion.
+   * @param metadata The resource's metadata.
+   * @param revision The revision the resource was resolved at, -1 for HEAD.
+   */
+  private void cacheResolvedResource(String repositorySource, ResourceMetadata metadata, long revision) {
+    ExpiringCache<ResourceMetadata> resolvedCache = resolvedMetadata;
+    if (resolvedCache != null) {
+      resolvedCache.put(getCacheKey(repositorySource, revision), metadata);
+    } else if (metadata.exists()) {
+      resourcesCache.put(getCacheKey(repositorySource, revision), createResolvedResource(repositorySource, metadata));
+    }
+  }
+
+  /**
+   * Gets the key for a path in the in-memory caches, which includes the revision when retrieving from a fixed or pinned
+   * revision so that resolves pinned at different revisions never see each other's results.
+   * 
+   * @param repositorySource Full path to a resource or folder in subversion.
+   * @param revision The revision being retrieved from, -1 for HEAD.
+   * @return The key.
+   */
+  private String getCacheKey(String repositorySource, long revision) {
+    return revision < 0 ? repositorySource : repositorySource + "@" + revision;
+  }
+
+  /**
+   * Gets the content length of a file if it is already known from resolving it, without making any requests.
+   * 
+   * @param repositorySource Full path to the file in subversion.
+   * @param revision The revision being retrieved from, -1 for HEAD.
+   * @return The content length, or -1 if not known.
+   */
+  private long getKnownContentLength(String repositorySource, long revision) {
+    Resource resource = resourcesCache.get(getCacheKey(repositorySource, revision));
+    if (resource instanceof SvnResource && ((SvnResource) resource).isResolved() && resource.exists()) {
+      return resource.getContentLength();
+    }
+    ExpiringCache<ResourceMetadata> resolvedCache = resolvedMetadata;
+    ResourceMetadata resolved = resolvedCache == null ? null : resolvedCache.get(getCacheKey(repositorySource,
+        revision));
+    if (resolved != null && resolved.exists()) {
+      return resolved.getSize();
+    }
+    MetadataStore store = getMetadataStore(revision);
+    ResourceMetadata metadata = store == null ? null : store.getResource(getMetadataKey(repositorySource));
+    return metadata != null && metadata.exists() && metadata.getSize() > 0 ? metadata.getSize() : -1;
+  }
+
+  /**
+   * Creates the metadata for a file from the properties returned when getting it from subversion.
+   * 
+   * @param repositorySource Full path to the file in subversion.
+   * @param properties The file's properties.
+   * @param size The size of the file.
+   * @return The metadata.
+   */
+  private ResourceMetadata createFileMetadata(String repositorySource, SVNProperties properties, long size) {
+    String committedDate = properties.getStringValue(SVNProperty.COMMITTED_DATE);
+    long lastModified = committedDate == null ? 0 : SVNDate.parseDate(committedDate).getTime();
+    String name = repositorySource.substring(repositorySource.lastIndexOf('/') + 1);
+    return new ResourceMetadata(name, SVNNodeKind.FILE, size, lastModified, properties
+        .getStringValue(SVNProperty.CHECKSUM));
+  }
+
+  /**
+   * Schedules the passed resources to be downloaded in the background, so that later calls to
+   * {@link #get(String, File)} for them can be served without waiting for the network. With bulk retrieval enabled,
+   * resources in the same folder are downloaded together using a single request. Does nothing if neither parallel
+   * downloads nor bulk retrieval are enabled. {@link #discardScheduledDownloads()} must be called once the downloads
+   * are no longer needed.
+   * 
+   * @param repositorySources Full paths to the resources in subversion.
+   */
+  public void scheduleDownloads(List<String> repositorySources) {
+    if (!canScheduleDownloads() || repositorySources.size() <= 1) {
+      return; // nothing to gain from downloading in the background
+    }
+    discardScheduledDownloads();
+    Map<String, List<String>> folders = new LinkedHashMap<String, List<String>>();
+    for (String repositorySource : repositorySources) {
+      String folderSource = repositorySource.substring(0, repositorySource.lastIndexOf('/'));
+      List<String> folder = folders.get(folderSource);
+      if (folder == null) {
+        folder = new ArrayList<String>();
+        folders.put(folderSource, folder);
+      }
+      folder.add(repositorySource);
+    }
+    int tasks = bulkRetrieve ? folders.size() : repositorySources.size();
+    ParallelDownloader parallelDownloader = new ParallelDownloader(this, getRetrieveRevision(), Math.max(1, Math.min(
+        retrieveThreads, tasks)), getTransferExecutor());
+    for (Map.Entry<String, List<String>> folder : folders.entrySet()) {
+      if (bulkRetrieve) {
+        parallelDownloader.scheduleFolder(folder.getKey(), folder.getValue());
+      } else {
+        for (String repositorySource : folder.getValue()) {
+          parallelDownloader.schedule(repositorySource);
+        }
+      }
+    }
+    downloader.set(parallelDownloader);
+  }
+
+  /**
+   * @return Whether {@link #scheduleDownloads(List)} has any effect, i.e. whether parallel downloads or bulk retrieval
+   *         are enabled.
+   */
+  public boolean canScheduleDownloads() {
+    return retrieveThreads > 1 || bulkRetrieve;
+  }
+
+  /**
+   * Gets the statistics of the resources cache, the resolved metadata cache (if enabled) and the negative cache.
+   * 
+   * @return A description of the statistics.
+   */
+  public String getResourceCacheStatistics() {
+    ExpiringCache<ResourceMetadata> resolvedCache = resolvedMetadata;
+    return "resources [" + resourcesCache + "]"
+        + (resolvedCache == null ? "" : ", resolved metadata [" + resolvedCache + "]") + ", negative "
+        + negativeCache;
+  }
+
+  /**
+   * Discards any background downloads scheduled by the calling thread which have not been used by a call to
+   * {@link #get(String, File)}.
+   */
+  public void discardScheduledDownloads() {
+    ParallelDownloader parallelDownloader = downloader.get();
+    downloader.remove();
+    if (parallelDownloader != null) {
+      parallelDownloader.shutdown();
+    }
+  }
+
+  /**
+   * Takes the result of a background download.
+   * 
+   * @param repositorySource Full path to the resource in subversion.
+   * @return The downloaded file, or null if it wasn't scheduled or could not be downloaded.
+   */
+  private File takeScheduledDownload(String repositorySource) {
+    ParallelDownloader parallelDownloader = downloader.get();
+    if (parallelDownloader == null) {
+      return null;
+    }
+    Long deadline = operationDeadline.get();
+    if (deadline == null) {
+      return parallelDownloader.take(repositorySource, 0);
+    }
+    return parallelDownloader.take(repositorySource, Math.max(1, deadline - System.currentTimeMillis()));
+  }
+
+  /**
+   * Gets a SvnResource.
+   * 
+   * @param source Path to the resource in Subversion, relative to the repository root.
+   * @return The resource.
+   * @throws IOException Never thrown, just here to satisfy interface.
+   */
+  public Resource getResource(String source) throws IOException {
+    return getRepositoryResource(getRepositoryRoot() + source);
+  }
+
+  /**
+   * Gets the cached SvnResource for the passed full path, creating an unresolved one if necessary.
+   * 
+   * @param repositorySource Full path to the resource in subversion (including host, protocol etc.)
+   * @return The resource.
+   */
+  private Resource getRepositoryResource(String repositorySource) {
+    String key = getCacheKey(repositorySource, getRetrieveRevision());
+    Resource resource = resourcesCache.get(key);
+    if (resource == null) {
+      resource = resourcesCache.putIfAbsent(key, new SvnResource(this, repositorySource));
+    }
+    return resource;
+  }
+
+  /**
+   * Fetch the needed file information for a given file (size, last modification time) and report it back in a
+   * SvnResource. Once several resources in the same folder have been resolved, the folder's contents are fetched with a
+   * single request and used to resolve all further resources in that folder. When retrieving from a fixed revision the
+   * information is also looked up in and added to the metadata cache, if enabled. If the resolved metadata cache is
+   * enabled it is checked first, and the result is added to it. Checksum files for artifacts whose checksums were
+   * recorded when they were published are resolved without a request.
+   * 
+   * @param repositorySource Full path to resource in subversion (including host, protocol etc.)
+   * @return SvnResource filled with the needed informations, or null if an error occurred resolving the resource.
+   * @throws RuntimeException If subversion could not be reached, either after retrying or because the host's circuit
+   *           breaker is open. This can't be told apart from the resource not existing, so must fail the resolve.
+   */
+  protected SvnResource resolveResource(String repositorySource) {
+    long revision = getRetrieveRevision();
+    Message.debug("Resolving resource for " + repositorySource + " [revision=" + revision + "]");
+    int nameIndex = repositorySource.lastIndexOf('/');
+    String folderSource = repositorySource.substring(0, nameIndex);
+    String name = repositorySource.substring(nameIndex + 1);
+    String checksum = checksumCache.getChecksum(repositorySource);
+    if (checksum != null) {
+      Message.debug("Resource found at " + repositorySource + " from published checksum, returning resolved resource");
+      return new SvnResource(this, repositorySource, true, 0, checksum.length());
+    }
+    SvnResource result = null;
+    try {
+      ExpiringCache<ResourceMetadata> resolvedCache = resolvedMetadata;
+      ResourceMetadata metadata = resolvedCache == null ? null : resolvedCache.get(getCacheKey(repositorySource,
+          revision));
+      if (metadata == null && negativeCache.isMissing(folderSource, name, revision)) {
+        metadata = ResourceMetadata.missing(name);
+      }
+      if (metadata == null) {
+        String path = repositorySource.substring(getRepositoryRoot().length());
+        ArtifactIndex index = getArtifactIndex(path.substring(0, Math.max(path.lastIndexOf('/'), 0)), revision);
+        metadata = index == null ? null : index.lookup(path);
+      }
+      MetadataStore store = metadata == null ? getMetadataStore(revision) : null;
+      if (store != null) {
+        metadata = store.getResource(getMetadataKey(repositorySource));
+        FolderListing storedListing = metadata == null ? store.getListing(getMetadataKey(folderSource)) : null;
+        if (storedListing != null) {
+          metadata = getEntry(storedListing, name);
+        }
+      }
+      if (metadata == null) {
+        FolderListing listing = getFolderListing(folderSource, revision);
+        if (listing != null) {
+          metadata = getEntry(listing, name);
+        } else {
+          final long infoRevision = revision;
+          SVNDirEntry entry = execute(SVNURL.parseURIEncoded(repositorySource), new RepositoryCall<SVNDirEntry>() {
+            public SVNDirEntry call(SVNRepository repository) throws SVNException {
+              return repository.info("", infoRevision); // null if there is nothing at this path
+            }
+          });
+          if (entry == null) {
+            metadata = ResourceMetadata.missing(name);
+            negativeCache.putMissing(repositorySource, revision);
+          } else {
+            metadata = ResourceMetadata.fromEntry(entry);
+          }
+        }
+        if (store != null) {
+          store.putResource(getMetadataKey(repositorySource), metadata);
+        }
+      }
+      if (resolvedCache != null) {
+        resolvedCache.put(getCacheKey(repositorySource, revision), metadata);
+      }
+      if (!metadata.exists()) {
+        // log this on debug, NOT error, see http://code.google.com/p/ivysvn/issues/detail?id=21
+        Message.debug("No resource found at " + repositorySource + ", returning default resource");
+        result = new SvnResource();
+      } else {
+        Message.debug("Resource found at " + repositorySource + ", returning resolved resource");
+        result = createResolvedResource(repositorySource, metadata);
+      }
+    } catch (SVNException e) {
+      if (RetryPolicy.isUnreachable(e)) {
+        throw new RuntimeException("Error resolving resource " + repositorySource + ": " + e.getMessage(), e);
+      }
+      Message.error("Error resolving resource " + repositorySource + ", " + e.getMessage());
+      Message.debug("Exception is: " + getStackTrace(e)); // useful for debugging network issues
+      result = null;
+    } catch (IOException e) {
+      Message.error("Error resolving resource " + repositorySource + ", " + e.getMessage());
+      result = null;
+    }
+    return result;
+  }
+
+  /**
+   * Gets the metadata for an entry in a folder listing.
+   * 
+   * @param listing The listing.
+   * @param name The name of the entry.
+   * @return The entry's metadata, marked as missing if the folder has no such entry.
+   */
+  private ResourceMetadata getEntry(FolderListing listing, String name) {
+    ResourceMetadata entry = listing.getEntry(name);
+    return entry == null ? ResourceMetadata.missing(name) : entry;
+  }
+
+  /**
+   * Gets the listing for the passed folder, if enough resources have been requested from it to make fetching the
+   * listing worthwhile. All files in a newly fetched listing are added to the resources cache.
+   * 
+   * @param folderSource Full path to the folder in subversion.
+   * @param revision The revision to list the folder at, -1 for HEAD.
+   * @return The listing, or null if the folder has not been listed.
+   * @throws SVNException If an error occurs listing the folder.
+   * @throws IOException If an error occurs reading the listing.
+   */
+  private FolderListing getFolderListing(String folderSource, long revision) throws SVNException, IOException {
+    ExpiringCache<FolderListing> listings = revision < 0 ? headFolderListings : folderListings;
+    String key = getCacheKey(folderSource, revision);
+    FolderListing listing = listings == null ? null : listings.get(key);
+    if (listing != null) {
+      return listing;
+    }
+    synchronized (folderProbes) {
+      Integer previousProbes = folderProbes.get(key);
+      int probes = previousProbes == null ? 1 : previousProbes + 1;
+      if (probes < FOLDER_LISTING_THRESHOLD) {
+        folderProbes.put(key, probes);
+        return null;
+      }
+      folderProbes.remove(key);
+    }
+    listing = fetchFolderListing(folderSource, revision);
+    if (listings != null) {
+      listings.put(key, listing);
+    }
+    for (ResourceMetadata entry : listing.getEntries()) {
+      if (entry.getKind() == SVNNodeKind.FILE) {
+        cacheResolvedResource(folderSource + "/" + entry.getName(), entry, revision);
+      }
+    }
+    return listing;
+  }
+
+  /**
+   * Fetches the listing for the passed folder from subversion using a single request, adding it to the metadata cache
+   * if enabled. The checksums of artifacts published to the folder are read using the same request.
+   * 
+   * @param folderSource Full path to the folder in subversion.
+   * @param revision The revision to list the folder at, -1 for HEAD.
+   * @return The listing.
+   * @throws SVNException If an error occurs listing the folder.
+   * @throws IOException If an error occurs reading the listing.
+   */
+  private FolderListing fetchFolderListing(String folderSource, final long revision) throws SVNException,
+    IOException {
+    Message.debug("Fetching listing for " + folderSource + " [revision=" + revision + "]");
+    List<ResourceMetadata> entries = null;
+    final SVNProperties folderProperties = new SVNProperties();
+    List<SVNDirEntry> dirEntries = execute(SVNURL.parseURIEncoded(folderSource),
+        new RepositoryCall<List<SVNDirEntry>>() {
+          public List<SVNDirEntry> call(SVNRepository repository) throws SVNException {
+            folderProperties.clear();
+            return new SvnDao(repository).getEntries("", revision, folderProperties);
+          }
+        });
+    if (dirEntries != null) {
+      checksumCache.putPublishedFolder(folderSource, folderProperties.getStringValue(SvnDao.PROPERTY_CHECKSUMS));
+      entries = new ArrayList<ResourceMetadata>(dirEntries.size());
+      for (SVNDirEntry entry : dirEntries) {
+        entries.add(ResourceMetadata.fromEntry(entry));
+      }
+    }
+    FolderListing listing = new FolderListing(entries);
+    negativeCache.putFolder(folderSource, listing.getNames(), revision);
+    MetadataStore store = getMetadataStore(revision);
+    if (store != null) {
+      store.putListing(getMetadataKey(folderSource), listing);
+    }
+    return listing;
+  }
+
+  /**
+   * Creates a resolved resource from the passed metadata.
+   * 
+   * @param repositorySource Full path to resource in subversion.
+   * @param metadata The resource's metadata.
+   * @return A resolved resource.
+   */
+  private SvnResource createResolvedResource(String repositorySource, ResourceMetadata metadata) {
+    return new SvnResource(this, repositorySource, true, metadata.getLastModified(), metadata.getSize());
   }
 
   /**
-   * Commits the previously started publish transaction.
+   * Gets the revision to use for retrieve operations. If HEAD pinning is enabled and no retrieve revision is set, HEAD
+   * is resolved once at the start of each resolve and that revision is used for the rest of the resolve, concurrent
+   * resolves each keep their own revision. If HEAD can't be pinned HEAD is used for the rest of the resolve. Calls made
+   * outside of a resolve use the last pinned revision.
    * 
-   * @throws IOException If an error occurs committing the transaction.
+   * @return The revision, -1 for HEAD.
    */
-  public void commitPublishTransaction() throws IOException {
-    ensurePublishTransaction();
-    Message.debug("Committing transaction...");
+  private long getRetrieveRevision() {
+    if (svnRetrieveRevision >= 0 || !pinHeadRevision) {
+      return svnRetrieveRevision;
+    }
+    ResolveData resolveData = IvyContext.getContext().getResolveData();
+    if (resolveData == null) {
+      return pinnedRevision;
+    }
+    FutureTask<Long> pin;
+    boolean pinning = false;
+    synchronized (pinnedRevisions) {
+      pin = pinnedRevisions.get(resolveData);
+      if (pin == null) {
+        pin = new FutureTask<Long>(new Callable<Long>() {
+          public Long call() {
+            return pinHeadRevision();
+          }
+        });
+        pinnedRevisions.put(resolveData, pin);
+        pinning = true;
+      }
+    }
+    if (pinning) {
+      pin.run();
+    }
     try {
-      publishTransaction.commit();
-      publishTransaction = null;
-    } catch (SVNException e) {
-      throw (IOException) new IOException().initCause(e);
+      return pin.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return -1;
+    } catch (ExecutionException e) {
+      return -1; // never thrown, pinHeadRevision handles all errors
     }
   }
 
   /**
-   * Aborts a previously started publish transaction.
+   * Resolves HEAD to a concrete revision.
    * 
-   * @throws IOException If an error occurs aborting the publish transaction.
+   * @return The revision, or -1 if HEAD could not be resolved.
    */
-  public void abortPublishTransaction() throws IOException {
-    if (publishTransaction == null) {
-      Message.info("Transaction not created, nothing to abort");
-      return;
-    }
-    if (!publishTransaction.commitStarted()) {
-      Message.info("Commit transaction not started, nothing to abort");
-      return;
-    }
-    Message.info("Aborting transaction");
+  private long pinHeadRevision() {
     try {
-      publishTransaction.abort();
-      publishTransaction = null;
+      long latestRevision = execute(SVNURL.parseURIEncoded(getRepositoryRoot()), new RepositoryCall<Long>() {
+        public Long call(SVNRepository repository) throws SVNException {
+          return repository.getLatestRevision();
+        }
+      });
+      Message.debug("Pinned HEAD of " + getRepositoryRoot() + " to revision " + latestRevision);
+      pinnedRevision = latestRevision;
+      return latestRevision;
     } catch (SVNException e) {
-      throw (IOException) new IOException().initCause(e);
+      Message.warn("Error pinning HEAD of " + getRepositoryRoot() + ", using HEAD for this resolve: " + e.getMessage());
+    } catch (IOException e) {
+      Message.warn("Error pinning HEAD of " + getRepositoryRoot() + ", using HEAD for this resolve: " + e.getMessage());
     }
+    return -1;
   }
 
   /**
-   * Ensures that a transaction has been created.
-   * 
-   * @throws IllegalStateException If a transaction has not been created.
+   * Clears all folder listings fetched so far.
    */
-  private void ensurePublishTransaction() {
-    if (publishTransaction == null) {
-      throw new IllegalStateException("Transaction not initialised");
+  private void clearFolderListings() {
+    folderListings.clear();
+    ExpiringCache<FolderListing> headListings = headFolderListings;
+    if (headListings != null) {
+      headListings.clear();
     }
+    folderProbes.clear();
   }
 
   /**
-   * Ensures that no transaction is lingering around.
-   * 
-   * @throws IllegalStateException If a transaction is still active.
+   * Creates the folder listing caches for the current cache settings, discarding any listings already cached. Listings
+   * at HEAD expire with whichever of the resources cache and the negative cache expires first.
    */
-  private void ensureNoPublishTransaction() {
-    if (publishTransaction != null) {
-      throw new IllegalStateException("Previous transaction is still active");
-    }
+  private void createFolderListingCaches() {
+    this.folderListings = new ExpiringCache<FolderListing>(resourceCacheSize, resourceCacheTimeToLive);
+    this.folderProbes = new ExpiringCache<Integer>(resourceCacheSize, resourceCacheTimeToLive);
+    long headTimeToLive = resourceCacheTimeToLive > 0 ? Math.min(resourceCacheTimeToLive, negativeCacheTimeToLive)
+        : negativeCacheTimeToLive;
+    this.headFolderListings = headTimeToLive > 0 ? new ExpiringCache<FolderListing>(resourceCacheSize, headTimeToLive)
+        : null;
   }
 
   /**
-   * Handles a request to add/update a file to/in the repository.
+   * Gets the metadata store for the revision being retrieved from.
    * 
-   * @param source The source file.
-   * @param destination The location of the file in the repository.
-   * @param overwrite Whether to overwite the file if it already exists.
-   * @throws IOException If an error occurs putting a file (invalid path, invalid login credentials etc.)
+   * @param revision The revision being retrieved from, -1 for HEAD.
+   * @return The store, or null if the metadata cache is disabled or retrieval is not from a fixed revision (in which
+   *         case paths can change at any time).
    */
-  public void put(File source, String destination, boolean overwrite) throws IOException {
-    fireTransferInitiated(getResource(destination), TransferEvent.REQUEST_PUT);
-    Message.debug("Scheduling publish from " + source.getAbsolutePath() + " to " + getRepositoryRoot() + destination);
-    Message.info("Scheduling publish to " + getRepositoryRoot() + destination);
+  private MetadataStore getMetadataStore(long revision) {
+    MetadataCache cache = metadataCache;
+    if (cache == null || revision < 0) {
+      return null;
+    }
     try {
-      SVNURL destinationURL = SVNURL.parseURIEncoded(getRepositoryRoot() + destination);
-      if (publishTransaction == null) { // haven't initialised transaction on a previous put
-
-        // first create a repository which transaction can use for various file checks
-        SVNURL repositoryRootURL = SVNURL.parseURIEncoded(getRepositoryRoot());
-        SVNRepository ancillaryRepository = getRepository(repositoryRootURL, false);
-        SvnDao svnDAO = new SvnDao(ancillaryRepository);
-
-        // now create another repository which transaction will use to do actual commits
-        SVNRepository commitRepository = getRepository(destinationURL, false);
-
-        publishTransaction = new SvnPublishTransaction(svnDAO, moduleRevisionId, commitRepository, repositoryRootURL);
-        publishTransaction.setBinaryDiff(binaryDiff);
-        publishTransaction.setBinaryDiffFolderName(binaryDiffFolderName);
-        publishTransaction.setCleanupPublishFolder(cleanupPublishFolder);
+      String uuid = repositoryUUID;
+      if (uuid == null) {
+        uuid = identifyRepository(cache);
       }
-      // add all info needed to put the file to the transaction
-      publishTransaction.addPutOperation(source, destination, overwrite);
+      return cache.getStore(uuid, revision);
+    } catch (IOException e) {
+      Message.warn("Disabling metadata cache, error opening it: " + e.getMessage());
     } catch (SVNException e) {
-      throw (IOException) new IOException().initCause(e);
+      Message.warn("Disabling metadata cache, error identifying repository: " + e.getMessage());
+    }
+    synchronized (this) {
+      if (metadataCache == cache) { // unless it has been replaced in the meantime
+        metadataCache = null;
+      }
     }
+    return null;
   }
 
   /**
-   * Handles a request to retrieve a file from the repository.
+   * Identifies the subversion repository containing the repository root, connecting to subversion only if the metadata
+   * cache has not seen the repository root before. Not synchronized so that other threads aren't held up while
+   * connecting, threads which get here at the same time will all identify the repository in the same way.
    * 
-   * @param source Path to the resource to retrieve, including the repository root.
-   * @param destination The location where the file should be retrieved to.
-   * @throws IOException If an error occurs retrieving the file.
+   * @param cache The metadata cache.
+   * @return The UUID of the repository.
+   * @throws IOException If an error occurs accessing the metadata cache.
+   * @throws SVNException If an error occurs identifying the repository.
    */
-  public void get(String source, File destination) throws IOException {
-    fireTransferInitiated(getResource(source), TransferEvent.REQUEST_GET);
-    String repositorySource = source;
-    if (!source.startsWith(repositoryRoot)) {
-      repositorySource = getRepositoryRoot() + source;
+  private String identifyRepository(MetadataCache cache) throws IOException, SVNException {
+    String root = getRepositoryRoot();
+    String uuid = cache.getRepositoryUUID(root);
+    String path = cache.getRepositoryPath(root);
+    if (uuid == null || path == null) {
+      final SVNURL url = SVNURL.parseURIEncoded(root);
+      String[] identity = execute(url, new RepositoryCall<String[]>() {
+        public String[] call(SVNRepository repository) throws SVNException {
+          String rootPath = repository.getRepositoryRoot(true).getURIEncodedPath();
+          String repositoryPath = url.getURIEncodedPath().substring(rootPath.length());
+          return new String[] {repository.getRepositoryUUID(true), repositoryPath};
+        }
+      });
+      uuid = identity[0];
+      path = identity[1];
+      cache.putRepository(root, uuid, path);
     }
-    Message.debug("Getting file for user " + userName + " from " + repositorySource + " [revision="
-        + svnRetrieveRevision + "] to " + destination.getAbsolutePath());
-    try {
-      SVNURL url = SVNURL.parseURIEncoded(repositorySource);
-      SVNRepository repository = getRepository(url, true);
-      repository.setLocation(url, false);
-
-      Resource resource = getResource(source);
-      fireTransferInitiated(resource, TransferEvent.REQUEST_GET);
-
-      SvnDao svnDAO = new SvnDao(repository);
-      svnDAO.getFile(url, destination, svnRetrieveRevision);
+    repositoryPath = path; // before the UUID, which is what other threads check
+    repositoryUUID = uuid;
+    return uuid;
+  }
 
-      fireTransferCompleted(destination.length());
+  /**
+   * Checks that the subversion repository which the passed session is connected to is still the one identified by the
+   * metadata cache, forgetting the identity if not (e.g. the repository was re-created from a dump).
+   * 
+   * @param repository A session which has been used to access the repository.
+   */
+  private void verifyRepositoryUUID(SVNRepository repository) {
+    String knownUUID = repositoryUUID;
+    MetadataCache cache = metadataCache;
+    if (knownUUID == null || cache == null) {
+      return;
+    }
+    try {
+      String uuid = repository.getRepositoryUUID(false);
+      if (uuid != null && !uuid.equals(knownUUID)) {
+        Message.warn("Repository UUID for " + getRepositoryRoot() + " changed from " + knownUUID + " to " + uuid
+            + ", discarding cached metadata");
+        cache.putRepository(getRepositoryRoot(), null, null);
+        repositoryUUID = null;
+      }
     } catch (SVNException e) {
-      Message.error("Error retrieving" + repositorySource + " [revision=" + svnRetrieveRevision + "]");
-      throw (IOException) new IOException().initCause(e);
+      Message.debug("Could not verify repository UUID: " + e.getMessage());
+    } catch (IOException e) {
+      Message.warn("Error updating metadata cache: " + e.getMessage());
     }
   }
 
   /**
-   * Gets a SvnResource.
+   * Gets the key for the passed path in the metadata store, which is the path relative to the root of the subversion
+   * repository so that it is the same for every repository root within it.
    * 
-   * @param source Path to the resource in Subversion, relative to the repository root.
-   * @return The resource.
-   * @throws IOException Never thrown, just here to satisfy interface.
+   * @param repositorySource Full path to a resource or folder in subversion.
+   * @return The key.
    */
-  public Resource getResource(String source) throws IOException {
-    String repositorySource = getRepositoryRoot() + source;
-    Resource resource = (Resource) resourcesCache.get(repositorySource);
-    if (resource == null) {
-      resource = new SvnResource(this, repositorySource);
-      resourcesCache.put(repositorySource, resource);
+  private String getMetadataKey(String repositorySource) {
+    String root = getRepositoryRoot();
+    String key = repositoryPath + "/";
+    if (repositorySource.length() > root.length()) {
+      key += repositorySource.substring(root.length());
     }
-    return resource;
+    return key.endsWith("/") ? key.substring(0, key.length() - 1) : key;
   }
 
   /**
-   * Fetch the needed file information for a given file (size, last modification time) and report it back in a
-   * SvnResource.
+   * Gets the artifact index recording the passed folder, for the revision being retrieved from. At a fixed revision
+   * each index is checked at most once, at HEAD it is checked once per resolve and only read again if it has been
+   * changed. The index is read without holding the lock, so threads checking the same index at the same time will each
+   * read it.
    * 
-   * @param repositorySource Full path to resource in subversion (including host, protocol etc.)
-   * @return SvnResource filled with the needed informations
+   * @param folderPath The folder path relative to the repository root.
+   * @param revision The revision being retrieved from, -1 for HEAD.
+   * @return The index, or null if the index is disabled, doesn't exist or couldn't be read.
    */
-  protected SvnResource resolveResource(String repositorySource) {
-    Message.debug("Resolving resource for " + repositorySource + " [revision=" + svnRetrieveRevision + "]");
-    SvnResource result = null;
-    try {
-      SVNURL url = SVNURL.parseURIEncoded(repositorySource);
-      SVNRepository repository = getRepository(url, true);
-      SVNNodeKind nodeKind = repository.checkPath("", svnRetrieveRevision);
-      if (nodeKind == SVNNodeKind.NONE) {
-        // log this on debug, NOT error, see http://code.google.com/p/ivysvn/issues/detail?id=21
-        Message.debug("No resource found at " + repositorySource + ", returning default resource");
-        result = new SvnResource();
-      } else {
-        Message.debug("Resource found at " + repositorySource + ", returning resolved resource");
-        SVNDirEntry entry = repository.info("", svnRetrieveRevision);
-        result = new SvnResource(this, repositorySource, true, entry.getDate().getTime(), entry.getSize());
+  private ArtifactIndex getArtifactIndex(String folderPath, long revision) {
+    if (!useArtifactIndex) {
+      return null;
+    }
+    String indexFolderPath = ArtifactIndex.getIndexFolderPath(folderPath);
+    ResolveData resolveData = IvyContext.getContext().getResolveData();
+    Map<String, ArtifactIndex> indexes = null;
+    synchronized (this) {
+      boolean checked = revision == artifactIndexesRevision
+          && (revision >= 0 || resolveData == null || (artifactIndexesResolve != null && artifactIndexesResolve
+              .get() == resolveData));
+      if (!checked) {
+        artifactIndexes = new HashMap<String, ArtifactIndex>();
+        artifactIndexesRevision = revision;
+        artifactIndexesResolve = new WeakReference<ResolveData>(resolveData);
+      }
+      indexes = artifactIndexes;
+      if (indexes.containsKey(indexFolderPath)) {
+        return indexes.get(indexFolderPath);
       }
+    }
+    ArtifactIndex index = readArtifactIndex(indexFolderPath, revision);
+    synchronized (this) {
+      indexes.put(indexFolderPath, index); // discarded if the indexes have been checked again in the meantime
+    }
+    return index;
+  }
+
+  /**
+   * Reads the artifact index in the passed folder, dropping any folders which have been changed since they were
+   * recorded in it. The folder is listed to find the revisions its sub folders and the index were last changed in, and
+   * the index file is only fetched if it hasn't been read at that revision before.
+   * 
+   * @param folderPath The path of the folder the index is in, relative to the repository root.
+   * @param revision The revision being retrieved from, -1 for HEAD.
+   * @return The index, or null if it doesn't exist or couldn't be read.
+   */
+  private ArtifactIndex readArtifactIndex(final String folderPath, final long revision) {
+    try {
+      return execute(SVNURL.parseURIEncoded(getRepositoryRoot()), new RepositoryCall<ArtifactIndex>() {
+        public ArtifactIndex call(SVNRepository repository) throws SVNException, IOException {
+          SvnDao dao = new SvnDao(repository);
+          List<SVNDirEntry> entries = dao.getEntries(folderPath, revision);
+          Map<String, Long> folderRevisions = new HashMap<String, Long>();
+          long indexRevision = -1;
+          for (SVNDirEntry entry : entries == null ? new ArrayList<SVNDirEntry>() : entries) {
+            if (entry.getKind() == SVNNodeKind.DIR) {
+              folderRevisions.put(entry.getName(), entry.getRevision());
+            } else if (ArtifactIndex.FILE_NAME.equals(entry.getName())) {
+              indexRevision = entry.getRevision();
+            }
+          }
+          if (indexRevision < 0) {
+            return null;
+          }
+          String key = folderPath + "@" + indexRevision;
+          byte[] data = artifactIndexFiles.get(key);
+          if (data == null) {
+            Message.debug("Reading artifact index in " + getRepositoryRoot() + folderPath + " [revision=" + revision
+                + "]");
+            data = dao.getFileContents(ArtifactIndex.getFilePath(folderPath), revision);
+            if (data == null) {
+              return null;
+            }
+            artifactIndexFiles.put(key, data);
+          }
+          ArtifactIndex index = new ArtifactIndex(folderPath, data);
+          index.retainUnchanged(folderRevisions, indexRevision);
+          return index;
+        }
+      });
     } catch (SVNException e) {
-      Message.error("Error resolving resource " + repositorySource + ", " + e.getMessage());
-      Message.debug("Exception is: " + getStackTrace(e)); // useful for debugging network issues
-      result = new SvnResource();
+      Message.warn("Error reading artifact index in " + folderPath + ", resolving without it: " + e.getMessage());
+    } catch (IOException e) {
+      Message.warn("Invalid artifact index in " + folderPath + ", resolving without it: " + e.getMessage());
     }
-    return result;
+    return null;
   }
 
   private String getStackTrace(Throwable t) {
@@ -395,20 +1779,107 @@ public class SvnRepository extends AbstractRepository {
    * @throws IOException On listing failure.
    */
   public List<String> list(String source) throws IOException {
+    long revision = getRetrieveRevision();
     String repositorySource = getRepositoryRoot();
-    Message.debug("Getting list for " + repositorySource + source + " [revision=" + svnRetrieveRevision + "]");
+    Message.debug("Getting list for " + repositorySource + source + " [revision=" + revision + "]");
     try {
-      SVNURL url = SVNURL.parseURIEncoded(repositorySource);
-      SVNRepository repository = getRepository(url, true);
-      SvnDao svnDAO = new SvnDao(repository);
-      List<String> list = svnDAO.list(source, svnRetrieveRevision);
+      ArtifactIndex index = getArtifactIndex(source, revision);
+      FolderListing indexListing = index == null ? null : index.getListing(source);
+      if (indexListing != null) {
+        return new ArrayList<String>(indexListing.getNames());
+      }
+      MetadataStore store = getMetadataStore(revision);
+      if (store != null) {
+        String folderSource = repositorySource + source;
+        FolderListing listing = store.getListing(getMetadataKey(folderSource));
+        if (listing == null) {
+          listing = fetchFolderListing(folderSource.endsWith("/") ? folderSource.substring(0, folderSource
+              .length() - 1) : folderSource, revision);
+        }
+        List<String> list = new ArrayList<String>();
+        for (ResourceMetadata entry : listing.getEntries()) {
+          list.add(entry.getName());
+        }
+        list.remove(ArtifactIndex.FILE_NAME);
+        return list;
+      }
+      final long retrieveRevision = revision;
+      final String folder = source;
+      List<String> list = execute(SVNURL.parseURIEncoded(repositorySource), new RepositoryCall<List<String>>() {
+        public List<String> call(SVNRepository repository) throws SVNException {
+          long listRevision = validateListingCache(repository, retrieveRevision);
+          String folderPath = repository.getRepositoryPath(folder);
+          if (folderPath.length() > 1 && folderPath.endsWith("/")) {
+            folderPath = folderPath.substring(0, folderPath.length() - 1);
+          }
+          List<String> cached = listingCache.get(folderPath, listRevision);
+          if (cached == null) {
+            cached = new ArrayList<String>();
+            List<SVNDirEntry> entries = new SvnDao(repository).getEntries(folder, listRevision);
+            if (entries != null) {
+              for (SVNDirEntry entry : entries) {
+                cached.add(entry.getRelativePath());
+              }
+            }
+            listingCache.put(folderPath, cached, listRevision);
+          }
+          return cached;
+        }
+      });
+      list = new ArrayList<String>(list);
+      list.remove(ArtifactIndex.FILE_NAME); // not an Ivy resource
       return list;
     } catch (SVNException e) {
-      Message.error("Error getting list for " + repositorySource + source + " [revision=" + svnRetrieveRevision + "]");
+      Message.error("Error getting list for " + repositorySource + source + " [revision=" + revision + "]");
       throw (IOException) new IOException().initCause(e);
     }
   }
 
+  /**
+   * Brings the listing cache up to date with the revision being listed. If the cache was filled at an earlier revision
+   * only the paths changed since are requested from subversion and the listings of the folders they affect discarded,
+   * otherwise the cache is emptied.
+   * 
+   * @param repository A session at the repository root.
+   * @param revision The retrieve revision, -1 for HEAD.
+   * @return The revision that listings should be read at.
+   * @throws SVNException If an error occurs determining the latest revision.
+   */
+  private long validateListingCache(SVNRepository repository, long revision) throws SVNException {
+    long listRevision = revision < 0 ? repository.getLatestRevision() : revision;
+    synchronized (listingCache) {
+      long cachedRevision = listingCache.getRevision();
+      if (cachedRevision == listRevision) {
+        return listRevision;
+      }
+      if (cachedRevision < 0 || listRevision < cachedRevision || listRevision - cachedRevision > MAX_LOG_REVISIONS) {
+        listingCache.reset(listRevision);
+        return listRevision;
+      }
+      final List<String> changedPaths = new ArrayList<String>();
+      try {
+        repository.log(new String[] {""}, cachedRevision + 1, listRevision, true, false, new ISVNLogEntryHandler() {
+          public void handleLogEntry(SVNLogEntry logEntry) {
+            for (Object value : logEntry.getChangedPaths().values()) {
+              SVNLogEntryPath entryPath = (SVNLogEntryPath) value;
+              if (entryPath.getType() != SVNLogEntryPath.TYPE_MODIFIED) {
+                changedPaths.add(entryPath.getPath());
+              }
+            }
+          }
+        });
+      } catch (SVNException e) {
+        Message.debug("Discarding listing cache, error reading log: " + e.getMessage());
+        listingCache.reset(listRevision);
+        return listRevision;
+      }
+      Message.debug("Updating listing cache from revision " + cachedRevision + " to " + listRevision + " ["
+          + changedPaths.size() + " changed paths]");
+      listingCache.update(listRevision, changedPaths);
+    }
+    return listRevision;
+  }
+
   /**
    * Set the user name to use to connect to the svn repository.
    * 
@@ -507,6 +1978,17 @@ public class SvnRepository extends AbstractRepository {
     return repositoryRoot;
   }
 
+  /**
+   * Sets whether to maintain an index of the artifacts published to each folder in the folder containing it (with the
+   * usual layout, an index per module), updated in the same commit as the artifacts, and to resolve resources and list
+   * folders from the indexes when retrieving.
+   * 
+   * @param useArtifactIndex Whether to use the artifact indexes.
+   */
+  public synchronized void setUseArtifactIndex(boolean useArtifactIndex) {
+    this.useArtifactIndex = useArtifactIndex;
+  }
+
   /**
    * Set whether to perform a binary diff or not.
    * 
@@ -528,6 +2010,43 @@ public class SvnRepository extends AbstractRepository {
     this.binaryDiffFolderName = binaryDiffFolderName;
   }
 
+  /**
+   * Sets the folder in which to cache metadata for resources retrieved from fixed revisions, so that it can be reused
+   * by later builds without connecting to subversion.
+   * 
+   * @param metadataCacheDir The cache folder, null to disable the cache.
+   */
+  public synchronized void setMetadataCacheDir(File metadataCacheDir) {
+    this.metadataCacheDir = metadataCacheDir;
+    this.metadataCache = metadataCacheDir == null ? null : new MetadataCache(metadataCacheDir,
+        metadataCacheRevisions);
+    this.repositoryUUID = null;
+  }
+
+  /**
+   * Sets the number of revisions whose metadata is kept in the metadata cache, the metadata of the oldest revisions is
+   * deleted beyond this. Defaults to {@link MetadataCache#DEFAULT_MAX_REVISIONS}.
+   * 
+   * @param metadataCacheRevisions The number of revisions.
+   */
+  public synchronized void setMetadataCacheRevisions(int metadataCacheRevisions) {
+    if (metadataCacheRevisions < 1) {
+      throw new IllegalArgumentException("metadataCacheRevisions must be at least 1");
+    }
+    this.metadataCacheRevisions = metadataCacheRevisions;
+    setMetadataCacheDir(metadataCacheDir);
+  }
+
+  /**
+   * Sets the folder in which to keep the contents of downloaded files, so that files with the same contents are never
+   * downloaded more than once.
+   * 
+   * @param contentStoreDir The store folder, null to disable the store.
+   */
+  public void setContentStoreDir(File contentStoreDir) {
+    this.contentStore = contentStoreDir == null ? null : new ContentStore(contentStoreDir);
+  }
+
   /**
    * Sets the SVN revision number to use for retrieve operations, if not set will default to -1 (i.e. HEAD).
    * 
@@ -537,6 +2056,248 @@ public class SvnRepository extends AbstractRepository {
     this.svnRetrieveRevision = svnRetrieveRevision;
   }
 
+  /**
+   * Sets whether to resolve HEAD to a concrete revision once per resolve, so that all retrieve operations during a
+   * resolve see the same revision. Only used if no retrieve revision is set.
+   * 
+   * @param pinHeadRevision Whether to pin HEAD.
+   */
+  public synchronized void setPinHeadRevision(boolean pinHeadRevision) {
+    this.pinHeadRevision = pinHeadRevision;
+  }
+
+  /**
+   * Sets the maximum number of connections that may be open to a single Subversion host at any one time. Connections
+   * are pooled across all repositories in the JVM, so this repository waits while the host has this many connections
+   * open, whichever repositories opened them. This also limits the threads used for background transfers.
+   * 
+   * @param maxConnectionsPerHost The maximum number of connections per host.
+   */
+  public synchronized void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+    if (maxConnectionsPerHost < 1) {
+      throw new IllegalArgumentException("maxConnectionsPerHost must be at least 1");
+    }
+    if (transferExecutor != null) { // grow or shrink in an order the executor accepts
+      if (maxConnectionsPerHost > this.maxConnectionsPerHost) {
+        transferExecutor.setMaximumPoolSize(maxConnectionsPerHost);
+        transferExecutor.setCorePoolSize(maxConnectionsPerHost);
+      } else {
+        transferExecutor.setCorePoolSize(maxConnectionsPerHost);
+        transferExecutor.setMaximumPoolSize(maxConnectionsPerHost);
+      }
+    }
+    this.maxConnectionsPerHost = maxConnectionsPerHost;
+  }
+
+  /**
+   * Sets the time after which idle pooled connections opened by this repository are closed.
+   * 
+   * @param connectionIdleTimeout The idle timeout in milliseconds.
+   */
+  public void setConnectionIdleTimeout(long connectionIdleTimeout) {
+    this.connectionIdleTimeout = connectionIdleTimeout;
+  }
+
+  /**
+   * Set the number of attempts made for each call to subversion which fails with a transient error.
+   * 
+   * @param retryAttempts The number of attempts, 1 disables retries.
+   */
+  public void setRetryAttempts(int retryAttempts) {
+    retryPolicy.setAttempts(retryAttempts);
+  }
+
+  /**
+   * Set the time to wait before retrying a failed call to subversion, doubled (with jitter) for each further retry.
+   * 
+   * @param retryBackoff The time in milliseconds.
+   */
+  public void setRetryBackoff(long retryBackoff) {
+    retryPolicy.setBackoff(retryBackoff);
+  }
+
+  /**
+   * Set the number of consecutive calls to a subversion host which must fail with transient errors before further calls
+   * to it fail immediately.
+   * 
+   * @param circuitBreakerThreshold The number of failed calls, 0 or less to never fail immediately.
+   */
+  public void setCircuitBreakerThreshold(int circuitBreakerThreshold) {
+    retryPolicy.setFailureThreshold(circuitBreakerThreshold);
+  }
+
+  /**
+   * Set the time for which calls to a subversion host fail immediately once its circuit breaker has opened, after which
+   * a single call is let through to test the host.
+   * 
+   * @param circuitBreakerOpenTime The time in milliseconds.
+   */
+  public void setCircuitBreakerOpenTime(long circuitBreakerOpenTime) {
+    retryPolicy.setOpenTime(circuitBreakerOpenTime);
+  }
+
+  /**
+   * Set the time to wait for a connection to subversion to be established, shared by all repositories.
+   * 
+   * @param connectTimeout The timeout in milliseconds, 0 for the SVNKit default.
+   */
+  public void setConnectTimeout(int connectTimeout) {
+    SvnUtils.setConnectTimeout(connectTimeout);
+  }
+
+  /**
+   * Set the time to wait for data from subversion on an established connection, shared by all repositories.
+   * 
+   * @param readTimeout The timeout in milliseconds, 0 for the SVNKit default.
+   */
+  public void setReadTimeout(int readTimeout) {
+    SvnUtils.setReadTimeout(readTimeout);
+  }
+
+  /**
+   * Set the number of bytes transferred between progress events.
+   * 
+   * @param progressInterval The number of bytes.
+   */
+  public void setProgressInterval(long progressInterval) {
+    this.progressInterval = progressInterval;
+  }
+
+  /**
+   * Set the maximum time a get or commit may take, including any retries, after which it is cancelled.
+   * 
+   * @param operationTimeout The timeout in milliseconds, 0 for no limit.
+   */
+  public void setOperationTimeout(long operationTimeout) {
+    this.operationTimeout = operationTimeout;
+  }
+
+  /**
+   * Sets the number of threads to use to download artifacts concurrently, if not set will default to 1 (i.e. no
+   * parallel downloads).
+   * 
+   * @param retrieveThreads The number of download threads.
+   */
+  public void setRetrieveThreads(int retrieveThreads) {
+    if (retrieveThreads < 1) {
+      throw new IllegalArgumentException("retrieveThreads must be at least 1");
+    }
+    this.retrieveThreads = retrieveThreads;
+  }
+
+  /**
+   * Gets the number of threads used to download artifacts concurrently.
+   * 
+   * @return The number of download threads.
+   */
+  public int getRetrieveThreads() {
+    return retrieveThreads;
+  }
+
+  /**
+   * Sets the maximum number of resources (and separately folder listings) held in memory, the least recently used are
+   * evicted beyond this. Any resources and listings already cached are discarded.
+   * 
+   * @param resourceCacheSize The maximum number of resources.
+   */
+  public void setResourceCacheSize(int resourceCacheSize) {
+    this.resourceCacheSize = resourceCacheSize;
+    this.resourcesCache = new ExpiringCache<Resource>(resourceCacheSize, resourceCacheTimeToLive);
+    createFolderListingCaches();
+  }
+
+  /**
+   * Sets the time that resources and folder listings are held in memory for, after which they are resolved again. Any
+   * resources and listings already cached are discarded.
+   * 
+   * @param resourceCacheTimeToLive The time in milliseconds, 0 or less to hold resources until evicted by size.
+   */
+  public void setResourceCacheTimeToLive(long resourceCacheTimeToLive) {
+    this.resourceCacheTimeToLive = resourceCacheTimeToLive;
+    this.resourcesCache = new ExpiringCache<Resource>(resourceCacheSize, resourceCacheTimeToLive);
+    if (resolvedMetadataCacheSize > 0) {
+      this.resolvedMetadata = new ExpiringCache<ResourceMetadata>(resolvedMetadataCacheSize, resourceCacheTimeToLive);
+    }
+    createFolderListingCaches();
+  }
+
+  /**
+   * Sets the maximum number of resolved resources whose metadata is held in a cache of its own, instead of in the
+   * resources handed out to Ivy. Resources are then lightweight handles which are resolved from this cache, so the
+   * resources cache can be kept small while a resource evicted from it can be handed out again without another request
+   * to subversion. Any resources already cached are discarded.
+   * 
+   * @param resolvedMetadataCacheSize The maximum number of resolved resources, 0 to hold metadata in the resources.
+   */
+  public void setResolvedMetadataCacheSize(int resolvedMetadataCacheSize) {
+    this.resolvedMetadataCacheSize = resolvedMetadataCacheSize;
+    this.resourcesCache = new ExpiringCache<Resource>(resourceCacheSize, resourceCacheTimeToLive);
+    this.resolvedMetadata = resolvedMetadataCacheSize > 0 ? new ExpiringCache<ResourceMetadata>(
+        resolvedMetadataCacheSize, resourceCacheTimeToLive) : null;
+  }
+
+  /**
+   * Sets the time that resources found to be missing at HEAD are remembered for, during which they are reported as
+   * missing without asking subversion. Resources missing at a fixed revision are remembered until evicted by size.
+   * Folder listings fetched at HEAD are reused for the same time, so files added since are found once it has passed.
+   * 
+   * @param negativeCacheTimeToLive The time in milliseconds, 0 or less to always ask subversion about HEAD.
+   */
+  public void setNegativeCacheTimeToLive(long negativeCacheTimeToLive) {
+    this.negativeCacheTimeToLive = negativeCacheTimeToLive;
+    this.negativeCache = new NegativeCache(NEGATIVE_CACHE_SIZE, negativeCacheTimeToLive);
+    createFolderListingCaches();
+  }
+
+  /**
+   * Sets whether to download several artifacts in the same folder using a single request.
+   * 
+   * @param bulkRetrieve Whether to use bulk retrieval.
+   */
+  public void setBulkRetrieve(boolean bulkRetrieve) {
+    this.bulkRetrieve = bulkRetrieve;
+  }
+
+  /**
+   * Sets whether to send overwritten files as deltas against their current contents when publishing. The current
+   * contents are read from the content store if enabled, otherwise they are fetched from subversion.
+   * 
+   * @param publishDeltas Whether to publish deltas.
+   */
+  public void setPublishDeltas(boolean publishDeltas) {
+    this.publishDeltas = publishDeltas;
+  }
+
+  /**
+   * Set whether to skip publishing files which the repository already holds with identical contents (defaults to
+   * false). If nothing published has changed no commit is made at all.
+   * 
+   * @param skipUnchanged Whether to skip unchanged files.
+   */
+  public void setSkipUnchanged(boolean skipUnchanged) {
+    this.skipUnchanged = skipUnchanged;
+  }
+
+  /**
+   * Set whether binary diffs are made in the same commit as the published files are put (defaults to false). The
+   * release folder is then replaced by a copy of the binary diff folder as it was before the commit with the changed
+   * files put into it, so it is never missing between commits, at the cost of sending changed files twice.
+   * 
+   * @param singleCommitBinaryDiff Whether to make binary diffs in a single commit.
+   */
+  public void setSingleCommitBinaryDiff(boolean singleCommitBinaryDiff) {
+    this.singleCommitBinaryDiff = singleCommitBinaryDiff;
+  }
+
+  /**
+   * Sets whether to use virtual threads for parallel downloads. Ignored on JVMs which do not support virtual threads.
+   * 
+   * @param useVirtualThreads Whether to use virtual threads.
+   */
+  public void setUseVirtualThreads(boolean useVirtualThreads) {
+    this.useVirtualThreads = useVirtualThreads;
+  }
+
   /**
    * Set whether to cleanup (i.e. delete the contents of) the folder being published to during the publish operation.
    * 
@@ -18,9 +18,18 @@ package fm.last.ivy.plugins.svnresolver;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
+import org.apache.ivy.core.cache.DefaultRepositoryCacheManager;
+import org.apache.ivy.core.cache.RepositoryCacheManager;
+import org.apache.ivy.core.module.descriptor.Artifact;
 import org.apache.ivy.core.module.id.ModuleRevisionId;
+import org.apache.ivy.core.report.DownloadReport;
+import org.apache.ivy.core.resolve.DownloadOptions;
 import org.apache.ivy.plugins.resolver.RepositoryResolver;
+import org.apache.ivy.plugins.resolver.util.ResolvedResource;
+import org.apache.ivy.util.Message;
 
 /**
  * An Ivy resolver for Subversion repositories.
@@ -43,6 +52,45 @@ public class SvnResolver extends RepositoryResolver {
     return (SvnRepository) getRepository();
   }
 
+  /**
+   * Downloads the passed artifacts. If parallel downloads are enabled, artifacts which aren't already in the cache are
+   * first scheduled for background download so they are transferred concurrently, Ivy then picks each one up as it
+   * processes the artifacts in order.
+   */
+  @Override
+  public DownloadReport download(Artifact[] artifacts, DownloadOptions options) {
+    if (artifacts.length > 1 && getSvnRepository().canScheduleDownloads()) {
+      scheduleDownloads(artifacts);
+    }
+    try {
+      return super.download(artifacts, options);
+    } finally {
+      getSvnRepository().discardScheduledDownloads();
+      Message.debug("Resource cache statistics: " + getSvnRepository().getResourceCacheStatistics());
+    }
+  }
+
+  /**
+   * Schedules background downloads for all passed artifacts which exist and aren't already in the cache.
+   * 
+   * @param artifacts The artifacts to download.
+   */
+  private void scheduleDownloads(Artifact[] artifacts) {
+    RepositoryCacheManager cacheManager = getRepositoryCacheManager();
+    List<String> sources = new ArrayList<String>();
+    for (Artifact artifact : artifacts) {
+      if (cacheManager instanceof DefaultRepositoryCacheManager
+          && ((DefaultRepositoryCacheManager) cacheManager).getArchiveFileInCache(artifact).exists()) {
+        continue;
+      }
+      ResolvedResource artifactRef = getArtifactRef(artifact, null);
+      if (artifactRef != null && artifactRef.getResource().exists()) {
+        sources.add(artifactRef.getResource().getName());
+      }
+    }
+    getSvnRepository().scheduleDownloads(sources);
+  }
+
   @Override
   public void beginPublishTransaction(ModuleRevisionId mrid, boolean flag) throws IOException {
     getSvnRepository().beginPublishTransaction(mrid);
@@ -217,6 +265,112 @@ public class SvnResolver extends RepositoryResolver {
     }
   }
 
+  /**
+   * Set the folder in which to cache metadata for resources retrieved from a fixed retrieveRevision.
+   * 
+   * @param metadataCacheDir Path to the cache folder.
+   */
+  public void setMetadataCacheDir(String metadataCacheDir) {
+    if (validParameter(metadataCacheDir)) {
+      getSvnRepository().setMetadataCacheDir(new File(metadataCacheDir.trim()));
+    }
+  }
+
+  /**
+   * Set the number of revisions whose metadata is kept in the metadata cache (defaults to 10), the metadata of older
+   * revisions is deleted.
+   * 
+   * @param metadataCacheRevisions The number of revisions.
+   */
+  public void setMetadataCacheRevisions(String metadataCacheRevisions) {
+    if (validParameter(metadataCacheRevisions)) {
+      getSvnRepository().setMetadataCacheRevisions(Integer.parseInt(metadataCacheRevisions.trim()));
+    }
+  }
+
+  /**
+   * Set the folder in which to keep the contents of downloaded files, shared by all paths with the same contents.
+   * 
+   * @param contentStoreDir Path to the store folder.
+   */
+  public void setContentStoreDir(String contentStoreDir) {
+    if (validParameter(contentStoreDir)) {
+      getSvnRepository().setContentStoreDir(new File(contentStoreDir.trim()));
+    }
+  }
+
+  /**
+   * Set whether to resolve HEAD to a concrete revision once per resolve (defaults to false), so that all artifacts in a
+   * resolve are retrieved from the same revision. Ignored if retrieveRevision is set.
+   * 
+   * @param pinHeadRevisionString Whether to pin HEAD.
+   */
+  public void setPinHeadRevision(String pinHeadRevisionString) {
+    if (validParameter(pinHeadRevisionString)) {
+      getSvnRepository().setPinHeadRevision(Boolean.parseBoolean(pinHeadRevisionString.trim()));
+    }
+  }
+
+  /**
+   * Set the maximum number of resources held in memory (defaults to 10000), the least recently used are resolved again
+   * beyond this.
+   * 
+   * @param resourceCacheSize The maximum number of resources.
+   */
+  public void setResourceCacheSize(String resourceCacheSize) {
+    if (validParameter(resourceCacheSize)) {
+      getSvnRepository().setResourceCacheSize(Integer.parseInt(resourceCacheSize.trim()));
+    }
+  }
+
+  /**
+   * Set the time after which resources held in memory are resolved again (by default they are held until evicted by
+   * size).
+   * 
+   * @param resourceCacheTimeToLive The time in milliseconds.
+   */
+  public void setResourceCacheTimeToLive(String resourceCacheTimeToLive) {
+    if (validParameter(resourceCacheTimeToLive)) {
+      getSvnRepository().setResourceCacheTimeToLive(Long.parseLong(resourceCacheTimeToLive.trim()));
+    }
+  }
+
+  /**
+   * Set the maximum number of resolved resources whose metadata is held in a cache of its own rather than in the
+   * resources handed to Ivy (by default metadata is held in the resources).
+   * 
+   * @param resolvedMetadataCacheSize The maximum number of resolved resources.
+   */
+  public void setResolvedMetadataCacheSize(String resolvedMetadataCacheSize) {
+    if (validParameter(resolvedMetadataCacheSize)) {
+      getSvnRepository().setResolvedMetadataCacheSize(Integer.parseInt(resolvedMetadataCacheSize.trim()));
+    }
+  }
+
+  /**
+   * Set the time for which resources found to be missing at HEAD are reported as missing without asking Subversion
+   * again (defaults to 60000).
+   * 
+   * @param negativeCacheTimeToLive The time in milliseconds, 0 to always ask Subversion about HEAD.
+   */
+  public void setNegativeCacheTimeToLive(String negativeCacheTimeToLive) {
+    if (validParameter(negativeCacheTimeToLive)) {
+      getSvnRepository().setNegativeCacheTimeToLive(Long.parseLong(negativeCacheTimeToLive.trim()));
+    }
+  }
+
+  /**
+   * Set whether to maintain an index of the published artifacts in each module folder and resolve from it (defaults to
+   * false).
+   * 
+   * @param useArtifactIndexString Whether to use the artifact index.
+   */
+  public void setUseArtifactIndex(String useArtifactIndexString) {
+    if (validParameter(useArtifactIndexString)) {
+      getSvnRepository().setUseArtifactIndex(Boolean.parseBoolean(useArtifactIndexString.trim()));
+    }
+  }
+
   /**
    * Set whether to cleanup (i.e. delete the contents of) the folder being published to during the publish operation.
    * 
@@ -229,4 +383,185 @@ public class SvnResolver extends RepositoryResolver {
     }
   }
 
+  /**
+   * Set the maximum number of connections that may be open to a single Subversion host at any one time.
+   * 
+   * @param maxConnectionsPerHost The maximum number of connections per host.
+   */
+  public void setMaxConnectionsPerHost(String maxConnectionsPerHost) {
+    if (validParameter(maxConnectionsPerHost)) {
+      getSvnRepository().setMaxConnectionsPerHost(Integer.parseInt(maxConnectionsPerHost.trim()));
+    }
+  }
+
+  /**
+   * Set the time (in milliseconds) after which idle Subversion connections are closed.
+   * 
+   * @param connectionIdleTimeout The idle timeout in milliseconds.
+   */
+  public void setConnectionIdleTimeout(String connectionIdleTimeout) {
+    if (validParameter(connectionIdleTimeout)) {
+      getSvnRepository().setConnectionIdleTimeout(Long.parseLong(connectionIdleTimeout.trim()));
+    }
+  }
+
+  /**
+   * Set the number of attempts made for each call to Subversion which fails with a transient error (defaults to 3).
+   * 
+   * @param retryAttempts The number of attempts, 1 disables retries.
+   */
+  public void setRetryAttempts(String retryAttempts) {
+    if (validParameter(retryAttempts)) {
+      getSvnRepository().setRetryAttempts(Integer.parseInt(retryAttempts.trim()));
+    }
+  }
+
+  /**
+   * Set the time (in milliseconds) to wait before retrying a failed call to Subversion, doubled for each further retry.
+   * 
+   * @param retryBackoff The backoff in milliseconds.
+   */
+  public void setRetryBackoff(String retryBackoff) {
+    if (validParameter(retryBackoff)) {
+      getSvnRepository().setRetryBackoff(Long.parseLong(retryBackoff.trim()));
+    }
+  }
+
+  /**
+   * Set the number of consecutive calls to a Subversion host which must fail before further calls fail immediately.
+   * 
+   * @param circuitBreakerThreshold The number of failed calls, 0 or less to never fail immediately.
+   */
+  public void setCircuitBreakerThreshold(String circuitBreakerThreshold) {
+    if (validParameter(circuitBreakerThreshold)) {
+      getSvnRepository().setCircuitBreakerThreshold(Integer.parseInt(circuitBreakerThreshold.trim()));
+    }
+  }
+
+  /**
+   * Set the time (in milliseconds) for which calls to a failing Subversion host fail immediately.
+   * 
+   * @param circuitBreakerOpenTime The time in milliseconds.
+   */
+  public void setCircuitBreakerOpenTime(String circuitBreakerOpenTime) {
+    if (validParameter(circuitBreakerOpenTime)) {
+      getSvnRepository().setCircuitBreakerOpenTime(Long.parseLong(circuitBreakerOpenTime.trim()));
+    }
+  }
+
+  /**
+   * Set the time (in milliseconds) to wait for a connection to Subversion to be established (defaults to the SVNKit
+   * default, which is no timeout for most protocols).
+   * 
+   * @param connectTimeout The timeout in milliseconds.
+   */
+  public void setConnectTimeout(String connectTimeout) {
+    if (validParameter(connectTimeout)) {
+      getSvnRepository().setConnectTimeout(Integer.parseInt(connectTimeout.trim()));
+    }
+  }
+
+  /**
+   * Set the time (in milliseconds) to wait for data from Subversion before failing (defaults to the SVNKit default,
+   * which is one hour for http(s) and no timeout for svn and svn+ssh).
+   * 
+   * @param readTimeout The timeout in milliseconds.
+   */
+  public void setReadTimeout(String readTimeout) {
+    if (validParameter(readTimeout)) {
+      getSvnRepository().setReadTimeout(Integer.parseInt(readTimeout.trim()));
+    }
+  }
+
+  /**
+   * Set the maximum time (in milliseconds) a single retrieve or publish commit may take before it is cancelled.
+   * 
+   * @param operationTimeout The timeout in milliseconds, 0 for no limit.
+   */
+  public void setOperationTimeout(String operationTimeout) {
+    if (validParameter(operationTimeout)) {
+      getSvnRepository().setOperationTimeout(Long.parseLong(operationTimeout.trim()));
+    }
+  }
+
+  /**
+   * Set the number of bytes transferred between progress events fired to Ivy's transfer listeners (defaults to 65536).
+   * 
+   * @param progressInterval The number of bytes.
+   */
+  public void setProgressInterval(String progressInterval) {
+    if (validParameter(progressInterval)) {
+      getSvnRepository().setProgressInterval(Long.parseLong(progressInterval.trim()));
+    }
+  }
+
+  /**
+   * Set the number of threads to use to download artifacts concurrently (defaults to 1, i.e. no parallel downloads).
+   * 
+   * @param retrieveThreads The number of download threads.
+   */
+  public void setRetrieveThreads(String retrieveThreads) {
+    if (validParameter(retrieveThreads)) {
+      getSvnRepository().setRetrieveThreads(Integer.parseInt(retrieveThreads.trim()));
+    }
+  }
+
+  /**
+   * Set whether to download several artifacts in the same folder using a single request.
+   * 
+   * @param bulkRetrieveString Whether to use bulk retrieval.
+   */
+  public void setBulkRetrieve(String bulkRetrieveString) {
+    if (validParameter(bulkRetrieveString)) {
+      getSvnRepository().setBulkRetrieve(Boolean.parseBoolean(bulkRetrieveString.trim()));
+    }
+  }
+
+  /**
+   * Set whether to send overwritten files as deltas against their current contents when publishing (defaults to
+   * false). Most useful with binaryDiff, where the files in the binary diff folder are overwritten on every publish.
+   * 
+   * @param publishDeltasString Whether to publish deltas.
+   */
+  public void setPublishDeltas(String publishDeltasString) {
+    if (validParameter(publishDeltasString)) {
+      getSvnRepository().setPublishDeltas(Boolean.parseBoolean(publishDeltasString.trim()));
+    }
+  }
+
+  /**
+   * Set whether to skip publishing files which the repository already holds with identical contents (defaults to
+   * false).
+   * 
+   * @param skipUnchangedString Whether to skip unchanged files.
+   */
+  public void setSkipUnchanged(String skipUnchangedString) {
+    if (validParameter(skipUnchangedString)) {
+      getSvnRepository().setSkipUnchanged(Boolean.parseBoolean(skipUnchangedString.trim()));
+    }
+  }
+
+  /**
+   * Set whether binary diffs are made in the same commit as the published files are put (defaults to false).
+   * 
+   * @param singleCommitBinaryDiffString Whether to make binary diffs in a single commit.
+   */
+  public void setSingleCommitBinaryDiff(String singleCommitBinaryDiffString) {
+    if (validParameter(singleCommitBinaryDiffString)) {
+      getSvnRepository().setSingleCommitBinaryDiff(Boolean.parseBoolean(singleCommitBinaryDiffString.trim()));
+    }
+  }
+
+  /**
+   * Set whether to use virtual threads for parallel downloads (defaults to false), ignored on JVMs which don't support
+   * them.
+   * 
+   * @param useVirtualThreadsString Whether to use virtual threads.
+   */
+  public void setUseVirtualThreads(String useVirtualThreadsString) {
+    if (validParameter(useVirtualThreadsString)) {
+      getSvnRepository().setUseVirtualThreads(Boolean.parseBoolean(useVirtualThreadsString.trim()));
+    }
+  }
+
 }
@@ -43,6 +43,7 @@ public class SvnResource implements Resource {
    * @param contentLength The size of the resource in bytes.
    */
   public SvnResource(SvnRepository repository, String source, boolean exists, long lastModified, long contentLength) {
+    this.repository = repository;
     this.source = source;
     this.exists = exists;
     this.lastModified = lastModified;
@@ -70,16 +71,32 @@ public class SvnResource implements Resource {
   }
 
   /**
-   * Resolves this resource via its repository.
+   * Resolves this resource via its repository. If resolving fails this resource is treated as missing but left
+   * unresolved, so that it is resolved again the next time it is used. If subversion could not be reached at all the
+   * error is thrown instead, so that it fails the resolve rather than the resource being reported as missing.
+   * 
+   * @throws RuntimeException If subversion could not be reached.
    */
   private void resolve() {
     SvnResource resolved = repository.resolveResource(source);
+    if (resolved == null) {
+      this.exists = false;
+      return;
+    }
     this.contentLength = resolved.getContentLength();
     this.lastModified = resolved.getLastModified();
     this.exists = resolved.exists();
     this.resolved = true;
   }
 
+  /**
+   * @return Whether this resource has been resolved, i.e. whether its other properties can be read without a request to
+   *         Subversion.
+   */
+  boolean isResolved() {
+    return resolved;
+  }
+
   /**
    * Clones this resource.
    * 
@@ -144,14 +161,17 @@ public class SvnResource implements Resource {
   }
 
   /**
-   * Gets an input stream for this resource.
+   * Gets an input stream for this resource, the contents are streamed from Subversion as the stream is read.
    * 
-   * @return
-   * @throw UnsupportedOperationException This is currently always thrown.
+   * @return An input stream, which must be closed after use.
+   * @throws IOException If this resource does not exist.
    * @see org.apache.ivy.repository.Resource#openStream()
    */
   public InputStream openStream() throws IOException {
-    throw new UnsupportedOperationException("Opening an input stream on a SVN resource not currently supported");
+    if (repository == null) {
+      throw new IOException("Resource does not exist");
+    }
+    return repository.openStream(source);
   }
 
   /**
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import org.apache.ivy.plugins.repository.Repository;
+import org.apache.ivy.plugins.repository.Resource;
+import org.apache.ivy.plugins.repository.TransferEvent;
+
+/**
+ * Transfer event which can be updated as the transfer it describes progresses, so that each transfer can have its own
+ * event rather than sharing the single event held by the repository (which is only safe if the repository is used by
+ * one thread at a time).
+ */
+class SvnTransferEvent extends TransferEvent {
+
+  /**
+   * Constructs a new instance of this class for a transfer which has just been initiated.
+   * 
+   * @param repository The repository performing the transfer.
+   * @param resource The resource being transferred.
+   * @param requestType The type of the transfer, {@link TransferEvent#REQUEST_GET} or
+   *          {@link TransferEvent#REQUEST_PUT}.
+   */
+  SvnTransferEvent(Repository repository, Resource resource, int requestType) {
+    super(repository, resource, TRANSFER_INITIATED, requestType);
+  }
+
+  /**
+   * Moves this event on to the passed stage of the transfer.
+   * 
+   * @param eventType The new event type.
+   */
+  void update(int eventType) {
+    setEventType(eventType);
+  }
+
+  /**
+   * Sets the total length of the transfer.
+   * 
+   * @param totalLength The total length, in bytes.
+   */
+  void updateTotalLength(long totalLength) {
+    setTotalLength(totalLength);
+    setTotalLengthSet(true);
+  }
+
+  /**
+   * Sets the length of the data transferred since the last progress event, accumulating it into the total length if
+   * that isn't known.
+   * 
+   * @param length The length, in bytes.
+   */
+  void updateLength(long length) {
+    setLength(length);
+    if (!isTotalLengthSet()) {
+      setTotalLength(getTotalLength() + length);
+    }
+  }
+
+}
@@ -16,6 +16,10 @@
 package fm.last.ivy.plugins.svnresolver;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -44,6 +48,17 @@ public class SvnUtils {
    */
   private static final ProxySettings proxySettings = new ProxySettings();
 
+  /**
+   * The time (in milliseconds) to wait for a connection to subversion to be established, 0 for the SVNKit default.
+   */
+  private static volatile int connectTimeout = 0;
+
+  /**
+   * The time (in milliseconds) to wait for data from subversion on an established connection, 0 for the SVNKit
+   * default.
+   */
+  private static volatile int readTimeout = 0;
+
   /**
    * Check that the passed node exists and represents a folder.
    * 
@@ -80,6 +95,24 @@ public class SvnUtils {
     return errorMessage;
   }
 
+  /**
+   * Determines the node kind implied by an error returned when trying to read a node as a file, so that a failed read
+   * can be reported without another round trip to check the path.
+   * 
+   * @param e The error.
+   * @return NONE if the node doesn't exist, DIR if the node isn't a file, or null if the error isn't node related.
+   */
+  public static SVNNodeKind getNodeKind(SVNException e) {
+    SVNErrorCode errorCode = e.getErrorMessage().getErrorCode();
+    if (errorCode == SVNErrorCode.FS_NOT_FOUND || errorCode == SVNErrorCode.RA_DAV_PATH_NOT_FOUND
+        || errorCode == SVNErrorCode.ENTRY_NOT_FOUND || errorCode == SVNErrorCode.FS_NOT_DIRECTORY) {
+      return SVNNodeKind.NONE;
+    } else if (errorCode == SVNErrorCode.FS_NOT_FILE) {
+      return SVNNodeKind.DIR;
+    }
+    return null;
+  }
+
   /**
    * Creates a reference to a subversion repository, initialised with a valid authentication
    * manager. Based on the passed parameters a set of one or more valid authentication mechanisms
@@ -147,10 +180,180 @@ public class SvnUtils {
       throw new SVNException(SVNErrorMessage.create(SVNErrorCode.AUTHZ_INVALID_CONFIG, "Missing authentication values"));
     }
 
-    BasicAuthenticationManager authManager = new BasicAuthenticationManager(authentications
+    BasicAuthenticationManager authManager = new TimeoutAuthenticationManager(authentications
         .toArray(new SVNAuthentication[] {}));
     proxySettings.setProxy(authManager); // if there are any proxy settings this will set them on the auth manager
     repository.setAuthenticationManager(authManager);
     return repository;
   }
+
+  /**
+   * Sets the time to wait for a connection to subversion to be established. Applies to all connections opened from now
+   * on, including those of repositories which have already been created.
+   * 
+   * @param connectTimeout The timeout in milliseconds, 0 for the SVNKit default (no timeout for most protocols).
+   */
+  public static void setConnectTimeout(int connectTimeout) {
+    SvnUtils.connectTimeout = connectTimeout;
+  }
+
+  /**
+   * Sets the time to wait for data from subversion on an established connection before failing. Applies to all
+   * connections opened from now on, including those of repositories which have already been created.
+   * 
+   * @param readTimeout The timeout in milliseconds, 0 for the SVNKit default (one hour for http(s), no timeout for
+   *          svn and svn+ssh).
+   */
+  public static void setReadTimeout(int readTimeout) {
+    SvnUtils.readTimeout = readTimeout;
+  }
+
+  /**
+   * Authentication manager which also supplies the configured connect and read timeouts to the SVNKit transports.
+   */
+  private static class TimeoutAuthenticationManager extends BasicAuthenticationManager {
+
+    private TimeoutAuthenticationManager(SVNAuthentication[] authentications) {
+      super(authentications);
+    }
+
+    @Override
+    public int getConnectTimeout(SVNRepository repository) {
+      return connectTimeout > 0 ? connectTimeout : super.getConnectTimeout(repository);
+    }
+
+    @Override
+    public int getReadTimeout(SVNRepository repository) {
+      return readTimeout > 0 ? readTimeout : super.getReadTimeout(repository);
+    }
+  }
+
+  /**
+   * Moves a file, replacing any existing destination file. Within a folder the file is renamed, deleting the existing
+   * destination first only on platforms which won't rename over it. Between folders, if the file cannot be renamed
+   * (e.g. because the destination is on another file system) it is copied next to the destination and renamed from
+   * there, so the existing destination is untouched if the copy fails.
+   * 
+   * @param source The file to move.
+   * @param destination The destination.
+   * @throws IOException If the file cannot be moved.
+   */
+  public static void moveFile(File source, File destination) throws IOException {
+    if (source.renameTo(destination)) {
+      return;
+    }
+    if (!source.getAbsoluteFile().getParentFile().equals(destination.getAbsoluteFile().getParentFile())) {
+      copyFile(source, destination);
+      if (!source.delete()) {
+        Message.warn("Could not delete " + source.getAbsolutePath());
+      }
+      return;
+    }
+    if (!destination.exists()) {
+      throw new IOException("Could not rename " + source.getAbsolutePath() + " to " + destination.getName());
+    }
+    if (!destination.delete()) {
+      throw new IOException("Could not replace " + destination.getAbsolutePath());
+    }
+    if (!source.renameTo(destination)) {
+      throw new IOException("Could not rename " + source.getAbsolutePath() + " to " + destination.getName());
+    }
+  }
+
+  /**
+   * Copies a file, replacing the destination if it exists. The copy only appears at the destination once it is
+   * complete.
+   * 
+   * @param source The file to copy.
+   * @param destination The destination.
+   * @throws IOException If the file cannot be copied.
+   */
+  public static void copyFile(File source, File destination) throws IOException {
+    FileInputStream in = new FileInputStream(source);
+    try {
+      AtomicFileOutputStream out = new AtomicFileOutputStream(destination, source.length());
+      try {
+        out.transferFrom(in.getChannel());
+        out.commit();
+      } finally {
+        out.close();
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Computes the MD5 checksum of the passed data.
+   * 
+   * @param data The data.
+   * @return The checksum, as a hex string.
+   */
+  public static String computeChecksum(byte[] data) {
+    return computeChecksum(data, "MD5");
+  }
+
+  /**
+   * Computes a checksum of the passed data.
+   * 
+   * @param data The data.
+   * @param algorithm The checksum algorithm, either MD5 or SHA-1.
+   * @return The checksum, as a hex string.
+   */
+  public static String computeChecksum(byte[] data, String algorithm) {
+    return toHex(getDigest(algorithm).digest(data));
+  }
+
+  /**
+   * Computes the SHA-1 and MD5 checksums of the contents of the passed file, reading it once.
+   * 
+   * @param file The file.
+   * @return The SHA-1 and MD5 checksums, as hex strings.
+   * @throws IOException If an error occurs reading the file.
+   */
+  public static String[] computeChecksums(File file) throws IOException {
+    MessageDigest sha1 = getDigest("SHA-1");
+    MessageDigest md5 = getDigest("MD5");
+    FileInputStream in = new FileInputStream(file);
+    try {
+      byte[] buffer = new byte[64 * 1024];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        sha1.update(buffer, 0, read);
+        md5.update(buffer, 0, read);
+      }
+    } finally {
+      in.close();
+    }
+    return new String[] {toHex(sha1.digest()), toHex(md5.digest())};
+  }
+
+  /**
+   * Gets a digest for computing checksums.
+   * 
+   * @param algorithm The checksum algorithm, either MD5 or SHA-1.
+   * @return The digest.
+   */
+  static MessageDigest getDigest(String algorithm) {
+    try {
+      return MessageDigest.getInstance(algorithm);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e); // every JVM supports MD5 and SHA-1
+    }
+  }
+
+  /**
+   * Formats a computed digest as a checksum.
+   * 
+   * @param digest The digest's bytes.
+   * @return The checksum, as a hex string.
+   */
+  static String toHex(byte[] digest) {
+    StringBuilder checksum = new StringBuilder();
+    for (byte b : digest) {
+      checksum.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return checksum.toString();
+  }
+
 }
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.ivy.util.Message;
+
+/**
+ * Counts the bytes of a single transfer to or from Subversion as they pass through a stream, reporting progress to a
+ * listener every so many bytes and logging the throughput of the transfer once it is complete. Not thread-safe, a
+ * monitor must only be used by the thread performing its transfer.
+ */
+public class TransferMonitor {
+
+  /**
+   * The default number of bytes transferred between progress reports.
+   */
+  public static final long DEFAULT_PROGRESS_INTERVAL = 64 * 1024;
+
+  /**
+   * Receives the progress of transfers.
+   */
+  public interface Listener {
+
+    /**
+     * Called when a transfer starts.
+     * 
+     * @param monitor The transfer's monitor.
+     */
+    void transferStarted(TransferMonitor monitor);
+
+    /**
+     * Called every time the progress interval has been transferred, and once more with the remainder when the transfer
+     * completes.
+     * 
+     * @param monitor The transfer's monitor.
+     * @param length The number of bytes transferred since the last report.
+     */
+    void transferProgress(TransferMonitor monitor, long length);
+
+    /**
+     * Called when a transfer completes.
+     * 
+     * @param monitor The transfer's monitor.
+     */
+    void transferCompleted(TransferMonitor monitor);
+
+  }
+
+  /**
+   * The path of the file being transferred.
+   */
+  private final String path;
+
+  /**
+   * The size of the file being transferred, -1 if not known.
+   */
+  private final long totalLength;
+
+  private final long progressInterval;
+
+  /**
+   * The listener to report to, null to only log the throughput.
+   */
+  private final Listener listener;
+
+  private long transferred = 0;
+
+  /**
+   * The number of bytes transferred since progress was last reported.
+   */
+  private long unreported = 0;
+
+  private long startTime = -1;
+
+  private long endTime = -1;
+
+  /**
+   * Constructs a new instance of this class.
+   * 
+   * @param path The path of the file being transferred.
+   * @param totalLength The size of the file being transferred, -1 if not known.
+   * @param progressInterval The number of bytes transferred between progress reports.
+   * @param listener The listener to report to, null to only log the throughput.
+   */
+  public TransferMonitor(String path, long totalLength, long progressInterval, Listener listener) {
+    this.path = path;
+    this.totalLength = totalLength;
+    this.progressInterval = Math.max(1, progressInterval);
+    this.listener = listener;
+  }
+
+  /**
+   * Starts the transfer, so that its throughput includes the time taken for the first bytes to arrive. Called
+   * automatically when the first bytes are transferred if not called before.
+   */
+  public void start() {
+    if (startTime >= 0) {
+      return;
+    }
+    startTime = System.currentTimeMillis();
+    if (listener != null) {
+      listener.transferStarted(this);
+    }
+  }
+
+  /**
+   * Records bytes which have been transferred.
+   * 
+   * @param length The number of bytes.
+   */
+  public void transferred(long length) {
+    if (length <= 0) {
+      return;
+    }
+    start();
+    transferred += length;
+    unreported += length;
+    if (unreported >= progressInterval) {
+      reportProgress();
+    }
+  }
+
+  /**
+   * Completes the transfer, reporting any remaining progress and logging its throughput.
+   */
+  public void complete() {
+    start();
+    if (unreported > 0) {
+      reportProgress();
+    }
+    endTime = System.currentTimeMillis();
+    Message.debug("Transferred " + transferred + " bytes of " + path + " in " + getElapsed() + "ms ("
+        + getThroughput() / 1024 + " KB/s)");
+    if (listener != null) {
+      listener.transferCompleted(this);
+    }
+  }
+
+  private void reportProgress() {
+    long length = unreported;
+    unreported = 0;
+    if (listener != null) {
+      listener.transferProgress(this, length);
+    }
+  }
+
+  /**
+   * Wraps the passed stream so that all bytes written to it are counted as transferred.
+   * 
+   * @param output The stream to wrap.
+   * @return The wrapped stream.
+   */
+  public OutputStream monitor(OutputStream output) {
+    return new FilterOutputStream(output) {
+      @Override
+      public void write(int b) throws IOException {
+        out.write(b);
+        transferred(1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        transferred(len);
+      }
+    };
+  }
+
+  /**
+   * Wraps the passed stream so that all bytes read from it are counted as transferred.
+   * 
+   * @param input The stream to wrap.
+   * @return The wrapped stream.
+   */
+  public InputStream monitor(InputStream input) {
+    return new FilterInputStream(input) {
+      @Override
+      public int read() throws IOException {
+        int b = in.read();
+        if (b >= 0) {
+          transferred(1);
+        }
+        return b;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        int read = in.read(b, off, len);
+        transferred(read);
+        return read;
+      }
+
+      @Override
+      public long skip(long n) throws IOException {
+        long skipped = in.skip(n);
+        transferred(skipped);
+        return skipped;
+      }
+    };
+  }
+
+  /**
+   * @return The path of the file being transferred.
+   */
+  public String getPath() {
+    return path;
+  }
+
+  /**
+   * @return The size of the file being transferred, -1 if not known.
+   */
+  public long getTotalLength() {
+    return totalLength;
+  }
+
+  /**
+   * @return The number of bytes transferred so far.
+   */
+  public long getTransferred() {
+    return transferred;
+  }
+
+  /**
+   * @return The time in milliseconds the transfer took, or has taken so far if not complete.
+   */
+  public long getElapsed() {
+    if (startTime < 0) {
+      return 0;
+    }
+    return (endTime < 0 ? System.currentTimeMillis() : endTime) - startTime;
+  }
+
+  /**
+   * @return The throughput of the transfer in bytes per second.
+   */
+  public long getThroughput() {
+    return transferred * 1000 / Math.max(1, getElapsed());
+  }
+
+}
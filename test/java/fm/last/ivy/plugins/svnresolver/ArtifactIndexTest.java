@@ -0,0 +1,145 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNNodeKind;
+
+/**
+ * Unit test case for the ArtifactIndex.
+ */
+public class ArtifactIndexTest {
+
+  private ArtifactIndex index;
+
+  @Before
+  public void setUp() {
+    index = new ArtifactIndex("/org/module");
+    List<ResourceMetadata> listing = new ArrayList<ResourceMetadata>();
+    listing.add(new ResourceMetadata("ivy.xml", SVNNodeKind.FILE, 100, 1000, "checksum1"));
+    listing.add(new ResourceMetadata("module.jar", SVNNodeKind.FILE, 200, 1000, "checksum2"));
+    index.putFolder("1.0", listing);
+    listing = new ArrayList<ResourceMetadata>();
+    listing.add(new ResourceMetadata("ivy.xml", SVNNodeKind.FILE, 300, 2000, null));
+    listing.add(new ResourceMetadata("docs", SVNNodeKind.DIR, 0, 2000, null));
+    index.putFolder("2.0", listing);
+  }
+
+  @Test
+  public void testGetIndexFolderPath() {
+    assertEquals("org/module", ArtifactIndex.getIndexFolderPath("org/module/1.0"));
+    assertEquals("org/module", ArtifactIndex.getIndexFolderPath("/org/module/1.0/"));
+    assertEquals("", ArtifactIndex.getIndexFolderPath("org"));
+    assertEquals("org/module/" + ArtifactIndex.FILE_NAME, ArtifactIndex.getFilePath("org/module"));
+    assertEquals(ArtifactIndex.FILE_NAME, ArtifactIndex.getFilePath(""));
+  }
+
+  @Test
+  public void testLookup() {
+    ResourceMetadata metadata = index.lookup("org/module/1.0/module.jar");
+    assertEquals(new ResourceMetadata("module.jar", SVNNodeKind.FILE, 200, 1000, "checksum2"), metadata);
+    assertFalse(index.lookup("/org/module/1.0/module-sources.jar").exists());
+    assertNull(index.lookup("org/module/3.0/ivy.xml")); // folder not indexed
+    assertNull(index.lookup("org/other/1.0/ivy.xml"));
+    assertNull(index.lookup("org/module/ivy.xml"));
+  }
+
+  @Test
+  public void testListing() {
+    assertEquals(names("ivy.xml", "module.jar"), names(index.getListing("org/module/1.0")));
+    assertEquals(SVNNodeKind.DIR, index.getListing("org/module/2.0/").getEntry("docs").getKind());
+    assertNull(index.getListing("org/module")); // the index's own folder
+    assertNull(index.getListing("org/module/3.0"));
+    assertNull(index.getListing("org/module/1.0/docs"));
+  }
+
+  @Test
+  public void testRemoveFolder() {
+    index.removeFolder("1.0");
+    assertNull(index.getListing("org/module/1.0"));
+    assertNull(index.lookup("org/module/1.0/ivy.xml"));
+    assertEquals(1, index.size());
+  }
+
+  @Test
+  public void testRetainUnchanged() throws IOException {
+    Map<String, Long> folderRevisions = new HashMap<String, Long>();
+    folderRevisions.put("1.0", 5L);
+    folderRevisions.put("2.0", 7L); // changed after the commit which wrote the index
+    index.retainUnchanged(folderRevisions, 5);
+    assertEquals(names("ivy.xml", "module.jar"), names(index.getListing("org/module/1.0")));
+    assertNull(index.getListing("org/module/2.0"));
+    assertNull(index.lookup("org/module/2.0/ivy.xml"));
+    // once written again by a later commit, 1.0 is only kept while it is still at the revision it was read at
+    ArtifactIndex read = new ArtifactIndex("org/module", index.toByteArray());
+    read.retainUnchanged(folderRevisions, 9);
+    assertEquals(1, read.size());
+    folderRevisions.put("1.0", 8L);
+    read.retainUnchanged(folderRevisions, 9);
+    assertEquals(0, read.size());
+    folderRevisions.remove("1.0");
+    index.retainUnchanged(folderRevisions, 5); // deleted
+    assertNull(index.getListing("org/module/1.0"));
+  }
+
+  @Test
+  public void testReadWrite() throws IOException {
+    ArtifactIndex read = new ArtifactIndex("org/module", index.toByteArray());
+    assertEquals(2, read.size());
+    assertEquals(index.lookup("org/module/1.0/ivy.xml"), read.lookup("org/module/1.0/ivy.xml"));
+    assertEquals(index.lookup("org/module/2.0/ivy.xml"), read.lookup("org/module/2.0/ivy.xml"));
+    assertEquals(index.lookup("org/module/2.0/docs"), read.lookup("org/module/2.0/docs"));
+    assertNull(read.lookup("org/module/2.0/ivy.xml").getChecksum());
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadInvalid() throws IOException {
+    new ArtifactIndex("org/module", "not an index\n".getBytes());
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadUnsupportedVersion() throws IOException {
+    new ArtifactIndex("", "# ivysvn artifact index 1\norg/module/1.0/ivy.xml\t100\t1000\tchecksum1\n".getBytes());
+  }
+
+  private List<String> names(FolderListing listing) {
+    List<String> names = new ArrayList<String>();
+    for (ResourceMetadata entry : listing.getEntries()) {
+      names.add(entry.getName());
+    }
+    return names;
+  }
+
+  private List<String> names(String... names) {
+    List<String> list = new ArrayList<String>();
+    for (String name : names) {
+      list.add(name);
+    }
+    return list;
+  }
+
+}
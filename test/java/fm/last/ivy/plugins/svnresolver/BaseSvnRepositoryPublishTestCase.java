@@ -26,6 +26,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.ivy.ant.IvyPublish;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNURL;
 
@@ -184,4 +185,16 @@ public abstract class BaseSvnRepositoryPublishTestCase extends BaseIvyTestCase {
         + artifactFileName + ".md5", -1));
   }
 
+  /**
+   * Creates an IvyPublish object for revision 1.0 with overwrite set to true and a fixed publication date, so that
+   * publishing the same artifacts again publishes an identical ivy file.
+   * 
+   * @return An IvyPublish object.
+   */
+  protected IvyPublish createFixedDateIvyPublish() {
+    IvyPublish ivyPublish = createIvyPublish("1.0", true);
+    ivyPublish.setPubdate("20080101000000");
+    return ivyPublish;
+  }
+
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Unit test case for the ChecksumCache.
+ */
+public class ChecksumCacheTest {
+
+  private static final String FOLDER = "svn://host/ivy/org/module/1.0";
+
+  private static final String ARTIFACT = FOLDER + "/module.jar";
+
+  @Test
+  public void testChecksumServedOnceContentsMatch() {
+    ChecksumCache cache = new ChecksumCache(10);
+    cache.putPublished(ARTIFACT, "sha1", "md5");
+    assertNull(cache.getChecksum(ARTIFACT + ".sha1")); // not downloaded yet
+    cache.putDownloaded(ARTIFACT, "md5");
+    assertEquals("sha1", cache.getChecksum(ARTIFACT + ".sha1"));
+    assertEquals("md5", cache.getChecksum(ARTIFACT + ".md5"));
+    assertNull(cache.getChecksum(ARTIFACT));
+    assertNull(cache.getChecksum(FOLDER + "/other.jar.sha1"));
+  }
+
+  @Test
+  public void testChecksumNotServedIfContentsChanged() {
+    ChecksumCache cache = new ChecksumCache(10);
+    cache.putPublished(ARTIFACT, "sha1", "md5");
+    cache.putDownloaded(ARTIFACT, "changed");
+    assertNull(cache.getChecksum(ARTIFACT + ".sha1"));
+    cache.clear();
+    cache.putDownloaded(ARTIFACT, "md5");
+    assertNull(cache.getChecksum(ARTIFACT + ".sha1"));
+  }
+
+  @Test
+  public void testPublishedFolder() {
+    ChecksumCache cache = new ChecksumCache(10);
+    cache.putPublishedFolder(FOLDER, "ivy.xml isha1 imd5\nmodule.jar sha1 md5\nmalformed\n");
+    cache.putDownloaded(ARTIFACT, "md5");
+    assertEquals("sha1", cache.getChecksum(ARTIFACT + ".sha1"));
+    cache.putPublishedFolder(FOLDER, null);
+    assertEquals("sha1", cache.getChecksum(ARTIFACT + ".sha1"));
+  }
+
+  @Test
+  public void testFormatAndParseProperty() {
+    Map<String, String[]> checksums = new LinkedHashMap<String, String[]>();
+    checksums.put("ivy.xml", new String[] { "isha1", "imd5" });
+    checksums.put("module.jar", new String[] { "sha1", "md5" });
+    Map<String, String[]> parsed = ChecksumCache.parseProperty(ChecksumCache.formatProperty(checksums));
+    assertEquals(checksums.keySet(), parsed.keySet());
+    assertArrayEquals(checksums.get("module.jar"), parsed.get("module.jar"));
+    assertEquals(0, ChecksumCache.parseProperty(null).size());
+  }
+
+}
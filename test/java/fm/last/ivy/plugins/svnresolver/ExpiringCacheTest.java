@@ -0,0 +1,72 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Unit test case for the ExpiringCache.
+ */
+public class ExpiringCacheTest {
+
+  @Test
+  public void testLeastRecentlyUsedEvicted() {
+    ExpiringCache<String> cache = new ExpiringCache<String>(2, 0);
+    cache.put("a", "1");
+    cache.put("b", "2");
+    assertEquals("1", cache.get("a"));
+    cache.put("c", "3");
+    assertNull(cache.get("b"));
+    assertEquals("1", cache.get("a"));
+    assertEquals("3", cache.get("c"));
+    assertEquals(2, cache.size());
+    assertEquals(3, cache.getHits());
+    assertEquals(1, cache.getMisses());
+    assertEquals(1, cache.getEvictions());
+  }
+
+  @Test
+  public void testExpiredValuesEvicted() throws InterruptedException {
+    ExpiringCache<String> cache = new ExpiringCache<String>(10, 20);
+    cache.put("a", "1");
+    cache.put("b", "2");
+    Thread.sleep(50);
+    assertNull(cache.get("a"));
+    assertEquals("3", cache.putIfAbsent("a", "3"));
+    cache.purge();
+    assertEquals(1, cache.size());
+    assertEquals("3", cache.putIfAbsent("a", "4"));
+    assertEquals(2, cache.getEvictions());
+  }
+
+  @Test
+  public void testClear() {
+    ExpiringCache<String> cache = new ExpiringCache<String>(10, 0);
+    cache.put("a", "1");
+    cache.clear();
+    assertNull(cache.get("a"));
+    assertEquals(0, cache.getEvictions());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidSize() {
+    new ExpiringCache<String>(0, 0);
+  }
+
+}
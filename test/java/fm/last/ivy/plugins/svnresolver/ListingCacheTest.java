@@ -0,0 +1,88 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test case for the ListingCache.
+ */
+public class ListingCacheTest {
+
+  private static final List<String> LISTING = Arrays.asList("a", "b");
+
+  private ListingCache cache;
+
+  @Before
+  public void setUp() {
+    cache = new ListingCache();
+    cache.reset(10);
+    cache.put("/", LISTING, 10);
+    cache.put("/ivy", LISTING, 10);
+    cache.put("/ivy/org", LISTING, 10);
+    cache.put("/ivy/org/module", LISTING, 10);
+    cache.put("/ivy/other", LISTING, 10);
+  }
+
+  @Test
+  public void testGetAtOtherRevision() {
+    assertEquals(LISTING, cache.get("/ivy", 10));
+    assertNull(cache.get("/ivy", 9));
+    cache.put("/ivy/extra", LISTING, 9);
+    assertNull(cache.get("/ivy/extra", 10));
+  }
+
+  @Test
+  public void testUpdateInvalidatesParent() {
+    cache.update(11, Collections.singletonList("/ivy/org/module/1.0"));
+    assertEquals(11, cache.getRevision());
+    assertNull(cache.get("/ivy/org/module", 11));
+    assertEquals(LISTING, cache.get("/ivy/org", 11));
+    assertEquals(LISTING, cache.get("/ivy/other", 11));
+  }
+
+  @Test
+  public void testUpdateInvalidatesFolderAndChildren() {
+    cache.update(11, Collections.singletonList("/ivy/org"));
+    assertNull(cache.get("/ivy", 11));
+    assertNull(cache.get("/ivy/org", 11));
+    assertNull(cache.get("/ivy/org/module", 11));
+    assertEquals(LISTING, cache.get("/", 11));
+    assertEquals(LISTING, cache.get("/ivy/other", 11));
+  }
+
+  @Test
+  public void testUpdateAtTopLevel() {
+    cache.update(11, Collections.singletonList("/ivy"));
+    assertNull(cache.get("/", 11));
+    assertNull(cache.get("/ivy/other", 11));
+  }
+
+  @Test
+  public void testReset() {
+    cache.reset(20);
+    assertNull(cache.get("/", 20));
+  }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNNodeKind;
+
+/**
+ * Unit test case for the MetadataStore.
+ */
+public class MetadataStoreTest extends BaseTestCase {
+
+  private File storeFile = new File(testTempFolder, "store/r1.metadata");
+
+  private ResourceMetadata file(String name, long size) {
+    return new ResourceMetadata(name, SVNNodeKind.FILE, size, 1234L, "checksum-" + name);
+  }
+
+  @Test
+  public void testPutAndGetResource() throws IOException {
+    MetadataStore store = MetadataStore.open(storeFile);
+    try {
+      assertNull(store.getResource("/ivy/org/module/1.0/ivy.xml"));
+      store.putResource("/ivy/org/module/1.0/ivy.xml", file("ivy.xml", 10));
+      store.putResource("/ivy/org/module/1.0/missing.jar", ResourceMetadata.missing("missing.jar"));
+      assertEquals(file("ivy.xml", 10), store.getResource("/ivy/org/module/1.0/ivy.xml"));
+      assertFalse(store.getResource("/ivy/org/module/1.0/missing.jar").exists());
+      store.putResource("/ivy/org/module/1.0/ivy.xml", file("ivy.xml", 20));
+      assertEquals(file("ivy.xml", 20), store.getResource("/ivy/org/module/1.0/ivy.xml"));
+    } finally {
+      store.close();
+    }
+  }
+
+  @Test
+  public void testPutAndGetListing() throws IOException {
+    MetadataStore store = MetadataStore.open(storeFile);
+    try {
+      List<ResourceMetadata> entries = new ArrayList<ResourceMetadata>();
+      entries.add(file("b.jar", 2));
+      entries.add(file("a.jar", 1));
+      entries.add(new ResourceMetadata("folder", SVNNodeKind.DIR, 0, 5678L, null));
+      store.putListing("/ivy/org/module", new FolderListing(entries));
+      store.putListing("/ivy/org/missing", new FolderListing(null));
+      FolderListing listing = store.getListing("/ivy/org/module");
+      assertTrue(listing.exists());
+      Iterator<ResourceMetadata> iterator = listing.getEntries().iterator();
+      for (ResourceMetadata entry : entries) {
+        assertEquals(entry, iterator.next());
+      }
+      assertFalse(iterator.hasNext());
+      assertFalse(store.getListing("/ivy/org/missing").exists());
+      assertNull(store.getListing("/ivy/org"));
+    } finally {
+      store.close();
+    }
+  }
+
+  @Test
+  public void testReopen() throws IOException {
+    MetadataStore store = MetadataStore.open(storeFile);
+    for (int i = 0; i < 5000; i++) { // enough to grow both the index and the mapped file
+      store.putResource("/ivy/org/module/" + i + "/ivy.xml", file("ivy.xml", i));
+    }
+    store.close();
+    store = MetadataStore.open(storeFile);
+    try {
+      for (int i = 0; i < 5000; i++) {
+        assertEquals(file("ivy.xml", i), store.getResource("/ivy/org/module/" + i + "/ivy.xml"));
+      }
+    } finally {
+      store.close();
+    }
+  }
+
+  @Test
+  public void testLeastRecentlyUsedStoreIsClosed() throws IOException {
+    MetadataStore store = MetadataStore.open(storeFile);
+    store.putResource("/ivy/a.jar", file("a.jar", 1));
+    List<MetadataStore> others = new ArrayList<MetadataStore>();
+    try {
+      for (int i = 2; i <= 5; i++) {
+        others.add(MetadataStore.open(new File(testTempFolder, "store/r" + i + ".metadata")));
+      }
+      // closed, so behaves as an empty read-only store
+      assertNull(store.getResource("/ivy/a.jar"));
+      store.putResource("/ivy/b.jar", file("b.jar", 2));
+      assertNull(store.getResource("/ivy/b.jar"));
+      MetadataStore reopened = MetadataStore.open(storeFile);
+      others.add(reopened);
+      assertEquals(file("a.jar", 1), reopened.getResource("/ivy/a.jar"));
+    } finally {
+      for (MetadataStore other : others) {
+        other.close();
+      }
+    }
+  }
+
+  @Test
+  public void testCachePrunesOldRevisions() throws IOException {
+    MetadataCache cache = new MetadataCache(new File(testTempFolder, "cache"), 2);
+    File repositoryDirectory = new File(testTempFolder, "cache/uuid");
+    for (long revision = 1; revision <= 3; revision++) {
+      cache.getStore("uuid", revision).putResource("/ivy/a.jar", file("a.jar", revision));
+    }
+    try {
+      assertFalse(new File(repositoryDirectory, "r1.metadata").exists());
+      assertTrue(new File(repositoryDirectory, "r2.metadata").exists());
+      assertTrue(new File(repositoryDirectory, "r3.metadata").exists());
+      // an old revision in use is kept alongside the latest revisions
+      cache.getStore("uuid", 1);
+      assertTrue(new File(repositoryDirectory, "r1.metadata").exists());
+      assertTrue(new File(repositoryDirectory, "r3.metadata").exists());
+    } finally {
+      for (long revision = 1; revision <= 3; revision++) {
+        MetadataStore.delete(new File(repositoryDirectory, "r" + revision + ".metadata"));
+      }
+    }
+  }
+
+  @Test
+  public void testTruncatedRecordIsDiscarded() throws IOException {
+    MetadataStore store = MetadataStore.open(storeFile);
+    store.putResource("/ivy/a.jar", file("a.jar", 1));
+    store.putResource("/ivy/b.jar", file("b.jar", 2));
+    store.close();
+    RandomAccessFile file = new RandomAccessFile(storeFile, "rw");
+    try { // point the end of the data into the middle of the last record, as if the writer died
+      file.seek(8);
+      int end = file.readInt();
+      file.seek(8);
+      file.writeInt(end - 3);
+    } finally {
+      file.close();
+    }
+    store = MetadataStore.open(storeFile);
+    try {
+      assertEquals(file("a.jar", 1), store.getResource("/ivy/a.jar"));
+      assertNull(store.getResource("/ivy/b.jar"));
+      store.putResource("/ivy/b.jar", file("b.jar", 2));
+      assertEquals(file("b.jar", 2), store.getResource("/ivy/b.jar"));
+    } finally {
+      store.close();
+    }
+  }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit test case for the NegativeCache.
+ */
+public class NegativeCacheTest {
+
+  private static final String FOLDER = "svn://host/ivy/org/module/1.0";
+
+  @Test
+  public void testFolderListing() {
+    NegativeCache cache = new NegativeCache(10, 0);
+    cache.putFolder(FOLDER, Arrays.asList("ivy.xml", "module.jar"), 5);
+    assertTrue(cache.isMissing(FOLDER, "module-sources.jar", 5));
+    assertFalse(cache.isMissing(FOLDER, "module.jar", 5));
+    assertFalse(cache.isMissing(FOLDER, "module-sources.jar", 6));
+    assertFalse(cache.isMissing(FOLDER + "/other", "module-sources.jar", 5));
+  }
+
+  @Test
+  public void testMissingFolder() {
+    NegativeCache cache = new NegativeCache(10, 0);
+    cache.putFolder(FOLDER, Collections.<String> emptyList(), 5);
+    assertTrue(cache.isMissing(FOLDER, "ivy.xml", 5));
+  }
+
+  @Test
+  public void testMissingResource() {
+    NegativeCache cache = new NegativeCache(10, 0);
+    cache.putMissing(FOLDER + "/module-javadoc.jar", 5);
+    assertTrue(cache.isMissing(FOLDER, "module-javadoc.jar", 5));
+    assertFalse(cache.isMissing(FOLDER, "module.jar", 5));
+    cache.clear();
+    assertFalse(cache.isMissing(FOLDER, "module-javadoc.jar", 5));
+  }
+
+  @Test
+  public void testHeadResultsExpire() throws InterruptedException {
+    NegativeCache cache = new NegativeCache(10, 20);
+    cache.putMissing(FOLDER + "/module-javadoc.jar", -1);
+    assertTrue(cache.isMissing(FOLDER, "module-javadoc.jar", -1));
+    Thread.sleep(50);
+    assertFalse(cache.isMissing(FOLDER, "module-javadoc.jar", -1));
+
+    NegativeCache disabled = new NegativeCache(10, 0);
+    disabled.putMissing(FOLDER + "/module-javadoc.jar", -1);
+    assertFalse(disabled.isMissing(FOLDER, "module-javadoc.jar", -1));
+  }
+
+  @Test
+  public void testBloomFilterFalsePositiveRate() {
+    List<String> names = new ArrayList<String>();
+    for (int i = 0; i < 1000; i++) {
+      names.add("artifact-" + i + ".jar");
+    }
+    BloomFilter filter = new BloomFilter(names);
+    for (String name : names) {
+      assertTrue(filter.mightContain(name));
+    }
+    int falsePositives = 0;
+    for (int i = 0; i < 10000; i++) {
+      if (filter.mightContain("missing-" + i + ".jar")) {
+        falsePositives++;
+      }
+    }
+    assertTrue("False positives: " + falsePositives, falsePositives < 300);
+  }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test case for the PutOperation.
+ */
+public class PutOperationTest {
+
+  private static final byte[] DATA = "artifact data".getBytes();
+
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("ivytemp", ".jar");
+    FileUtils.writeByteArrayToFile(file, DATA);
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Test
+  public void testStreamsFileData() throws IOException {
+    PutOperation operation = new PutOperation(file, "org/module/1.0/module.jar", true);
+    assertEquals("org/module/1.0", operation.getFolderPath());
+    assertEquals("module.jar", operation.getFileName());
+    assertEquals(DATA.length, operation.getLength());
+    InputStream data = operation.openData();
+    try {
+      assertArrayEquals(DATA, IOUtils.toByteArray(data));
+    } finally {
+      data.close();
+    }
+    assertArrayEquals(new String[] {SvnUtils.computeChecksum(DATA, "SHA-1"), SvnUtils.computeChecksum(DATA)},
+        operation.getChecksums());
+  }
+
+  @Test
+  public void testTemporaryFileCopied() throws IOException {
+    PutOperation operation = new PutOperation(file, "org/module/1.0/module.jar.sha1", true);
+    assertTrue(file.delete()); // ivy deletes its temporary files before the transaction is committed
+    assertEquals(DATA.length, operation.getLength());
+    InputStream data = operation.openData();
+    try {
+      assertArrayEquals(DATA, IOUtils.toByteArray(data));
+    } finally {
+      data.close();
+    }
+    operation.dispose();
+    try {
+      operation.openData();
+      fail("Expected copy to have been deleted");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+
+/**
+ * Unit test case for the RetryPolicy.
+ */
+public class RetryPolicyTest {
+
+  private RetryPolicy policy;
+
+  private SVNURL url;
+
+  @Before
+  public void setUp() throws SVNException {
+    policy = new RetryPolicy();
+    policy.setBackoff(0);
+    url = SVNURL.parseURIEncoded("svn://retry.example.com/repo");
+  }
+
+  @After
+  public void resetCircuitBreakers() {
+    RetryPolicy.resetCircuitBreakers();
+  }
+
+  @Test
+  public void testTransientErrorRetried() throws Exception {
+    FailingCall call = new FailingCall(2, SVNErrorCode.RA_SVN_CONNECTION_CLOSED);
+    assertEquals("done", policy.execute(url, call));
+    assertEquals(3, call.calls);
+  }
+
+  @Test
+  public void testTransientErrorFailsAfterAttempts() throws Exception {
+    FailingCall call = new FailingCall(10, SVNErrorCode.RA_DAV_REQUEST_FAILED);
+    try {
+      policy.execute(url, call);
+      fail("Expected call to fail");
+    } catch (SVNException e) {
+      assertEquals(SVNErrorCode.RA_DAV_REQUEST_FAILED, e.getErrorMessage().getErrorCode());
+      assertTrue(RetryPolicy.isUnreachable(e));
+    }
+    assertEquals(RetryPolicy.DEFAULT_ATTEMPTS, call.calls);
+  }
+
+  @Test
+  public void testOtherErrorNotRetried() throws Exception {
+    FailingCall call = new FailingCall(1, SVNErrorCode.FS_NOT_FOUND);
+    try {
+      policy.execute(url, call);
+      fail("Expected call to fail");
+    } catch (SVNException e) {
+      assertEquals(SVNErrorCode.FS_NOT_FOUND, e.getErrorMessage().getErrorCode());
+      assertFalse(RetryPolicy.isUnreachable(e));
+    }
+    assertEquals(1, call.calls);
+  }
+
+  @Test
+  public void testNoRetry() throws Exception {
+    FailingCall call = new FailingCall(1, SVNErrorCode.RA_SVN_IO_ERROR);
+    try {
+      policy.execute(url, call, false);
+      fail("Expected call to fail");
+    } catch (SVNException e) {
+      // expected
+    }
+    assertEquals(1, call.calls);
+  }
+
+  @Test
+  public void testCircuitBreakerOpens() throws Exception {
+    policy.setAttempts(1);
+    policy.setFailureThreshold(2);
+    for (int i = 0; i < 2; i++) {
+      try {
+        policy.execute(url, new FailingCall(1, SVNErrorCode.RA_SVN_IO_ERROR));
+        fail("Expected call to fail");
+      } catch (SVNException e) {
+        // expected
+      }
+    }
+    FailingCall call = new FailingCall(0, null);
+    try {
+      policy.execute(url, call);
+      fail("Expected call to fail fast");
+    } catch (SVNException e) {
+      assertFalse(RetryPolicy.isRetryable(e));
+      assertTrue(RetryPolicy.isUnreachable(e));
+    }
+    assertEquals(0, call.calls);
+    // other hosts are unaffected
+    assertEquals("done", policy.execute(SVNURL.parseURIEncoded("svn://other.example.com/repo"), call));
+  }
+
+  @Test
+  public void testCircuitBreakerCloses() throws Exception {
+    policy.setAttempts(1);
+    policy.setFailureThreshold(1);
+    policy.setOpenTime(0);
+    try {
+      policy.execute(url, new FailingCall(1, SVNErrorCode.RA_SVN_IO_ERROR));
+      fail("Expected call to fail");
+    } catch (SVNException e) {
+      // expected
+    }
+    FailingCall call = new FailingCall(0, null);
+    assertEquals("done", policy.execute(url, call)); // let through to test the host
+    assertEquals("done", policy.execute(url, call));
+    assertEquals(2, call.calls);
+  }
+
+  @Test
+  public void testBackoff() {
+    policy.setBackoff(100);
+    for (int attempt = 1; attempt <= 3; attempt++) {
+      long backoff = policy.getBackoff(attempt);
+      long exponential = 100 << (attempt - 1);
+      assertTrue(backoff >= exponential / 2 && backoff <= exponential);
+    }
+  }
+
+  /**
+   * Call which fails a number of times before succeeding.
+   */
+  private static class FailingCall implements RetryPolicy.RemoteCall<String> {
+    private final int failures;
+    private final SVNErrorCode errorCode;
+    private int calls = 0;
+
+    private FailingCall(int failures, SVNErrorCode errorCode) {
+      this.failures = failures;
+      this.errorCode = errorCode;
+    }
+
+    public String call() throws SVNException, IOException {
+      calls++;
+      if (calls <= failures) {
+        throw new SVNException(SVNErrorMessage.create(errorCode, "failure " + calls));
+      }
+      return "done";
+    }
+  }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+/**
+ * Unit test case for the SVNRepositoryCache.
+ */
+public class SVNRepositoryCacheTest extends BaseTestCase {
+
+  private SVNRepositoryCache cache = SVNRepositoryCache.getInstance();
+
+  @After
+  public void resetCache() {
+    cache.clear();
+    cache.setBorrowTimeout(SVNRepositoryCache.DEFAULT_BORROW_TIMEOUT);
+    SvnUtils.setConnectTimeout(0);
+    SvnUtils.setReadTimeout(0);
+  }
+
+  private SVNRepository borrow(SVNURL url, String user) throws SVNException {
+    return cache.borrowRepository(url, user, svnPassword, null, null, -1, null, null, false);
+  }
+
+  private SVNRepository borrow(SVNURL url, String user, int maxConnectionsPerHost, long idleTimeout)
+    throws SVNException {
+    return cache.borrowRepository(url, user, svnPassword, null, null, -1, null, null, false, maxConnectionsPerHost,
+        idleTimeout);
+  }
+
+  @Test
+  public void testReturnedRepositoryIsReused() throws SVNException {
+    SVNRepository first = borrow(ivyRepositoryRootURL, svnUserName);
+    cache.returnRepository(first);
+    SVNURL otherURL = ivyRepositoryRootURL.appendPath(TEST_PATH, false);
+    SVNRepository second = borrow(otherURL, svnUserName);
+    assertSame(first, second);
+    assertEquals(otherURL, second.getLocation());
+    cache.returnRepository(second);
+  }
+
+  @Test
+  public void testConcurrentBorrowsGetDistinctRepositories() throws SVNException {
+    SVNRepository first = borrow(ivyRepositoryRootURL, svnUserName);
+    SVNRepository second = borrow(ivyRepositoryRootURL, svnUserName);
+    assertNotSame(first, second);
+    cache.returnRepository(first);
+    cache.returnRepository(second);
+  }
+
+  @Test
+  public void testDifferentCredentialsGetDifferentRepositories() throws SVNException {
+    SVNRepository first = borrow(ivyRepositoryRootURL, svnUserName);
+    cache.returnRepository(first);
+    SVNRepository second = borrow(ivyRepositoryRootURL, svnUserName + "-other");
+    assertNotSame(first, second);
+    cache.returnRepository(second);
+  }
+
+  @Test
+  public void testDifferentPasswordsGetDifferentRepositories() throws SVNException {
+    SVNRepository first = borrow(ivyRepositoryRootURL, svnUserName);
+    cache.returnRepository(first);
+    SVNRepository second = cache.borrowRepository(ivyRepositoryRootURL, svnUserName, svnPassword + "-other", null,
+        null, -1, null, null, false);
+    assertNotSame(first, second);
+    cache.returnRepository(second);
+  }
+
+  @Test
+  public void testMaxConnectionsPerHost() throws SVNException {
+    cache.setBorrowTimeout(100);
+    SVNRepository first = borrow(ivyRepositoryRootURL, svnUserName, 1, SVNRepositoryCache.DEFAULT_IDLE_TIMEOUT);
+    try {
+      borrow(ivyRepositoryRootURL, svnUserName, 1, SVNRepositoryCache.DEFAULT_IDLE_TIMEOUT);
+      Assert.fail("Expected borrow to time out");
+    } catch (SVNException e) {
+      // expected
+    }
+    // another borrower's limit is its own
+    SVNRepository other = borrow(ivyRepositoryRootURL, svnUserName, 2, SVNRepositoryCache.DEFAULT_IDLE_TIMEOUT);
+    cache.returnRepository(other);
+    cache.returnRepository(first);
+    // an idle repository for other credentials is closed to make room
+    cache.setBorrowTimeout(SVNRepositoryCache.DEFAULT_BORROW_TIMEOUT);
+    SVNRepository second = borrow(ivyRepositoryRootURL, svnUserName + "-other", 1,
+        SVNRepositoryCache.DEFAULT_IDLE_TIMEOUT);
+    assertNotSame(first, second);
+    cache.returnRepository(second);
+  }
+
+  @Test
+  public void testIdleRepositoriesAreEvicted() throws SVNException {
+    SVNRepository first = borrow(ivyRepositoryRootURL, svnUserName, SVNRepositoryCache.DEFAULT_MAX_CONNECTIONS_PER_HOST,
+        -1);
+    cache.returnRepository(first);
+    SVNRepository second = borrow(ivyRepositoryRootURL, svnUserName);
+    assertNotSame(first, second);
+    cache.returnRepository(second);
+  }
+
+  @Test
+  public void testTimeoutsSuppliedToTransport() throws SVNException {
+    SVNRepository repository = borrow(ivyRepositoryRootURL, svnUserName);
+    SvnUtils.setConnectTimeout(1000);
+    SvnUtils.setReadTimeout(2000);
+    // pooled repositories pick up the timeouts the next time they connect
+    assertEquals(1000, repository.getAuthenticationManager().getConnectTimeout(repository));
+    assertEquals(2000, repository.getAuthenticationManager().getReadTimeout(repository));
+    cache.returnRepository(repository);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testReturnUnknownRepository() throws SVNException {
+    cache.returnRepository(SvnUtils.createRepository(ivyRepositoryRootURL, svnUserName, svnPassword, null, null, -1,
+        null, null, false));
+  }
+
+}
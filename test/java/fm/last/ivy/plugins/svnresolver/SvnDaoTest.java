@@ -17,15 +17,25 @@ package fm.last.ivy.plugins.svnresolver;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
 import org.junit.Test;
+import org.tmatesoft.svn.core.SVNDirEntry;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNProperty;
 import org.tmatesoft.svn.core.SVNURL;
 import org.tmatesoft.svn.core.io.ISVNEditor;
 
@@ -130,6 +140,57 @@ public class SvnDaoTest extends BaseTestCase {
     assertEquals(modifiedTestData, FileUtils.readFileToString(retrieved));
   }
 
+  @Test
+  public void testPutFile_SendDeltas() throws SVNException, IOException {
+    ISVNEditor commitEditor = getCommitEditor();
+    String fileName = "testPutFileDelta.txt";
+    svnDAO.createFolders(commitEditor, TEST_PATH, -1);
+    svnDAO.putFile(commitEditor, "test data".getBytes(), TEST_PATH, fileName, false);
+    commitEditor.closeEdit();
+
+    ContentStore store = new ContentStore(new File(testTempFolder, "store"));
+    svnDAO.setSendDeltas(true, store);
+    SVNURL sourceURL = SVNURL.parseURIEncoded(ivyRepositoryRoot + "/" + TEST_PATH + "/" + fileName);
+    // first overwrite fetches the current contents, second reads them from the store
+    String[] modifiedTestData = { "test data-modified", "test data-modified again" };
+    for (int i = 0; i < modifiedTestData.length; i++) {
+      commitEditor = getCommitEditor();
+      svnDAO.putFile(commitEditor, modifiedTestData[i].getBytes(), TEST_PATH, fileName, true);
+      commitEditor.closeEdit();
+      File retrieved = new File(testTempFolder, "retrieved" + i + ".txt");
+      svnDAO.getFile(sourceURL, retrieved, -1);
+      assertEquals(modifiedTestData[i], FileUtils.readFileToString(retrieved));
+    }
+    // the original contents were stored as the base of the first delta
+    File original = new File(testTempFolder, "original.txt");
+    FileUtils.writeStringToFile(original, "test data");
+    InputStream stored = store.open(SvnUtils.computeChecksums(original)[1]);
+    assertNotNull(stored);
+    stored.close();
+  }
+
+  @Test
+  public void testPutFile_SendDeltasBaseUnreadable() throws SVNException, IOException {
+    ISVNEditor commitEditor = getCommitEditor();
+    String fileName = "testPutFileDeltaBase.txt";
+    svnDAO.createFolders(commitEditor, TEST_PATH, -1);
+    svnDAO.putFile(commitEditor, "test data".getBytes(), TEST_PATH, fileName, false);
+    commitEditor.closeEdit();
+
+    svnDAO.setSendDeltas(true, null);
+    String filePath = TEST_PATH + "/" + fileName;
+    byte[] data = "test data-modified".getBytes();
+    String[] checksums = new String[] {SvnUtils.computeChecksum(data, "SHA-1"), SvnUtils.computeChecksum(data)};
+    commitEditor = getCommitEditor();
+    // the base revision doesn't exist, so the full contents are sent
+    svnDAO.putCopiedFile(commitEditor, new ByteArrayInputStream(data), data.length, checksums, filePath, filePath,
+        readRepository.getLatestRevision() + 100);
+    commitEditor.closeEdit();
+    File retrieved = new File(testTempFolder, "retrieved.txt");
+    svnDAO.getFile(SVNURL.parseURIEncoded(ivyRepositoryRoot + "/" + filePath), retrieved, -1);
+    assertEquals("test data-modified", FileUtils.readFileToString(retrieved));
+  }
+
   /**
    * Tests creating a file under a path that does not exist in repository, intermediate folders should be created.
    * 
@@ -180,4 +241,139 @@ public class SvnDaoTest extends BaseTestCase {
     assertTrue(contents.contains("subfolder"));
   }
 
+  @Test
+  public void testGetFile_ReturnsEntryProperties() throws SVNException, IOException {
+    String fileName = "testGetFile.txt";
+    ISVNEditor commitEditor = getCommitEditor();
+    svnDAO.createFolders(commitEditor, TEST_PATH, -1);
+    svnDAO.putFile(commitEditor, "test data".getBytes(), TEST_PATH, fileName, false);
+    commitEditor.closeEdit();
+
+    SVNURL sourceURL = SVNURL.parseURIEncoded(ivyRepositoryRoot + "/" + TEST_PATH + "/" + fileName);
+    SVNProperties properties = svnDAO.getFile(sourceURL, new File(testTempFolder, fileName), -1);
+    assertNotNull(properties.getStringValue(SVNProperty.COMMITTED_DATE));
+  }
+
+  @Test
+  public void testGetFile_Missing() throws SVNException {
+    File retrieved = new File(testTempFolder, "missing.txt");
+    SVNURL sourceURL = SVNURL.parseURIEncoded(ivyRepositoryRoot + "/" + TEST_PATH + "/missing.txt");
+    try {
+      svnDAO.getFile(sourceURL, retrieved, -1);
+      Assert.fail("Expected IOException for missing file");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("There is no entry"));
+    }
+    assertFalse(retrieved.exists());
+  }
+
+  @Test
+  public void testGetFile_ExpectedLengthWrong() throws SVNException, IOException {
+    String fileName = "testGetFile.txt";
+    ISVNEditor commitEditor = getCommitEditor();
+    svnDAO.createFolders(commitEditor, TEST_PATH, -1);
+    svnDAO.putFile(commitEditor, "test data".getBytes(), TEST_PATH, fileName, false);
+    commitEditor.closeEdit();
+
+    SVNURL sourceURL = SVNURL.parseURIEncoded(ivyRepositoryRoot + "/" + TEST_PATH + "/" + fileName);
+    File retrieved = new File(testTempFolder, fileName);
+    svnDAO.getFile(sourceURL, retrieved, -1, 1000);
+    assertEquals("test data", FileUtils.readFileToString(retrieved));
+    svnDAO.getFile(sourceURL, retrieved, -1, 2);
+    assertEquals("test data", FileUtils.readFileToString(retrieved));
+  }
+
+  @Test
+  public void testGetFile_MissingKeepsExistingFile() throws SVNException, IOException {
+    File retrieved = new File(testTempFolder, "missing.txt");
+    FileUtils.writeStringToFile(retrieved, "existing");
+    SVNURL sourceURL = SVNURL.parseURIEncoded(ivyRepositoryRoot + "/" + TEST_PATH + "/missing.txt");
+    try {
+      svnDAO.getFile(sourceURL, retrieved, -1);
+      Assert.fail("Expected IOException for missing file");
+    } catch (IOException e) {
+      // expected
+    }
+    assertEquals("existing", FileUtils.readFileToString(retrieved));
+    assertEquals(1, testTempFolder.list().length); // no partial file left behind
+  }
+
+  @Test
+  public void testGetFile_Folder() throws SVNException {
+    ISVNEditor commitEditor = getCommitEditor();
+    svnDAO.createFolders(commitEditor, TEST_PATH + "/folder", -1);
+    commitEditor.closeEdit();
+    File retrieved = new File(testTempFolder, "folder");
+    SVNURL sourceURL = SVNURL.parseURIEncoded(ivyRepositoryRoot + "/" + TEST_PATH + "/folder");
+    try {
+      svnDAO.getFile(sourceURL, retrieved, -1);
+      Assert.fail("Expected IOException for folder");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("expected file"));
+    }
+    assertFalse(retrieved.exists());
+  }
+
+  @Test
+  public void testGetEntries() throws SVNException {
+    String destinationPath = TEST_PATH + "/testGetEntries";
+    assertNull(svnDAO.getEntries(destinationPath, -1));
+    ISVNEditor commitEditor = getCommitEditor();
+    svnDAO.createFolders(commitEditor, destinationPath, -1);
+    svnDAO.putFile(commitEditor, "test data".getBytes(), destinationPath, "file1.txt", false);
+    commitEditor.closeEdit();
+    List<SVNDirEntry> entries = svnDAO.getEntries(destinationPath, -1);
+    assertEquals(1, entries.size());
+    assertEquals("file1.txt", entries.get(0).getName());
+    assertEquals(SVNNodeKind.FILE, entries.get(0).getKind());
+    assertEquals(9, entries.get(0).getSize());
+    assertNotNull(entries.get(0).getDate());
+    assertNull(svnDAO.getEntries(destinationPath + "/file1.txt", -1));
+  }
+
+  @Test
+  public void testPrefetchFolders() throws SVNException {
+    String destinationPath = TEST_PATH + "/prefetch";
+    ISVNEditor commitEditor = getCommitEditor();
+    svnDAO.createFolders(commitEditor, destinationPath, -1);
+    svnDAO.putFile(commitEditor, "test data".getBytes(), destinationPath, "file1.txt", false);
+    commitEditor.closeEdit();
+
+    svnDAO.prefetchFolders(Arrays.asList(destinationPath, destinationPath + "/missing/sub"), -1);
+    // change the folder behind the DAO's back, the prefetched listings should still be used
+    commitEditor = getCommitEditor();
+    svnDAO.putFile(commitEditor, "test data".getBytes(), destinationPath, "file2.txt", false);
+    commitEditor.closeEdit();
+    assertTrue(svnDAO.fileExists(destinationPath + "/file1.txt", -1));
+    assertFalse(svnDAO.fileExists(destinationPath + "/file2.txt", -1));
+    assertEquals(Arrays.asList("file1.txt"), svnDAO.list(destinationPath, -1));
+    assertTrue(svnDAO.folderExists(TEST_PATH, -1, false));
+    assertFalse(svnDAO.folderExists(destinationPath + "/missing", -1, false));
+    assertFalse(svnDAO.folderExists(destinationPath + "/missing/sub", -1, false));
+    assertNull(svnDAO.getFolderProperty(destinationPath, SvnDao.PROPERTY_CHECKSUMS, -1));
+
+    svnDAO.clearPrefetchedFolders();
+    assertTrue(svnDAO.fileExists(destinationPath + "/file2.txt", -1));
+    assertEquals(2, svnDAO.list(destinationPath, -1).size());
+  }
+
+  @Test
+  public void testGetFileKeepsSessionRoot() throws SVNException, IOException {
+    ISVNEditor commitEditor = getCommitEditor();
+    svnDAO.createFolders(commitEditor, TEST_PATH, -1);
+    svnDAO.putFile(commitEditor, "test data".getBytes(), TEST_PATH, "file1.txt", false);
+    commitEditor.closeEdit();
+    SVNURL sessionRoot = readRepository.getLocation();
+    SVNURL fileURL = ivyRepositoryRootURL.appendPath(TEST_PATH + "/file1.txt", false);
+    svnDAO.getFileProperties(fileURL, -1);
+    assertEquals(sessionRoot, readRepository.getLocation());
+    // a DAO rooted elsewhere moves the repository for the request and then back again
+    SVNURL otherRoot = ivyRepositoryRootURL.appendPath(TEST_PATH + "/other", false);
+    readRepository.setLocation(otherRoot, false);
+    new SvnDao(readRepository).getFileProperties(fileURL, -1);
+    assertEquals(otherRoot, readRepository.getLocation());
+    readRepository.setLocation(sessionRoot, false);
+    assertTrue(svnDAO.fileExists(TEST_PATH + "/file1.txt", -1));
+  }
+
 }
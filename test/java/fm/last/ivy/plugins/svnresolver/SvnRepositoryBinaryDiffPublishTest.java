@@ -84,6 +84,62 @@ public class SvnRepositoryBinaryDiffPublishTest extends BaseSvnRepositoryPublish
     assertPublish("1.0", fileContents2, true); // overwrite was true so defaultFileContents should be overwritten
   }
 
+  @Test
+  public void testBinaryDiff_UnchangedNotCommitted() throws IOException, SVNException {
+    File ivySettingsFile = prepareTestIvySettings(defaultIvySettingsFile,
+        "binaryDiff=\"true\" skipUnchanged=\"true\"");
+    // a fixed publication date so that the published ivy file is unchanged too
+    publish(ivySettingsFile, defaultFileContents, createFixedDateIvyPublish());
+    long revision = readRepository.getLatestRevision();
+    publish(ivySettingsFile, defaultFileContents, createFixedDateIvyPublish());
+    assertEquals(revision, readRepository.getLatestRevision()); // nothing changed so nothing committed
+    assertPublish("1.0", defaultFileContents, true);
+    String fileContents2 = "changed contents should still get published";
+    publish(ivySettingsFile, fileContents2, true);
+    assertPublish("1.0", fileContents2, true);
+  }
+
+  @Test
+  public void testBinaryDiff_SingleCommit() throws IOException, SVNException {
+    File ivySettingsFile = prepareTestIvySettings(defaultIvySettingsFile,
+        "binaryDiff=\"true\" singleCommitBinaryDiff=\"true\"");
+    long revision = readRepository.getLatestRevision();
+    publish(ivySettingsFile, defaultFileContents, true);
+    assertEquals(revision + 1, readRepository.getLatestRevision());
+    assertPublish("1.0", defaultFileContents, true);
+    // the release folder is replaced by a copy of the binary diff folder with the changes applied to it
+    String fileContents2 = "overwrite set to true so this should overwrite previous contents";
+    publish(ivySettingsFile, fileContents2, true);
+    assertEquals(revision + 2, readRepository.getLatestRevision());
+    assertPublish("1.0", fileContents2, true);
+    String fileContents3 = "2.0 contents";
+    publish(ivySettingsFile, fileContents3, "2.0", true);
+    assertEquals(revision + 3, readRepository.getLatestRevision());
+    assertPublish("2.0", fileContents3, true);
+    Map<String, String> artifacts = new HashMap<String, String>();
+    artifacts.put(defaultArtifactName, fileContents2);
+    assertNonBinaryDiffPublish(defaultOrganisation, defaultModule, "1.0", artifacts, defaultIvyFileName);
+  }
+
+  @Test
+  public void testBinaryDiff_SingleCommitCleanup() throws IOException, SVNException {
+    File ivySettingsFile = prepareTestIvySettings(defaultIvySettingsFile,
+        "binaryDiff=\"true\" singleCommitBinaryDiff=\"true\" cleanupPublishFolder=\"true\" publishDeltas=\"true\"");
+    publish(ivySettingsFile, defaultFileContents, true);
+    // emulate a file left over in the binary diff folder, which the copy should not keep
+    String binaryDiffPath = defaultOrganisation + "/" + defaultModule + "/"
+        + SvnRepository.DEFAULT_BINARY_DIFF_FOLDER_NAME;
+    ISVNEditor commitEditor = getCommitEditor();
+    svnDAO.putFile(commitEditor, "previous file".getBytes(), binaryDiffPath, "previous.jar", false);
+    commitEditor.closeEdit();
+    String fileContents2 = "changed contents";
+    publish(ivySettingsFile, fileContents2, true);
+    assertPublish("1.0", fileContents2, true);
+    String publishPath = defaultOrganisation + "/" + defaultModule + "/1.0/";
+    assertFalse(publishPath + "previous.jar exists", svnDAO.fileExists(publishPath + "previous.jar", -1));
+    assertFalse(svnDAO.fileExists(binaryDiffPath + "/previous.jar", -1));
+  }
+
   @Test
   public void testBinaryDiff_BinaryDiffFolderName() throws IOException, SVNException {
     String binaryDiffFolderName = "BINARYDIFF"; // use a folder name other than default of "LATEST"
@@ -15,6 +15,7 @@
  */
 package fm.last.ivy.plugins.svnresolver;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -80,6 +81,22 @@ public class SvnRepositoryNoBinaryDiffPublishTest extends BaseSvnRepositoryPubli
     assertPublish("2.0", fileContents2, false);
   }
 
+  @Test
+  public void testUnchangedNotCommitted_BinaryDiffFalse() throws IOException, SVNException {
+    File ivySettingsFile = prepareTestIvySettings(defaultIvySettingsFile,
+        "binaryDiff=\"false\" skipUnchanged=\"true\"");
+    // a fixed publication date so that the published ivy file is unchanged too
+    publish(ivySettingsFile, defaultFileContents, createFixedDateIvyPublish());
+    long revision = readRepository.getLatestRevision();
+    publish(ivySettingsFile, defaultFileContents, createFixedDateIvyPublish());
+    assertEquals(revision, readRepository.getLatestRevision()); // nothing changed so nothing committed
+    // unless not told to skip unchanged files
+    ivySettingsFile = prepareTestIvySettings(defaultIvySettingsFile, "binaryDiff=\"false\"");
+    publish(ivySettingsFile, defaultFileContents, createFixedDateIvyPublish());
+    assertTrue(readRepository.getLatestRevision() > revision);
+    assertPublish("1.0", defaultFileContents, false);
+  }
+
   @Test
   public void testPublish_Issue16() throws IOException, SVNException {
     File ivySettingsFile = prepareTestIvySettings(new File(ivySettingsDataFolder, "ivysettings-issue16.xml"));
@@ -16,6 +16,8 @@
 package fm.last.ivy.plugins.svnresolver;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
@@ -26,6 +28,7 @@ import org.apache.commons.io.FileUtils;
 import org.apache.ivy.ant.IvyPublish;
 import org.junit.Test;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNProperties;
 
 /**
  * Unit test which tests publishing artifacts and then retrieving them. These aren't unit tests in the strict sense of
@@ -156,4 +159,121 @@ public class SvnRepositoryPublishAndRetrieveTest extends BaseSvnRepositoryPublis
     assertEquals(fileContents2, FileUtils.readFileToString(new File(testTempFolder, fileToPublish2.getName())));
   }
 
+  @Test
+  public void testPublishMultipleArtifacts_ParallelRetrieve() throws IOException, SVNException {
+    File ivySettingsFile = prepareTestIvySettings(defaultIvySettingsFile, "binaryDiff=\"false\"");
+    IvyPublish ivyPublish = createIvyPublish("1.0", false);
+
+    File fileToPublish1 = new File(DIST_PATH + "/" + "testartifact1.jar");
+    String fileContents1 = "testArtifact1 - contents";
+    FileUtils.writeStringToFile(fileToPublish1, fileContents1);
+
+    File fileToPublish2 = new File(DIST_PATH + "/" + "testartifact2.jar");
+    String fileContents2 = "testArtifact2 - contents";
+    FileUtils.writeStringToFile(fileToPublish2, fileContents2);
+
+    File ivyPublishFile = new File(ivysDataFolder, "ivy-test-publish-multiple-artifacts.xml");
+    publish(ivyPublishFile, ivySettingsFile, ivyPublish);
+
+    ivySettingsFile = prepareTestIvySettings(defaultIvySettingsFile, "retrieveThreads=\"4\"");
+    File ivyFile = prepareTestIvyFile(defaultIvyXml, "1.0");
+    retrieve(ivyFile, DEFAULT_RETRIEVE_TO_PATTERN, ivySettingsFile);
+    assertEquals(fileContents1, FileUtils.readFileToString(new File(testTempFolder, fileToPublish1.getName())));
+    assertEquals(fileContents2, FileUtils.readFileToString(new File(testTempFolder, fileToPublish2.getName())));
+  }
+
+  @Test
+  public void testPublishMultipleArtifacts_BulkRetrieve() throws IOException, SVNException {
+    File ivySettingsFile = prepareTestIvySettings(defaultIvySettingsFile, "binaryDiff=\"false\"");
+    IvyPublish ivyPublish = createIvyPublish("1.0", false);
+
+    File fileToPublish1 = new File(DIST_PATH + "/" + "testartifact1.jar");
+    String fileContents1 = "testArtifact1 - contents";
+    FileUtils.writeStringToFile(fileToPublish1, fileContents1);
+
+    File fileToPublish2 = new File(DIST_PATH + "/" + "testartifact2.jar");
+    String fileContents2 = "testArtifact2 - contents";
+    FileUtils.writeStringToFile(fileToPublish2, fileContents2);
+
+    File ivyPublishFile = new File(ivysDataFolder, "ivy-test-publish-multiple-artifacts.xml");
+    publish(ivyPublishFile, ivySettingsFile, ivyPublish);
+
+    ivySettingsFile = prepareTestIvySettings(defaultIvySettingsFile, "bulkRetrieve=\"true\"");
+    File ivyFile = prepareTestIvyFile(defaultIvyXml, "1.0");
+    retrieve(ivyFile, DEFAULT_RETRIEVE_TO_PATTERN, ivySettingsFile);
+    assertEquals(fileContents1, FileUtils.readFileToString(new File(testTempFolder, fileToPublish1.getName())));
+    assertEquals(fileContents2, FileUtils.readFileToString(new File(testTempFolder, fileToPublish2.getName())));
+  }
+
+  @Test
+  public void testPublishMultipleArtifacts_ArtifactIndex() throws IOException, SVNException {
+    assertArtifactIndexPublishAndRetrieve(false);
+  }
+
+  @Test
+  public void testPublishMultipleArtifacts_ArtifactIndexBinaryDiff() throws IOException, SVNException {
+    assertArtifactIndexPublishAndRetrieve(true);
+  }
+
+  private void assertArtifactIndexPublishAndRetrieve(boolean binaryDiff) throws IOException, SVNException {
+    File ivySettingsFile = prepareTestIvySettings(defaultIvySettingsFile, "binaryDiff=\"" + binaryDiff
+        + "\" useArtifactIndex=\"true\"");
+    IvyPublish ivyPublish = createIvyPublish("1.0", false);
+
+    File fileToPublish1 = new File(DIST_PATH + "/" + "testartifact1.jar");
+    String fileContents1 = "testArtifact1 - contents";
+    FileUtils.writeStringToFile(fileToPublish1, fileContents1);
+
+    File fileToPublish2 = new File(DIST_PATH + "/" + "testartifact2.jar");
+    String fileContents2 = "testArtifact2 - contents";
+    FileUtils.writeStringToFile(fileToPublish2, fileContents2);
+
+    File ivyPublishFile = new File(ivysDataFolder, "ivy-test-publish-multiple-artifacts.xml");
+    publish(ivyPublishFile, ivySettingsFile, ivyPublish);
+
+    String moduleFolderPath = defaultOrganisation + "/" + defaultModule;
+    ArtifactIndex index = new ArtifactIndex(moduleFolderPath, svnDAO.getFileContents(ArtifactIndex
+        .getFilePath(moduleFolderPath), -1));
+    String folderPath = moduleFolderPath + "/1.0";
+    ResourceMetadata artifact = index.lookup(folderPath + "/testartifact1.jar");
+    assertEquals(fileContents1.length(), artifact.getSize());
+    assertEquals(SvnUtils.computeChecksum(fileContents1.getBytes()), artifact.getChecksum());
+    assertFalse(index.lookup(folderPath + "/missing.jar").exists());
+    assertTrue(index.getListing(folderPath).getEntry("ivy.xml").exists());
+
+    File ivyFile = prepareTestIvyFile(defaultIvyXml, "1.0");
+    retrieve(ivyFile, DEFAULT_RETRIEVE_TO_PATTERN, ivySettingsFile);
+    assertEquals(fileContents1, FileUtils.readFileToString(new File(testTempFolder, fileToPublish1.getName())));
+    assertEquals(fileContents2, FileUtils.readFileToString(new File(testTempFolder, fileToPublish2.getName())));
+  }
+
+  @Test
+  public void testPublishMultipleArtifacts_ChecksumProperties() throws IOException, SVNException {
+    File ivySettingsFile = prepareTestIvySettings(defaultIvySettingsFile, "binaryDiff=\"true\"");
+    IvyPublish ivyPublish = createIvyPublish("1.0", false);
+
+    File fileToPublish = new File(DIST_PATH + "/" + "testartifact1.jar");
+    String fileContents = "testArtifact1 - contents";
+    FileUtils.writeStringToFile(fileToPublish, fileContents);
+    FileUtils.writeStringToFile(new File(DIST_PATH + "/" + "testartifact2.jar"), "testArtifact2 - contents");
+
+    File ivyPublishFile = new File(ivysDataFolder, "ivy-test-publish-multiple-artifacts.xml");
+    publish(ivyPublishFile, ivySettingsFile, ivyPublish);
+
+    String folderPath = defaultOrganisation + "/" + defaultModule + "/1.0";
+    String sha1 = SvnUtils.computeChecksum(fileContents.getBytes(), "SHA-1");
+    SVNProperties properties = new SVNProperties();
+    readRepository.getFile(folderPath + "/testartifact1.jar", -1, properties, null);
+    assertEquals(sha1, properties.getStringValue(SvnDao.PROPERTY_SHA1));
+    Map<String, String[]> checksums = ChecksumCache.parseProperty(svnDAO.getFolderProperty(folderPath,
+        SvnDao.PROPERTY_CHECKSUMS, -1));
+    assertEquals(sha1, checksums.get("testartifact1.jar")[0]);
+    assertTrue(checksums.containsKey("ivy.xml"));
+    assertFalse(checksums.containsKey("testartifact1.jar.sha1"));
+
+    File ivyFile = prepareTestIvyFile(defaultIvyXml, "1.0");
+    retrieve(ivyFile, DEFAULT_RETRIEVE_TO_PATTERN, ivySettingsFile);
+    assertEquals(fileContents, FileUtils.readFileToString(new File(testTempFolder, fileToPublish.getName())));
+  }
+
 }
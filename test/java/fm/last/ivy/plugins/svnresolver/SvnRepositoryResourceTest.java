@@ -0,0 +1,431 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.ivy.core.IvyContext;
+import org.apache.ivy.core.resolve.ResolveData;
+import org.apache.ivy.core.resolve.ResolveEngine;
+import org.apache.ivy.core.resolve.ResolveOptions;
+import org.apache.ivy.plugins.repository.Resource;
+import org.apache.ivy.plugins.repository.TransferEvent;
+import org.apache.ivy.plugins.repository.TransferListener;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+
+/**
+ * Unit test case for resolving resources via the SvnRepository.
+ */
+public class SvnRepositoryResourceTest extends BaseTestCase {
+
+  private static final String FOLDER_PATH = TEST_PATH + "/org/module/1.0";
+
+  private SvnRepository repository;
+
+  @Before
+  public void setUp() throws SVNException {
+    super.setUp();
+    ISVNEditor commitEditor = getCommitEditor();
+    svnDAO.createFolders(commitEditor, FOLDER_PATH, -1);
+    svnDAO.putFile(commitEditor, "ivy".getBytes(), FOLDER_PATH, "ivy.xml", false);
+    svnDAO.putFile(commitEditor, "artifact".getBytes(), FOLDER_PATH, "artifact.jar", false);
+    svnDAO.putFile(commitEditor, "sources".getBytes(), FOLDER_PATH, "artifact-sources.jar", false);
+    commitEditor.closeEdit();
+
+    repository = new SvnRepository();
+    repository.setRepositoryRoot(ivyRepositoryRoot);
+    repository.setUserName(svnUserName);
+    repository.setUserPassword(svnPassword);
+  }
+
+  private Resource getResource(String name) throws IOException {
+    return repository.getResource(FOLDER_PATH + "/" + name);
+  }
+
+  @Test
+  public void testResolveResourcesInSameFolder() throws IOException {
+    Resource ivy = getResource("ivy.xml");
+    assertTrue(ivy.exists());
+    assertEquals(3, ivy.getContentLength());
+    Resource artifact = getResource("artifact.jar");
+    assertTrue(artifact.exists());
+    assertEquals(8, artifact.getContentLength());
+    assertTrue(artifact.getLastModified() > 0);
+    assertFalse(getResource("artifact-javadoc.jar").exists());
+    Resource sources = getResource("artifact-sources.jar");
+    assertTrue(sources.exists());
+    assertEquals(7, sources.getContentLength());
+  }
+
+  @Test
+  public void testResolveResourcesInMissingFolder() throws IOException {
+    assertFalse(repository.getResource(TEST_PATH + "/missing/ivy.xml").exists());
+    assertFalse(repository.getResource(TEST_PATH + "/missing/artifact.jar").exists());
+    assertFalse(repository.getResource(TEST_PATH + "/missing/artifact-sources.jar").exists());
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testResolveResourceUnreachable() throws IOException {
+    SvnRepository unreachable = new SvnRepository();
+    unreachable.setRepositoryRoot("svn://127.0.0.1:1/repo");
+    unreachable.setUserName(svnUserName);
+    unreachable.setUserPassword(svnPassword);
+    unreachable.setRetryAttempts(1);
+    // can't be told apart from the resource not existing, so must not be reported as missing
+    unreachable.getResource("org/module/1.0/ivy.xml").exists();
+  }
+
+  @Test
+  public void testMetadataCache() throws IOException, SVNException {
+    long revision = readRepository.getLatestRevision();
+    File cacheDir = new File(testTempFolder, "metadata");
+    repository.setMetadataCacheDir(cacheDir);
+    repository.setSvnRetrieveRevision(revision);
+    assertTrue(getResource("ivy.xml").exists());
+    assertFalse(getResource("artifact-javadoc.jar").exists());
+    repository.get(FOLDER_PATH + "/artifact.jar", new File(testTempFolder, "artifact.jar"));
+
+    MetadataCache cache = new MetadataCache(cacheDir);
+    String uuid = cache.getRepositoryUUID(ivyRepositoryRoot + "/");
+    assertEquals(readRepository.getRepositoryUUID(true), uuid);
+    String folderKey = cache.getRepositoryPath(ivyRepositoryRoot + "/") + "/" + FOLDER_PATH;
+    MetadataStore store = cache.getStore(uuid, revision);
+    assertEquals(3, store.getResource(folderKey + "/ivy.xml").getSize());
+    assertFalse(store.getResource(folderKey + "/artifact-javadoc.jar").exists());
+    assertEquals(SVNFileUtil.computeChecksum("artifact"), store.getResource(folderKey + "/artifact.jar")
+        .getChecksum());
+
+    // a new repository using the same cache resolves the same resources from it
+    SvnRepository cachedRepository = new SvnRepository();
+    cachedRepository.setRepositoryRoot(ivyRepositoryRoot);
+    cachedRepository.setMetadataCacheDir(cacheDir);
+    cachedRepository.setSvnRetrieveRevision(revision);
+    Resource ivy = cachedRepository.getResource(FOLDER_PATH + "/ivy.xml");
+    assertTrue(ivy.exists());
+    assertEquals(3, ivy.getContentLength());
+    assertFalse(cachedRepository.getResource(FOLDER_PATH + "/artifact-javadoc.jar").exists());
+    store.close();
+  }
+
+  @Test
+  public void testContentStore() throws IOException {
+    File storeDir = new File(testTempFolder, "content");
+    repository.setContentStoreDir(storeDir);
+    File destination = new File(testTempFolder, "artifact.jar");
+    repository.get(FOLDER_PATH + "/artifact.jar", destination);
+    assertEquals("artifact", FileUtils.readFileToString(destination));
+    String checksum = SVNFileUtil.computeChecksum("artifact");
+    File stored = new File(new File(storeDir, checksum.substring(0, 2)), checksum);
+    assertEquals("artifact", FileUtils.readFileToString(stored));
+
+    // prove the next download is served from the store
+    FileUtils.writeStringToFile(stored, "from store");
+    repository.get(FOLDER_PATH + "/artifact.jar", destination);
+    assertEquals("from store", FileUtils.readFileToString(destination));
+  }
+
+  @Test
+  public void testOpenStream() throws IOException {
+    InputStream stream = getResource("artifact.jar").openStream();
+    try {
+      assertEquals("artifact", IOUtils.toString(stream));
+    } finally {
+      stream.close();
+    }
+  }
+
+  @Test
+  public void testOpenStreamLargeFileClosedEarly() throws IOException, SVNException {
+    byte[] data = new byte[2 * 1024 * 1024];
+    new Random(1).nextBytes(data);
+    ISVNEditor commitEditor = getCommitEditor();
+    svnDAO.putFile(commitEditor, data, FOLDER_PATH, "large.jar", false);
+    commitEditor.closeEdit();
+
+    InputStream stream = getResource("large.jar").openStream();
+    byte[] start = new byte[1000];
+    new DataInputStream(stream).readFully(start);
+    stream.close();
+    for (int i = 0; i < start.length; i++) {
+      assertEquals(data[i], start[i]);
+    }
+    // the cancelled transfer must not break later requests
+    stream = getResource("large.jar").openStream();
+    try {
+      assertTrue(Arrays.equals(data, IOUtils.toByteArray(stream)));
+    } finally {
+      stream.close();
+    }
+  }
+
+  @Test
+  public void testOpenStreamsShareTransferThreads() throws IOException {
+    repository.setMaxConnectionsPerHost(1);
+    List<InputStream> streams = new ArrayList<InputStream>();
+    for (int i = 0; i < 10; i++) {
+      streams.add(getResource("artifact.jar").openStream());
+    }
+    // a single transfer thread serves all streams, each waiting for those opened before it
+    for (InputStream stream : streams) {
+      try {
+        assertEquals("artifact", IOUtils.toString(stream));
+      } finally {
+        stream.close();
+      }
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testOpenStreamMissing() throws IOException {
+    InputStream stream = repository.getResource(TEST_PATH + "/missing/ivy.xml").clone(
+        ivyRepositoryRoot + "/" + TEST_PATH + "/missing/ivy.xml").openStream();
+    try {
+      stream.read();
+    } finally {
+      stream.close();
+    }
+  }
+
+  @Test
+  public void testDownloadFolder() throws IOException {
+    String folderSource = ivyRepositoryRoot + "/" + FOLDER_PATH;
+    List<String> sources = new ArrayList<String>();
+    sources.add(folderSource + "/ivy.xml");
+    sources.add(folderSource + "/artifact.jar");
+    sources.add(folderSource + "/artifact-javadoc.jar");
+    Map<String, File> downloaded = repository.downloadFolder(folderSource, sources, -1);
+    try {
+      assertEquals(2, downloaded.size());
+      assertEquals("ivy", FileUtils.readFileToString(downloaded.get(folderSource + "/ivy.xml")));
+      assertEquals("artifact", FileUtils.readFileToString(downloaded.get(folderSource + "/artifact.jar")));
+      assertTrue(repository.getResource(FOLDER_PATH + "/artifact.jar").getLastModified() > 0);
+    } finally {
+      for (File file : downloaded.values()) {
+        file.delete();
+      }
+    }
+  }
+
+  @Test
+  public void testBulkRetrieve() throws IOException {
+    repository.setBulkRetrieve(true);
+    String folderSource = ivyRepositoryRoot + "/" + FOLDER_PATH;
+    List<String> sources = new ArrayList<String>();
+    sources.add(folderSource + "/ivy.xml");
+    sources.add(folderSource + "/artifact.jar");
+    repository.scheduleDownloads(sources);
+    try {
+      File destination = new File(testTempFolder, "artifact.jar");
+      repository.get(folderSource + "/artifact.jar", destination);
+      assertEquals("artifact", FileUtils.readFileToString(destination));
+      destination = new File(testTempFolder, "ivy.xml");
+      repository.get(folderSource + "/ivy.xml", destination);
+      assertEquals("ivy", FileUtils.readFileToString(destination));
+    } finally {
+      repository.discardScheduledDownloads();
+    }
+  }
+
+  @Test
+  public void testPinHeadRevision() throws IOException, SVNException {
+    repository.setPinHeadRevision(true);
+    try {
+      ResolveData firstResolve = new ResolveData((ResolveEngine) null, new ResolveOptions());
+      IvyContext.getContext().setResolveData(firstResolve);
+      assertTrue(getResource("ivy.xml").exists());
+      ISVNEditor commitEditor = getCommitEditor();
+      svnDAO.putFile(commitEditor, "new".getBytes(), FOLDER_PATH, "new.jar", false);
+      commitEditor.closeEdit();
+      assertTrue(getResource("artifact.jar").exists());
+      assertFalse(getResource("new.jar").exists()); // committed after HEAD was pinned
+
+      IvyContext.getContext().setResolveData(new ResolveData((ResolveEngine) null, new ResolveOptions()));
+      assertTrue(getResource("ivy.xml").exists());
+      assertTrue(getResource("artifact.jar").exists()); // folder listed at the new revision
+      assertTrue(getResource("new.jar").exists());
+
+      // the first resolve is unaffected by the second
+      IvyContext.getContext().setResolveData(firstResolve);
+      assertFalse(getResource("new.jar").exists());
+      assertTrue(getResource("artifact-sources.jar").exists());
+    } finally {
+      IvyContext.getContext().setResolveData(null);
+    }
+  }
+
+  @Test
+  public void testListSeesLaterCommits() throws IOException, SVNException {
+    String parentPath = TEST_PATH + "/org/module/";
+    assertEquals(Arrays.asList("1.0"), repository.list(parentPath));
+    assertEquals(3, repository.list(FOLDER_PATH).size());
+    ISVNEditor commitEditor = getCommitEditor();
+    svnDAO.putFile(commitEditor, "new".getBytes(), FOLDER_PATH, "new.jar", false);
+    commitEditor.closeEdit();
+    assertTrue(repository.list(FOLDER_PATH).contains("new.jar"));
+    assertEquals(Arrays.asList("1.0"), repository.list(parentPath));
+    commitEditor = getCommitEditor();
+    svnDAO.createFolders(commitEditor, TEST_PATH + "/org/module/2.0", -1);
+    commitEditor.closeEdit();
+    List<String> versions = repository.list(parentPath);
+    assertEquals(2, versions.size());
+    assertTrue(versions.contains("2.0"));
+    assertEquals(4, repository.list(FOLDER_PATH).size());
+    assertTrue(repository.list(TEST_PATH + "/missing").isEmpty());
+  }
+
+  @Test
+  public void testResolveFileAddedToListedFolder() throws IOException, SVNException {
+    repository.setNegativeCacheTimeToLive(0);
+    repository.setResourceCacheSize(1); // so resources are resolved again rather than reused
+    assertTrue(getResource("ivy.xml").exists());
+    assertTrue(getResource("artifact.jar").exists()); // folder listed
+    assertFalse(getResource("new.jar").exists());
+    ISVNEditor commitEditor = getCommitEditor(); // published by another build
+    svnDAO.putFile(commitEditor, "new".getBytes(), FOLDER_PATH, "new.jar", false);
+    commitEditor.closeEdit();
+    assertTrue(getResource("ivy.xml").exists());
+    assertTrue(getResource("new.jar").exists());
+    assertEquals(3, getResource("new.jar").getContentLength());
+  }
+
+  @Test
+  public void testResolvedMetadataCache() throws IOException {
+    repository.setResourceCacheSize(1);
+    repository.setResolvedMetadataCacheSize(10);
+    assertTrue(getResource("ivy.xml").exists());
+    assertTrue(getResource("artifact.jar").exists()); // folder listed, all files now resolved
+    // the handles have been evicted but the metadata of the files is still held
+    Resource ivy = getResource("ivy.xml");
+    assertEquals(3, ivy.getContentLength());
+    assertEquals(7, getResource("artifact-sources.jar").getContentLength());
+    assertTrue(repository.getResourceCacheStatistics().contains("resolved metadata [size=3"));
+  }
+
+  @Test
+  public void testNegativeCache() throws IOException, SVNException {
+    String javadocPath = TEST_PATH + "/org/other/1.0/other-javadoc.jar";
+    repository.setResourceCacheSize(1); // so resources are resolved again rather than reused
+    assertFalse(repository.getResource(javadocPath).exists());
+    ISVNEditor commitEditor = getCommitEditor();
+    svnDAO.createFolders(commitEditor, TEST_PATH + "/org/other/1.0", -1);
+    svnDAO.putFile(commitEditor, "javadoc".getBytes(), TEST_PATH + "/org/other/1.0", "other-javadoc.jar", false);
+    commitEditor.closeEdit();
+    assertTrue(getResource("ivy.xml").exists());
+    assertFalse(repository.getResource(javadocPath).exists()); // remembered as missing
+
+    repository.setNegativeCacheTimeToLive(0);
+    assertTrue(getResource("ivy.xml").exists());
+    assertTrue(repository.getResource(javadocPath).exists());
+  }
+
+  @Test
+  public void testPublishedChecksums() throws IOException {
+    File artifact = new File(testTempFolder, "artifact.jar");
+    repository.get(FOLDER_PATH + "/artifact.jar", artifact);
+    // checksums recorded in the artifact's properties are served once it has been downloaded
+    Resource sha1 = getResource("artifact.jar.sha1");
+    assertTrue(sha1.exists());
+    assertEquals(40, sha1.getContentLength());
+    File sha1File = new File(testTempFolder, "artifact.jar.sha1");
+    repository.get(FOLDER_PATH + "/artifact.jar.sha1", sha1File);
+    assertEquals(SvnUtils.computeChecksum("artifact".getBytes(), "SHA-1"), FileUtils.readFileToString(sha1File));
+    File md5File = new File(testTempFolder, "artifact.jar.md5");
+    repository.get(FOLDER_PATH + "/artifact.jar.md5", md5File);
+    assertEquals(SvnUtils.computeChecksum("artifact".getBytes()), FileUtils.readFileToString(md5File));
+    assertFalse(getResource("ivy.xml.sha1").exists()); // not downloaded, so nothing known
+  }
+
+  @Test
+  public void testGetReportsProgress() throws IOException {
+    final List<Integer> eventTypes = new ArrayList<Integer>();
+    final long[] progress = new long[1];
+    repository.addTransferListener(new TransferListener() {
+      public void transferProgress(TransferEvent event) {
+        eventTypes.add(event.getEventType());
+        if (event.getEventType() == TransferEvent.TRANSFER_PROGRESS) {
+          progress[0] += event.getLength();
+        }
+      }
+    });
+    repository.setProgressInterval(3);
+    repository.get(FOLDER_PATH + "/artifact.jar", new File(testTempFolder, "artifact.jar"));
+    assertEquals(TransferEvent.TRANSFER_INITIATED, eventTypes.get(0).intValue());
+    assertEquals(TransferEvent.TRANSFER_STARTED, eventTypes.get(1).intValue());
+    assertEquals(TransferEvent.TRANSFER_COMPLETED, eventTypes.get(eventTypes.size() - 1).intValue());
+    assertTrue(eventTypes.contains(TransferEvent.TRANSFER_PROGRESS));
+    assertEquals(8, progress[0]);
+  }
+
+  @Test
+  public void testConcurrentGetsReportOwnTransfers() throws Exception {
+    final Map<Thread, String> expected = new ConcurrentHashMap<Thread, String>();
+    final List<String> mismatches = Collections.synchronizedList(new ArrayList<String>());
+    repository.addTransferListener(new TransferListener() {
+      public void transferProgress(TransferEvent event) {
+        String name = expected.get(Thread.currentThread());
+        if (!event.getResource().getName().endsWith(name)) {
+          mismatches.add(name + " reported as " + event.getResource().getName());
+        }
+      }
+    });
+    List<Thread> threads = new ArrayList<Thread>();
+    final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+    for (final String name : Arrays.asList("ivy.xml", "artifact.jar", "artifact-sources.jar")) {
+      threads.add(new Thread() {
+        public void run() {
+          expected.put(this, name);
+          try {
+            for (int i = 0; i < 10; i++) {
+              File destination = new File(testTempFolder, getName() + "-" + name);
+              repository.get(FOLDER_PATH + "/" + name, destination);
+            }
+          } catch (Throwable t) {
+            errors.add(t);
+          }
+        }
+      });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(Collections.emptyList(), errors);
+    assertEquals(Collections.emptyList(), mismatches);
+  }
+
+}
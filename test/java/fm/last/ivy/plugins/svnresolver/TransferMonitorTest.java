@@ -0,0 +1,95 @@
+/*
+ * Copyright 2008 Last.fm
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package fm.last.ivy.plugins.svnresolver;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+/**
+ * Unit test case for the TransferMonitor.
+ */
+public class TransferMonitorTest {
+
+  private final List<String> events = new ArrayList<String>();
+
+  private final TransferMonitor.Listener listener = new TransferMonitor.Listener() {
+    public void transferStarted(TransferMonitor monitor) {
+      events.add("started " + monitor.getTotalLength());
+    }
+
+    public void transferProgress(TransferMonitor monitor, long length) {
+      events.add("progress " + length);
+    }
+
+    public void transferCompleted(TransferMonitor monitor) {
+      events.add("completed " + monitor.getTransferred());
+    }
+  };
+
+  @Test
+  public void testOutputProgress() throws IOException {
+    TransferMonitor monitor = new TransferMonitor("file", 10, 4, listener);
+    OutputStream output = monitor.monitor(new ByteArrayOutputStream());
+    output.write(new byte[3]);
+    output.write(0);
+    output.write(new byte[6], 1, 5);
+    monitor.complete();
+    assertEquals(Arrays.asList("started 10", "progress 4", "progress 5", "completed 9"), events);
+  }
+
+  @Test
+  public void testInputProgress() throws IOException {
+    TransferMonitor monitor = new TransferMonitor("file", -1, 4, listener);
+    InputStream input = monitor.monitor(new ByteArrayInputStream(new byte[10]));
+    assertEquals(10, IOUtils.toByteArray(input).length);
+    monitor.complete();
+    assertEquals("started -1", events.get(0));
+    assertEquals("completed 10", events.get(events.size() - 1));
+    long progress = 0;
+    for (String event : events.subList(1, events.size() - 1)) {
+      progress += Long.parseLong(event.substring("progress ".length()));
+    }
+    assertEquals(10, progress);
+  }
+
+  @Test
+  public void testEmptyTransfer() {
+    TransferMonitor monitor = new TransferMonitor("file", 0, 4, listener);
+    monitor.start();
+    monitor.complete();
+    assertEquals(Arrays.asList("started 0", "completed 0"), events);
+  }
+
+  @Test
+  public void testNoListener() throws IOException {
+    TransferMonitor monitor = new TransferMonitor("file", -1, 1, null);
+    monitor.monitor(new ByteArrayOutputStream()).write(new byte[5]);
+    monitor.complete();
+    assertEquals(5, monitor.getTransferred());
+  }
+
+}